@@ -0,0 +1,203 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterStep;
+import org.springframework.batch.core.annotation.AfterWrite;
+import org.springframework.batch.core.annotation.BeforeChunk;
+import org.springframework.batch.core.annotation.BeforeProcess;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.annotation.BeforeWrite;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+
+/**
+ * Commit interval that adapts to what a chunk costs. Also a step, chunk and item listener (by annotation, so one
+ * instance serves all roles through StepBuilder.listener(Object)), from which it times every chunk in three parts:
+ * <ul>
+ *   <li>processing, per item: reading and fetching each LEI, from the start of the chunk to the write</li>
+ *   <li>writing: the CSV, Parquet and failure log writes of the whole chunk</li>
+ *   <li>committing: the stream checkpoints, the job repository update and the transaction commit</li>
+ * </ul>
+ * Writing and committing are paid once per chunk, so their share of a chunk falls as the chunk grows. After each
+ * chunk the size is set to the smallest one that brings that share down to the target overhead, at most doubling or
+ * halving per chunk. Skips and rollbacks push the other way: a failed item rolls back its chunk, whose records are
+ * then processed again, so a chunk with a skip or rollback halves the size, and while failures recur the size is
+ * capped at sqrt(per-chunk cost / (failures per item * processing per item)), where the cost of re-processing
+ * balances the commit overhead saved. The size always stays between the configured bounds.
+ * <p>
+ * Holds the measurements of one step execution, so a new instance is needed per step execution that may run at the
+ * same time as another; a restarted step starts over from the initial size. Every chunk is logged at DEBUG, size
+ * changes at INFO, and the sizes are recorded in gleif.batch.chunk.size by step.
+ */
+@Slf4j
+public class AdaptiveCompletionPolicy extends SimpleCompletionPolicy {
+
+    // Weight of the latest chunk in the smoothed measurements
+    private static final double SMOOTHING = 0.2;
+
+    private final String stepName;
+    private final int initialSize;
+    private final int minSize;
+    private final int maxSize;
+    private final double targetOverhead;
+    private final DistributionSummary chunkSizes;
+
+    private long chunkStart;
+    private long writeStart;
+    private long writeEnd;
+    private int items;
+    private long rollbacks;
+    private long skips;
+
+    private double processingNanosPerItem;
+    private double perChunkNanos;
+    private double failuresPerItem;
+
+    /**
+     * @param stepName       The step the policy is used by, for logging and the metric tag.
+     * @param initialSize    The size of the first chunk.
+     * @param minSize        The smallest chunk size.
+     * @param maxSize        The largest chunk size; also the most records a crash can take back to processing.
+     * @param targetOverhead The share of a chunk's time that writing and committing may take, e.g. 0.05.
+     * @param meterRegistry  Receives the chunk sizes.
+     */
+    public AdaptiveCompletionPolicy(String stepName, int initialSize, int minSize, int maxSize, double targetOverhead,
+                                    MeterRegistry meterRegistry) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid chunk size bounds: " + minSize + ".." + maxSize);
+        }
+        if (targetOverhead <= 0 || targetOverhead >= 1) {
+            throw new IllegalArgumentException("Target overhead must be between 0 and 1: " + targetOverhead);
+        }
+        this.stepName = stepName;
+        this.initialSize = clamp(initialSize, minSize, maxSize);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetOverhead = targetOverhead;
+        this.chunkSizes = DistributionSummary.builder("gleif.batch.chunk.size")
+                .description("Items per chunk, as set by the adaptive commit interval")
+                .baseUnit("items")
+                .tag("step", stepName)
+                .register(meterRegistry);
+        setChunkSize(this.initialSize);
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        setChunkSize(initialSize);
+        chunkStart = 0;
+        rollbacks = stepExecution.getRollbackCount();
+        skips = stepExecution.getSkipCount();
+        processingNanosPerItem = 0;
+        perChunkNanos = 0;
+        failuresPerItem = 0;
+    }
+
+    /**
+     * Completes the measurement of the previous chunk, whose commit has finished by now, and sizes the next one.
+     */
+    @BeforeChunk
+    public void beforeChunk(ChunkContext context) {
+        long now = System.nanoTime();
+        if (chunkStart != 0) {
+            adapt(context.getStepContext().getStepExecution(), now);
+        }
+        chunkStart = now;
+        writeStart = 0;
+        writeEnd = 0;
+        items = 0;
+    }
+
+    @BeforeProcess
+    public void beforeProcess(String leiId) {
+        items++;
+    }
+
+    @BeforeWrite
+    public void beforeWrite(Chunk<?> chunk) {
+        if (writeStart == 0) { // A scan after a failed write writes item by item; time it as one write
+            writeStart = System.nanoTime();
+        }
+    }
+
+    @AfterWrite
+    public void afterWrite(Chunk<?> chunk) {
+        writeEnd = System.nanoTime();
+    }
+
+    @AfterStep
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        log.info("Step {}: {} chunks, {} items per chunk on average, last chunk size {}", stepName, chunkSizes.count(),
+                String.format("%.1f", chunkSizes.mean()), getChunkSize());
+        return null; // Leaves the exit status as it is
+    }
+
+    private void adapt(StepExecution stepExecution, long now) {
+        long newRollbacks = stepExecution.getRollbackCount() - rollbacks;
+        long newSkips = stepExecution.getSkipCount() - skips;
+        rollbacks = stepExecution.getRollbackCount();
+        skips = stepExecution.getSkipCount();
+        if (items == 0) {
+            return; // End of input, or a retried chunk that never got to processing
+        }
+        chunkSizes.record(items);
+
+        int size = getChunkSize();
+        int next;
+        long failures = newRollbacks + newSkips;
+        failuresPerItem = smooth(failuresPerItem, (double) failures / items);
+        if (failures > 0 || writeStart == 0) {
+            // Failed, or every item filtered out before the write: not a representative chunk to time
+            next = failures > 0 ? size / 2 : size;
+            log.debug("Step {}: chunk of {} items, {} skips, {} rollbacks", stepName, items, newSkips, newRollbacks);
+        } else {
+            long processing = writeStart - chunkStart;
+            long writing = writeEnd - writeStart;
+            long committing = now - writeEnd;
+            processingNanosPerItem = smooth(processingNanosPerItem, (double) processing / items);
+            perChunkNanos = smooth(perChunkNanos, writing + committing);
+            next = clamp(targetSize(), size / 2, size * 2);
+            log.debug("Step {}: chunk of {} items, {} ms processing ({} ms per item), {} ms writing, {} ms committing",
+                    stepName, items, millis(processing), millis(processing / items), millis(writing), millis(committing));
+        }
+        next = clamp(next, minSize, maxSize);
+        if (next != size) {
+            log.info("Step {}: chunk size {} -> {} ({} ms per item, {} ms per chunk, {} failures per 100 items)", stepName,
+                    size, next, millis(Math.round(processingNanosPerItem)), millis(Math.round(perChunkNanos)),
+                    String.format("%.2f", failuresPerItem * 100));
+            setChunkSize(next);
+        }
+    }
+
+    /**
+     * The smallest size at which the per-chunk cost is at most the target share of the chunk, capped where
+     * re-processing after failures starts to cost more than the commits saved.
+     */
+    private int targetSize() {
+        if (processingNanosPerItem <= 0) {
+            return maxSize;
+        }
+        double size = perChunkNanos * (1 - targetOverhead) / (targetOverhead * processingNanosPerItem);
+        if (failuresPerItem > 0) {
+            size = Math.min(size, Math.sqrt(perChunkNanos / (failuresPerItem * processingNanosPerItem)));
+        }
+        return (int) Math.min(maxSize, Math.ceil(size));
+    }
+
+    private static double smooth(double average, double sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1e6);
+    }
+}
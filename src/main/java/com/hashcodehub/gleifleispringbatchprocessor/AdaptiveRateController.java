@@ -0,0 +1,256 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A RateController that adapts to the responses it sees (additive increase, multiplicative decrease).
+ * Each endpoint class has its own rate, which starts at the global ceiling. A 429 or 503 cuts that rate
+ * by the decrease factor. A successful response adds gleif.rate.additive-increase requests/second to it, at most
+ * once per gleif.rate.increase-interval, up to the ceiling; so the rate recovers at a fixed pace however many
+ * responses arrive, and an interval without a successful response does not count.
+ * On top of the endpoint rates, a global limiter keeps the total at or below the ceiling.
+ * A Retry-After header, or an exhausted RateLimit-Remaining / X-RateLimit-Remaining with a reset time,
+ * pauses all requests until the server said it will accept them again.
+ */
+@Component
+@Slf4j
+public class AdaptiveRateController implements RateController {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final RateLimiter globalLimiter;
+    private final Map<GleifEndpoint, Bucket> buckets = new EnumMap<>(GleifEndpoint.class);
+    private final double minRate;
+    private final double additiveIncrease;
+    private final long increaseIntervalNanos;
+    private final double decreaseFactor;
+    private final long maxPauseMillis;
+    // Wall-clock time for the pauses, which servers give as dates; monotonic time for the increase intervals
+    private final Clock clock;
+    private final Ticker ticker;
+    // Wall-clock time before which no request may be sent, set from Retry-After and rate-limit headers
+    private final AtomicLong resumeAtMillis = new AtomicLong();
+    private final LongAdder pauses = new LongAdder();
+
+    @Autowired
+    public AdaptiveRateController(@Value("${gleif.api.requests-per-second:1.0}") double requestsPerSecond,
+                                  @Value("${gleif.rate.min-requests-per-second:0.05}") double minRate,
+                                  @Value("${gleif.rate.additive-increase:0.05}") double additiveIncrease,
+                                  @Value("${gleif.rate.increase-interval:1s}") Duration increaseInterval,
+                                  @Value("${gleif.rate.decrease-factor:0.5}") double decreaseFactor,
+                                  @Value("${gleif.rate.max-pause:5m}") Duration maxPause) {
+        this(requestsPerSecond, minRate, additiveIncrease, increaseInterval, decreaseFactor, maxPause,
+                Clock.systemUTC(), Ticker.systemTicker());
+    }
+
+    AdaptiveRateController(double requestsPerSecond, double minRate, double additiveIncrease, Duration increaseInterval,
+                           double decreaseFactor, Duration maxPause, Clock clock, Ticker ticker) {
+        this.clock = clock;
+        this.ticker = ticker;
+        this.globalLimiter = RateLimiter.create(requestsPerSecond);
+        this.minRate = minRate;
+        this.additiveIncrease = additiveIncrease;
+        this.increaseIntervalNanos = increaseInterval.toNanos();
+        this.decreaseFactor = decreaseFactor;
+        this.maxPauseMillis = maxPause.toMillis();
+        for (GleifEndpoint endpoint : GleifEndpoint.values()) {
+            buckets.put(endpoint, new Bucket(requestsPerSecond));
+        }
+    }
+
+    @Override
+    public void acquire(GleifEndpoint endpoint) {
+        Bucket bucket = buckets.get(endpoint);
+        long start = ticker.read();
+        waitForResume();
+        bucket.limiter.acquire();
+        globalLimiter.acquire();
+        bucket.waitNanos.add(ticker.read() - start);
+        bucket.acquired.increment();
+    }
+
+    @Override
+    public void onResponse(GleifEndpoint endpoint, int statusCode, HttpHeaders headers) {
+        Bucket bucket = buckets.get(endpoint);
+        if (statusCode == TOO_MANY_REQUESTS || statusCode == SERVICE_UNAVAILABLE) {
+            bucket.throttled.increment();
+            double rate = bucket.decrease();
+            log.warn("GLEIF answered {} for {}, slowing down to {} requests/second", statusCode, endpoint, rate);
+            pauseFor(retryAfterMillis(headers));
+        } else if (statusCode < 400) {
+            bucket.increase();
+        }
+        pauseFor(rateLimitResetMillis(headers));
+    }
+
+    @Override
+    public void setMaxRate(double requestsPerSecond) {
+        log.info("Setting GLEIF request ceiling to {} requests/second", requestsPerSecond);
+        globalLimiter.setRate(requestsPerSecond);
+        // A new budget starts every endpoint at the ceiling again
+        for (Bucket bucket : buckets.values()) {
+            bucket.reset(requestsPerSecond);
+        }
+    }
+
+    @Override
+    public double getMaxRate() {
+        return globalLimiter.getRate();
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("ceiling", getMaxRate());
+        metrics.put("pauses", pauses.sum());
+        metrics.put("pausedForMillis", Math.max(0, resumeAtMillis.get() - clock.millis()));
+        for (Map.Entry<GleifEndpoint, Bucket> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            long acquired = bucket.acquired.sum();
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(bucket.waitNanos.sum());
+            Map<String, Object> endpointMetrics = new LinkedHashMap<>();
+            endpointMetrics.put("rate", bucket.limiter.getRate());
+            endpointMetrics.put("requests", acquired);
+            endpointMetrics.put("throttled", bucket.throttled.sum());
+            endpointMetrics.put("totalWaitMillis", waitMillis);
+            endpointMetrics.put("averageWaitMillis", acquired > 0 ? (double) waitMillis / acquired : 0.0);
+            metrics.put(entry.getKey().name(), endpointMetrics);
+        }
+        return metrics;
+    }
+
+    private void waitForResume() {
+        long waitMillis;
+        while ((waitMillis = resumeAtMillis.get() - clock.millis()) > 0) {
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the GLEIF rate limit to reset", e);
+            }
+        }
+    }
+
+    private void pauseFor(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        long until = clock.millis() + Math.min(millis, maxPauseMillis);
+        if (resumeAtMillis.getAndAccumulate(until, Math::max) < until) {
+            pauses.increment();
+            log.warn("Pausing GLEIF requests for {} ms as requested by the server", Math.min(millis, maxPauseMillis));
+        }
+    }
+
+    /**
+     * Reads Retry-After, which is either a number of seconds or an HTTP date.
+     */
+    private long retryAfterMillis(HttpHeaders headers) {
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return date.toInstant().toEpochMilli() - clock.millis();
+            } catch (DateTimeParseException ignored) {
+                log.debug("Ignoring unparseable Retry-After header: {}", retryAfter);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * When the server reports no requests remaining in its window, returns the time until the window resets.
+     * The reset value is read as seconds from now, or as epoch seconds when it is that large.
+     */
+    private long rateLimitResetMillis(HttpHeaders headers) {
+        String remaining = firstHeader(headers, "RateLimit-Remaining", "X-RateLimit-Remaining");
+        String reset = firstHeader(headers, "RateLimit-Reset", "X-RateLimit-Reset");
+        if (remaining == null || reset == null) {
+            return 0;
+        }
+        try {
+            if (Long.parseLong(remaining.trim()) > 0) {
+                return 0;
+            }
+            long resetSeconds = Long.parseLong(reset.trim());
+            return resetSeconds > 1_000_000_000L
+                    ? TimeUnit.SECONDS.toMillis(resetSeconds) - clock.millis()
+                    : TimeUnit.SECONDS.toMillis(resetSeconds);
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring unparseable rate-limit headers: remaining={}, reset={}", remaining, reset);
+            return 0;
+        }
+    }
+
+    private String firstHeader(HttpHeaders headers, String... names) {
+        for (String name : names) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The adaptive rate of one endpoint class.
+     */
+    private final class Bucket {
+        private final RateLimiter limiter;
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        // When the rate last changed; the next increase is due one interval later
+        private long changedAtNanos = ticker.read();
+
+        private Bucket(double initialRate) {
+            this.limiter = RateLimiter.create(initialRate);
+        }
+
+        private synchronized void increase() {
+            double rate = limiter.getRate();
+            double ceiling = getMaxRate();
+            long now = ticker.read();
+            if (rate < ceiling && now - changedAtNanos >= increaseIntervalNanos) {
+                limiter.setRate(Math.min(ceiling, rate + additiveIncrease));
+                changedAtNanos = now;
+            }
+        }
+
+        private synchronized double decrease() {
+            double rate = Math.max(minRate, limiter.getRate() * decreaseFactor);
+            limiter.setRate(rate);
+            changedAtNanos = ticker.read();
+            return rate;
+        }
+
+        private synchronized void reset(double rate) {
+            limiter.setRate(rate);
+            changedAtNanos = ticker.read();
+        }
+    }
+}
@@ -1,61 +1,116 @@
 package com.hashcodehub.gleifleispringbatchprocessor;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.Chunk;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.ItemStreamWriter;
 import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemWriter;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Main Spring Batch configuration class.
  * Defines the job, step, reader, processor, and writer beans.
  */
 @Configuration
+@Slf4j
 public class BatchConfig {
 
     private final JobRepository jobRepository;
     private final PlatformTransactionManager transactionManager;
     private final GleifApiService gleifApiService;
+    private final LeiInputPreflight leiInputPreflight;
+    private final StepMetricsListener stepMetricsListener;
+    private final FailedBatchSkipListener failedBatchSkipListener;
+    private final FailedLeiTrackerService failedLeiTrackerService;
 
     // Inject file paths from application.properties for production-ready configuration
     @Value("${gleif.input.file-path}")
     private Resource inputResource;
 
-    public BatchConfig(JobRepository jobRepository, PlatformTransactionManager transactionManager, GleifApiService gleifApiService) {
+    // Number of LEI IDs resolved per bulk lookup in BULK fetch mode
+    @Value("${gleif.api.bulk-size:200}")
+    private int bulkSize;
+
+    // Bounds and target of the adaptive commit interval in SINGLE fetch mode
+    @Value("${gleif.job.chunk.initial-size:10}")
+    private int chunkInitialSize;
+
+    @Value("${gleif.job.chunk.min-size:1}")
+    private int chunkMinSize;
+
+    @Value("${gleif.job.chunk.max-size:100}")
+    private int chunkMaxSize;
+
+    @Value("${gleif.job.chunk.target-overhead:0.05}")
+    private double chunkTargetOverhead;
+
+    public BatchConfig(JobRepository jobRepository, PlatformTransactionManager transactionManager, GleifApiService gleifApiService,
+                       LeiInputPreflight leiInputPreflight, StepMetricsListener stepMetricsListener,
+                       FailedBatchSkipListener failedBatchSkipListener, FailedLeiTrackerService failedLeiTrackerService) {
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
         this.gleifApiService = gleifApiService;
+        this.leiInputPreflight = leiInputPreflight;
+        this.stepMetricsListener = stepMetricsListener;
+        this.failedBatchSkipListener = failedBatchSkipListener;
+        this.failedLeiTrackerService = failedLeiTrackerService;
     }
 
     /**
      * Defines the ItemReader to read LEI IDs from the input CSV file.
      * The file path is now managed via application.properties.
+     * IDs that fail the pre-flight checks (format, check digits, duplicates) are dropped before they reach
+     * the processor, see LeiInputPreflight.
+     * Step-scoped, so every step run gets its own reader whose read count is saved at each commit; a restarted
+     * execution skips the LEIs its failed predecessor had already committed. The pre-flight reads those skipped
+     * LEIs back into its duplicate state, so a duplicate of an LEI from before the restart point is still dropped.
      *
-     * @return a FlatFileItemReader for reading LEI IDs.
+     * @return a FlatFileItemReader for reading LEI IDs, behind the pre-flight filter.
      */
     @Bean
-    public ItemReader<String> leiIdReader() {
-        return new FlatFileItemReaderBuilder<String>()
+    @StepScope // Declared as ItemStreamReader so the scoped proxy exposes open/update/close to the step
+    public ItemStreamReader<String> leiIdReader() {
+        return leiInputPreflight.filter(new FlatFileItemReaderBuilder<String>()
                 .name("leiIdReader")
                 .resource(inputResource)
                 .delimited().names("lei_id") // Assumes a single column with header "lei_id"
                 .linesToSkip(1) // Skip the header row
                 .fieldSetMapper(fieldSet -> fieldSet.readString("lei_id"))
-                .build();
+                .build());
     }
 
 //    /**
@@ -112,35 +167,299 @@ public class BatchConfig {
     /**
      * Defines a single step in the batch job with a more robust error handling configuration.
      * It now takes the LeiDataProcessor as a dependency, resolving the bean conflict.
+     * The commit interval adapts to the measured cost of each chunk within the gleif.job.chunk.* bounds,
+     * see AdaptiveCompletionPolicy; job-scoped so every run measures its own chunks.
      *
      * @param leiDataProcessor The processor component.
      * @param leiDataWriter The writer component.
+     * @param meterRegistry Receives the chunk sizes.
      * @return the Step bean.
      */
     @Bean
-    public Step processLeiRecordsStep(LeiDataProcessor leiDataProcessor, ItemWriter<Map<String, Object>> leiDataWriter) {
+    @JobScope
+    public Step processLeiRecordsStep(LeiDataProcessor leiDataProcessor, ItemWriter<Map<String, Object>> leiDataWriter,
+                                      MeterRegistry meterRegistry) {
+        AdaptiveCompletionPolicy commitInterval = new AdaptiveCompletionPolicy("processLeiRecordsStep", chunkInitialSize,
+                chunkMinSize, chunkMaxSize, chunkTargetOverhead, meterRegistry);
         return new StepBuilder("processLeiRecordsStep", jobRepository)
-                .<String, Map<String, Object>>chunk(2, transactionManager) // Process in chunks of 10
+                .<String, Map<String, Object>>chunk(commitInterval, transactionManager)
                 .reader(leiIdReader())
                 .processor(leiDataProcessor)
                 .writer(leiDataWriter)
+                .stream(failedLeiTrackerService) // Flushes the failure log before each commit
+                .listener(stepMetricsListener)
+                .listener((Object) commitInterval) // Times the chunks it sizes
                 .faultTolerant() // Enable fault tolerance
                 .skipLimit(100) // Skip up to 100 failed items before the job itself fails
                 .skip(Exception.class) // Skip any exception during processing or writing
+                .noSkip(ItemStreamException.class) // ...but fail on output the writer could not cut back to the last commit
+                .build();
+    }
+
+    /**
+     * Defines the bulk variant of the processing step. The reader groups LEI IDs into
+     * batches of gleif.api.bulk-size, each batch is resolved with paged collection queries,
+     * and the writer flattens the batch back into the per-record writer.
+     * A skipped batch has all its IDs logged as failed (see FailedBatchSkipListener), so they can be replayed.
+     *
+     * @param leiDataProcessor The processor component.
+     * @param leiDataWriter The writer component.
+     * @return the Step bean.
+     */
+    @Bean
+    public Step processLeiRecordsBulkStep(LeiDataProcessor leiDataProcessor, ItemStreamWriter<Map<String, Object>> leiDataWriter) {
+        return bulkStep("processLeiRecordsBulkStep", leiIdReader(), leiDataProcessor::processChunk, leiDataWriter);
+    }
+
+    /**
+     * Defines the incremental variant of the bulk step. Each batch is queried with a
+     * lastUpdateDate filter set to the watermark of the last successful run, so only LEIs of the
+     * input that changed since then are fetched and written. Without a watermark every record is fetched.
+     * Input LEIs that are not in the LEI records file yet are fetched whatever their lastUpdateDate (all of them,
+     * when the CSV output is disabled).
+     *
+     * @param leiDataProcessor The processor component.
+     * @param leiDataWriter The writer component.
+     * @param syncWatermarkRepository The watermark store.
+     * @param csvWriterService Reads the LEIs already written.
+     * @return the Step bean.
+     */
+    @Bean
+    @JobScope
+    public Step processLeiRecordsIncrementalStep(LeiDataProcessor leiDataProcessor, ItemStreamWriter<Map<String, Object>> leiDataWriter,
+                                                 SyncWatermarkRepository syncWatermarkRepository, CsvWriterService csvWriterService)
+            throws IOException {
+        String updatedSince = syncWatermarkRepository.findMaxLastUpdateDate(SyncWatermarkRepository.LEI_RECORDS)
+                .map(watermark -> watermark.toInstant().toString())
+                .orElse(null);
+        LeiSet writtenLeis = updatedSince != null ? csvWriterService.readWrittenLeis() : null;
+        log.info("Incremental sync of records updated after: {}", updatedSince != null
+                ? updatedSince + " (" + writtenLeis.size() + " LEIs already written)" : "(no watermark, full sync)");
+        return bulkStep("processLeiRecordsIncrementalStep", leiIdReader(),
+                leiIds -> leiDataProcessor.processChunk(leiIds, updatedSince, writtenLeis), leiDataWriter);
+    }
+
+    private Step bulkStep(String name, ItemReader<String> reader, ItemProcessor<List<String>, List<Map<String, Object>>> batchProcessor,
+                          ItemStreamWriter<Map<String, Object>> leiDataWriter) {
+        LeiIdBatchReader batchReader = new LeiIdBatchReader(reader, bulkSize);
+        ItemWriter<List<Map<String, Object>>> batchWriter = chunk -> {
+            List<Map<String, Object>> records = new ArrayList<>();
+            for (List<Map<String, Object>> batch : chunk) {
+                records.addAll(batch);
+            }
+            leiDataWriter.write(new Chunk<>(records));
+        };
+        return new StepBuilder(name, jobRepository)
+                .<List<String>, List<Map<String, Object>>>chunk(1, transactionManager) // One bulk batch per transaction
+                .reader(batchReader)
+                .processor(batchProcessor)
+                .writer(batchWriter)
+                .stream(leiDataWriter) // The flattening writer hides the CSV writer from the step, so register its stream explicitly
+                .stream(failedLeiTrackerService) // Flushes the failure log before each commit
+                .listener((ChunkListener) leiDataWriter) // ...and its chunk listener, which cuts off the rows of a failed chunk
+                .listener(stepMetricsListener)
+                .faultTolerant()
+                .skipLimit(100)
+                .skip(Exception.class)
+                .noSkip(ItemStreamException.class)
+                .listener(failedBatchSkipListener) // A skip drops a whole batch of IDs
                 .build();
     }
 
+    /**
+     * Defines the pool that runs LeiDataProcessor for the concurrent steps. It is shared by every run and shut down
+     * with the application context, so its threads cap the records in flight across all concurrent runs at once.
+     * Not a default candidate, so Boot's application task executor is left in place.
+     *
+     * @param fetchThreads The pool size, from "gleif.job.fetch-threads".
+     * @return the TaskExecutor bean.
+     */
+    @Bean(defaultCandidate = false)
+    public ThreadPoolTaskExecutor leiFetchExecutor(@Value("${gleif.job.fetch-threads:16}") int fetchThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(fetchThreads);
+        executor.setMaxPoolSize(fetchThreads);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("lei-fetch-");
+        return executor;
+    }
 
     /**
-     * Defines the overall batch job.
+     * Defines the concurrent variant of the processing step. LeiDataProcessor runs inside an
+     * AsyncItemProcessor so up to "concurrency" records are in flight at once, all drawing from
+     * the shared rate limiter in GleifApiService. The AsyncItemWriter resolves the futures in
+     * read order, so output order matches input order.
+     * A record's relationship links are fetched on RelationshipFetchService's own pool
+     * ("gleif.api.relationship-fetch-threads", 10 by default), which all in-flight records share: once
+     * "concurrency" goes beyond that pool, the relationship calls queue there and the run gains little.
+     * Raise both together.
+     *
+     * @param leiDataProcessor The processor component.
+     * @param leiDataWriter The writer component.
+     * @param leiFetchExecutor The shared fetch pool.
+     * @param concurrency The number of records in flight, from the "concurrency" job parameter.
+     * @return the Step bean.
+     */
+    @Bean
+    @JobScope
+    public Step processLeiRecordsConcurrentStep(LeiDataProcessor leiDataProcessor, ItemWriter<Map<String, Object>> leiDataWriter,
+                                                @Qualifier("leiFetchExecutor") TaskExecutor leiFetchExecutor,
+                                                @Value("#{jobParameters['concurrency'] ?: ${gleif.job.concurrency:4}}") Integer concurrency) {
+        return concurrentStep("processLeiRecordsConcurrentStep", leiIdReader(), leiDataProcessor, leiDataWriter, leiFetchExecutor, concurrency);
+    }
+
+    private Step concurrentStep(String name, ItemReader<String> reader, LeiDataProcessor leiDataProcessor,
+                                ItemWriter<Map<String, Object>> leiDataWriter, TaskExecutor taskExecutor, int concurrency) {
+        AsyncItemProcessor<String, Map<String, Object>> asyncProcessor = new AsyncItemProcessor<>();
+        asyncProcessor.setDelegate(leiDataProcessor);
+        asyncProcessor.setTaskExecutor(taskExecutor);
+
+        AsyncItemWriter<Map<String, Object>> asyncWriter = new AsyncItemWriter<>();
+        asyncWriter.setDelegate(leiDataWriter);
+
+        return new StepBuilder(name, jobRepository)
+                // The chunk is the in-flight budget: the whole chunk is submitted, then the AsyncItemWriter waits for
+                // every record of it at the commit, so the slots idle while the slowest record finishes. A larger chunk
+                // would not avoid that wait, it would only put more records in flight
+                .<String, Future<Map<String, Object>>>chunk(concurrency, transactionManager)
+                .reader(reader)
+                .processor(asyncProcessor)
+                .writer(asyncWriter)
+                .stream(failedLeiTrackerService) // Flushes the failure log before each commit
+                .listener((ChunkListener) leiDataWriter) // Cuts off the rows of a failed chunk; the async writer hides it from the step
+                .listener(stepMetricsListener)
+                .faultTolerant()
+                .processorNonTransactional() // Never re-run a finished HTTP fetch when a chunk is scanned
+                .skipLimit(100)
+                .skip(Exception.class)
+                .noSkip(ItemStreamException.class)
+                .build();
+    }
+
+    /**
+     * Defines the overall batch job. The fetch mode decider routes the job to the
+     * per-record step (SINGLE, the default), the bulk step (BULK), the concurrent step (CONCURRENT),
+     * the watermark-driven incremental step (INCREMENTAL) or the partitioned step followed by the merge
+     * of its partition outputs (PARTITIONED, see PartitionedBatchConfig).
      *
      * @return the Job bean.
      */
     @Bean
-    public Job leiProcessorJob(Step processLeiRecordsStep) {
+    public Job leiProcessorJob(FetchModeDecider fetchModeDecider, RequestBudgetListener requestBudgetListener,
+                               SyncWatermarkListener syncWatermarkListener, OwnershipGraph ownershipGraph, Step processLeiRecordsStep,
+                               Step processLeiRecordsBulkStep, Step processLeiRecordsConcurrentStep,
+                               Step processLeiRecordsIncrementalStep, Step processLeiRecordsPartitionedStep,
+                               Step mergePartitionOutputsStep) {
         return new JobBuilder("leiProcessorJob", jobRepository)
-                .start(processLeiRecordsStep)
+                .listener(requestBudgetListener)
+                .listener(syncWatermarkListener)
+                .listener(ownershipGraph) // Snapshots the ownership graph after the run
+                .start(fetchModeDecider)
+                .on("BULK").to(processLeiRecordsBulkStep)
+                .from(fetchModeDecider).on("INCREMENTAL").to(processLeiRecordsIncrementalStep)
+                .from(fetchModeDecider).on("CONCURRENT").to(processLeiRecordsConcurrentStep)
+                .from(fetchModeDecider).on("PARTITIONED").to(processLeiRecordsPartitionedStep).next(mergePartitionOutputsStep)
+                .from(fetchModeDecider).on("*").to(processLeiRecordsStep)
+                .end()
+                .build();
+    }
+
+    /**
+     * Defines the replay job for failed records. It takes over the failed records file as its input,
+     * fetches the IDs in it again, each ID once, and leaves a failed records file that only holds the IDs
+     * that failed again. The recovered records are appended to the regular outputs.
+     * The sync watermark is deliberately not moved: a replay only covers part of the input.
+     *
+     * @return the Job bean.
+     */
+    @Bean
+    public Job failedLeiReplayJob(RequestBudgetListener requestBudgetListener, OwnershipGraph ownershipGraph,
+                                  Step prepareFailedLeiReplayStep, Step replayFailedLeisStep, Step finishFailedLeiReplayStep) {
+        return new JobBuilder("failedLeiReplayJob", jobRepository)
+                .listener(requestBudgetListener)
+                .listener(ownershipGraph)
+                .start(prepareFailedLeiReplayStep)
+                .next(replayFailedLeisStep)
+                .next(finishFailedLeiReplayStep)
                 .build();
     }
-}
 
+    /**
+     * Defines the step that moves the failed records file to the replay input, so failures of the replay
+     * itself start a new failed records file.
+     *
+     * @param failedLeiTrackerService The failure log.
+     * @return the Step bean.
+     */
+    @Bean
+    public Step prepareFailedLeiReplayStep(FailedLeiTrackerService failedLeiTrackerService) {
+        return new StepBuilder("prepareFailedLeiReplayStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    long lines = failedLeiTrackerService.prepareReplay();
+                    log.info("Replaying {} failed records from {}", lines, failedLeiTrackerService.getReplayInputPath());
+                    return RepeatStatus.FINISHED;
+                }, transactionManager)
+                .build();
+    }
+
+    /**
+     * Defines the step that fetches the replayed IDs again, through the bulk path (fetch.mode BULK, the default)
+     * or the concurrent path (CONCURRENT). Repeated IDs are dropped without being reported, since an ID that
+     * failed in several runs is expected to appear several times.
+     *
+     * @param leiDataProcessor The processor component.
+     * @param leiDataWriter The writer component.
+     * @param failedLeiTrackerService The failure log, which knows the replay input file.
+     * @param fetchMode The fetch path, from the "fetch.mode" job parameter.
+     * @param leiFetchExecutor The shared fetch pool of the concurrent path.
+     * @param concurrency The number of records in flight in CONCURRENT mode, from the "concurrency" job parameter.
+     * @return the Step bean.
+     */
+    @Bean
+    @JobScope
+    public Step replayFailedLeisStep(LeiDataProcessor leiDataProcessor, ItemStreamWriter<Map<String, Object>> leiDataWriter,
+                                     FailedLeiTrackerService failedLeiTrackerService,
+                                     @Qualifier("leiFetchExecutor") TaskExecutor leiFetchExecutor,
+                                     @Value("#{jobParameters['fetch.mode'] ?: 'BULK'}") String fetchMode,
+                                     @Value("#{jobParameters['concurrency'] ?: ${gleif.job.concurrency:4}}") Integer concurrency) {
+        ItemReader<String> reader = leiInputPreflight.filter(new FlatFileItemReaderBuilder<String>()
+                .name("failedLeiReplayReader")
+                .resource(new FileSystemResource(failedLeiTrackerService.getReplayInputPath()))
+                .strict(false) // No replay input means there is nothing to replay
+                .lineMapper((line, lineNumber) -> {
+                    int end = line.indexOf(',');
+                    return (end < 0 ? line : line.substring(0, end)).trim(); // The LEI ID is the first column
+                })
+                .build(), false);
+        if ("CONCURRENT".equalsIgnoreCase(fetchMode)) {
+            return concurrentStep("replayFailedLeisStep", reader, leiDataProcessor, leiDataWriter, leiFetchExecutor, concurrency);
+        }
+        return bulkStep("replayFailedLeisStep", reader, leiDataProcessor::processChunk, leiDataWriter);
+    }
+
+    /**
+     * Defines the step that removes the replay input once every replayed ID has been fetched or logged as failed again.
+     * If the replay step skipped records, the input is kept for the next replay.
+     *
+     * @param failedLeiTrackerService The failure log.
+     * @return the Step bean.
+     */
+    @Bean
+    public Step finishFailedLeiReplayStep(FailedLeiTrackerService failedLeiTrackerService) {
+        return new StepBuilder("finishFailedLeiReplayStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    long skipped = chunkContext.getStepContext().getStepExecution().getJobExecution().getStepExecutions().stream()
+                            .filter(stepExecution -> stepExecution.getStepName().equals("replayFailedLeisStep"))
+                            .mapToLong(StepExecution::getSkipCount)
+                            .sum();
+                    long stillFailing = failedLeiTrackerService.finishReplay(skipped > 0);
+                    if (skipped > 0) {
+                        log.warn("Failed record replay skipped {} items; keeping {} for the next replay.", skipped,
+                                failedLeiTrackerService.getReplayInputPath());
+                    }
+                    log.info("Failed record replay finished: {} records still failing.", stillFailing);
+                    return RepeatStatus.FINISHED;
+                }, transactionManager)
+                .build();
+    }
+}
@@ -0,0 +1,18 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives every LEI record LeiDataWriter has written, once the chunk that wrote it has committed.
+ * Records of a chunk that rolled back, or of an item that was skipped, are never passed on.
+ * Implementations are picked up as beans; partition worker steps call them from several threads at once.
+ */
+public interface CommittedRecordListener {
+
+    /**
+     * @param leiData       The committed LEI record.
+     * @param relationships Its fetched relationships by type; null or empty if none were fetched (e.g. golden-copy loads).
+     */
+    void recordCommitted(GleifResponse leiData, Map<String, List<RelationshipRecord>> relationships);
+}
@@ -0,0 +1,131 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * RestTemplate interceptor that serves GLEIF GET requests from the HttpResponseStore.
+ * Fresh entries are returned without a request; older entries are revalidated with
+ * If-None-Match / If-Modified-Since and replayed from disk when GLEIF answers 304 Not Modified.
+ * Only the validators are read up front; a stored body is read when it is actually served.
+ */
+@Component
+@Slf4j
+public class ConditionalGetInterceptor implements ClientHttpRequestInterceptor {
+
+    private final HttpResponseStore httpResponseStore;
+
+    public ConditionalGetInterceptor(HttpResponseStore httpResponseStore) {
+        this.httpResponseStore = httpResponseStore;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        if (!httpResponseStore.isEnabled() || request.getMethod() != HttpMethod.GET) {
+            return execution.execute(request, body);
+        }
+
+        String url = request.getURI().toString();
+        HttpResponseStore.Entry cached = httpResponseStore.peek(url);
+        if (cached != null) {
+            if (httpResponseStore.isFresh(cached)) {
+                HttpResponseStore.Entry stored = httpResponseStore.get(url);
+                if (stored != null) {
+                    log.debug("Serving {} from the HTTP cache", url);
+                    return new StoredResponse(stored);
+                }
+            }
+            if (cached.etag() != null) {
+                request.getHeaders().setIfNoneMatch(cached.etag());
+            }
+            if (cached.lastModified() != null) {
+                request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+            }
+        }
+
+        ClientHttpResponse response = execution.execute(request, body);
+        if (cached != null && response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+            HttpResponseStore.Entry stored = httpResponseStore.get(url);
+            if (stored != null) {
+                log.debug("GLEIF confirmed {} unchanged, serving it from the HTTP cache", url);
+                response.close();
+                httpResponseStore.revalidated(stored);
+                return new StoredResponse(stored);
+            }
+            // Evicted since it was peeked; the empty 304 fails to parse, and the retry fetches it unconditionally
+            log.warn("HTTP cache entry for {} was evicted during revalidation", url);
+        }
+        if (!response.getStatusCode().isSameCodeAs(HttpStatus.OK)) {
+            return response;
+        }
+
+        // Buffer the body once so it can be both stored and handed back to the caller
+        byte[] responseBody;
+        try (response) {
+            responseBody = StreamUtils.copyToByteArray(response.getBody());
+        }
+        HttpHeaders headers = response.getHeaders();
+        HttpResponseStore.Entry entry = new HttpResponseStore.Entry(url, headers.getETag(),
+                headers.getFirst(HttpHeaders.LAST_MODIFIED), headers.getFirst(HttpHeaders.CONTENT_TYPE),
+                System.currentTimeMillis(), responseBody);
+        httpResponseStore.put(entry);
+        return new StoredResponse(entry);
+    }
+
+    /**
+     * A 200 OK response replayed from a stored entry.
+     */
+    private static class StoredResponse implements ClientHttpResponse {
+
+        private final HttpResponseStore.Entry entry;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        StoredResponse(HttpResponseStore.Entry entry) {
+            this.entry = entry;
+            if (entry.contentType() != null) {
+                headers.set(HttpHeaders.CONTENT_TYPE, entry.contentType());
+            }
+            if (entry.etag() != null) {
+                headers.setETag(entry.etag());
+            }
+            headers.setContentLength(entry.body().length);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        public String getStatusText() {
+            return HttpStatus.OK.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(entry.body());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,77 +1,137 @@
 package com.hashcodehub.gleifleispringbatchprocessor;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Service to handle all CSV writing logic, with file paths externalized to properties.
+ * Service to handle all CSV formatting logic, with file paths externalized to properties.
+ * Records are printed into a caller-supplied CSVPrinter, so the caller decides when and how
+ * the formatted rows reach the file (see LeiDataWriter, which writes a whole chunk at once).
  */
 @Service
 public class CsvWriterService {
 
+//        String[] headers = {
+//                "id", "lei", "legalName", "registeredAs", "jurisdiction", "status",
+//                "initialRegistrationDate", "lastUpdateDate", "nextRenewalDate",
+//                "managingLou", "legalAddress", "headquartersAddress", "bic"
+//        };
+
+    public static final String[] LEI_RECORD_HEADERS = {
+            "id", "lei", "legalName", "registeredAs", "jurisdiction", "status",
+            "initialRegistrationDate", "lastUpdateDate", "nextRenewalDate",
+            "managingLou", "bic"
+    };
+
+    public static final String[] RELATIONSHIP_HEADERS = {"relationshipType", "id", "type", "attributes"};
+
+    // NORMALIZED relationship layout: one edge per relationship, and each related entity once per run
+    public static final String[] RELATIONSHIP_EDGE_HEADERS = {"lei", "relationshipType", "id", "type", "entityHash"};
+    public static final String[] RELATED_ENTITY_HEADERS = {"entityHash", "id", "type", "attributes"};
+
+    private static final byte[] RECORD_SEPARATOR = CSVFormat.DEFAULT.getRecordSeparator().getBytes(StandardCharsets.UTF_8);
+
     @Value("${gleif.output.lei-records}")
     private String leiRecordsPath;
     @Value("${gleif.output.relationship-records}")
     private String relationshipRecordsPath;
+    @Value("${gleif.output.relationship-edges:output/relationship_edges.csv}")
+    private String relationshipEdgesPath;
+    @Value("${gleif.output.related-entities:output/related_entities.csv}")
+    private String relatedEntitiesPath;
+
+    public String getLeiRecordsPath() {
+        return leiRecordsPath;
+    }
+
+    public String getRelationshipRecordsPath() {
+        return relationshipRecordsPath;
+    }
+
+    public String getRelationshipEdgesPath() {
+        return relationshipEdgesPath;
+    }
+
+    public String getRelatedEntitiesPath() {
+        return relatedEntitiesPath;
+    }
 
     /**
-     * Writes the main LEI record data to a CSV file.
+     * Reads the LEIs of every record in the LEI records file, i.e. every LEI an earlier run has written.
      *
-     * @param data The GleifResponse object to write.
+     * @return the written LEIs; empty if there is no LEI records file yet.
      */
-    public void writeLeiRecordToCsv(GleifResponse data) {
-        System.out.println("Writing main LEI record to " + leiRecordsPath);
-//        String[] headers = {
-//                "id", "lei", "legalName", "registeredAs", "jurisdiction", "status",
-//                "initialRegistrationDate", "lastUpdateDate", "nextRenewalDate",
-//                "managingLou", "legalAddress", "headquartersAddress", "bic"
-//        };
-
-        String[] headers = {
-                "id", "lei", "legalName", "registeredAs", "jurisdiction", "status",
-                "initialRegistrationDate", "lastUpdateDate", "nextRenewalDate",
-                "managingLou", "bic"
-        };
-
-        createParentDirectory(leiRecordsPath);
-        boolean fileExists = new java.io.File(leiRecordsPath).exists();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(leiRecordsPath, true)); // append=true
-             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(headers))) {
-
-            csvPrinter.printRecord(
-                    data.getData().getId(),
-                    data.getData().getAttributes().getLei(),
-                    data.getData().getAttributes().getEntity().getLegalName().getName(),
-                    data.getData().getAttributes().getEntity().getRegisteredAs(),
-                    data.getData().getAttributes().getEntity().getJurisdiction(),
-                    data.getData().getAttributes().getEntity().getStatus(),
-                    data.getData().getAttributes().getRegistration().getInitialRegistrationDate(),
-                    data.getData().getAttributes().getRegistration().getLastUpdateDate(),
-                    data.getData().getAttributes().getRegistration().getNextRenewalDate(),
-                    data.getData().getAttributes().getRegistration().getManagingLou(),
-//                    formatAddress(data.getData().getAttributes().getEntity().getLegalAddress()),
-//                    formatAddress(data.getData().getAttributes().getEntity().getHeadquartersAddress()),
-                    data.getData().getAttributes().getBic() != null ? String.join("|", data.getData().getAttributes().getBic()) : ""
-            );
-
-            System.out.println("Main LEI record written successfully.");
+    public LeiSet readWrittenLeis() throws IOException {
+        LeiSet leis = new LeiSet();
+        Path path = Paths.get(leiRecordsPath);
+        if (!Files.exists(path)) {
+            return leis;
+        }
+        CSVFormat format = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             CSVParser parser = format.parse(reader)) {
+            for (CSVRecord record : parser) {
+                String lei = record.isMapped("lei") && record.isSet("lei") ? record.get("lei") : null;
+                if (lei != null && Lei.isValid(lei)) {
+                    leis.add(lei);
+                }
+            }
+        }
+        return leis;
+    }
 
+    /**
+     * Formats a header row.
+     *
+     * @param headers The column names.
+     * @return the CSV header line, including the record separator.
+     */
+    public String headerLine(String[] headers) {
+        StringBuilder line = new StringBuilder();
+        try (CSVPrinter csvPrinter = new CSVPrinter(line, CSVFormat.DEFAULT)) {
+            csvPrinter.printRecord((Object[]) headers);
         } catch (IOException e) {
-            System.err.println("Error writing LEI record to CSV file.");
-            e.printStackTrace();
+            throw new IllegalStateException("Could not format CSV header", e); // StringBuilder never throws
         }
+        return line.toString();
+    }
+
+    /**
+     * Prints the main LEI record data as one CSV row.
+     *
+     * @param data The GleifResponse object to print.
+     * @param csvPrinter The printer to print to.
+     */
+    public void printLeiRecord(GleifResponse data, CSVPrinter csvPrinter) throws IOException {
+        csvPrinter.printRecord(
+                data.getData().getId(),
+                data.getData().getAttributes().getLei(),
+                data.getData().getAttributes().getEntity().getLegalName().getName(),
+                data.getData().getAttributes().getEntity().getRegisteredAs(),
+                data.getData().getAttributes().getEntity().getJurisdiction(),
+                data.getData().getAttributes().getEntity().getStatus(),
+                data.getData().getAttributes().getRegistration().getInitialRegistrationDate(),
+                data.getData().getAttributes().getRegistration().getLastUpdateDate(),
+                data.getData().getAttributes().getRegistration().getNextRenewalDate(),
+                data.getData().getAttributes().getRegistration().getManagingLou(),
+//                formatAddress(data.getData().getAttributes().getEntity().getLegalAddress()),
+//                formatAddress(data.getData().getAttributes().getEntity().getHeadquartersAddress()),
+                data.getData().getAttributes().getBic() != null ? String.join("|", data.getData().getAttributes().getBic()) : ""
+        );
     }
 
     private String formatAddress(GleifResponse.Address address) {
@@ -86,59 +146,92 @@ public class CsvWriterService {
     }
 
     /**
-     * Writes relationship data to a separate CSV file.
+     * Writes relationship data as CSV rows, one per related record. The attributes column is
+     * copied from the raw response bytes, quoted the way CSVFormat.DEFAULT would quote it,
+     * so the JSON is never decoded or re-serialized.
      *
-     * @param relationshipsData The Map containing the relationship data.
+     * @param relationshipsData The Map of relationship type to its records.
+     * @param out The stream to write the UTF-8 encoded rows to.
      */
-    public void writeRelationshipToCsv(Map<String, JsonNode> relationshipsData) {
-        System.out.println("Writing relationship data to " + relationshipRecordsPath);
-        String[] headers = {"relationshipType", "id", "type", "attributes"};
-
-        createParentDirectory(relationshipRecordsPath);
-        boolean fileExists = new java.io.File(relationshipRecordsPath).exists();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(relationshipRecordsPath, true));
-             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(headers))) {
-
-            for (Map.Entry<String, JsonNode> entry : relationshipsData.entrySet()) {
-                String relationshipType = entry.getKey();
-                JsonNode data = entry.getValue();
-
-                if (data.has("data") && data.get("data").isArray()) {
-                    for (JsonNode record : data.get("data")) {
-                        printRelationshipRecord(record, relationshipType, csvPrinter);
-                    }
-                } else if (data.has("data")) {
-                    printRelationshipRecord(data.get("data"), relationshipType, csvPrinter);
-                }
+    public void printRelationships(Map<String, List<RelationshipRecord>> relationshipsData, ByteArrayOutputStream out) throws IOException {
+        for (Map.Entry<String, List<RelationshipRecord>> entry : relationshipsData.entrySet()) {
+            String relationshipType = entry.getKey();
+            for (RelationshipRecord record : entry.getValue()) {
+                printRelationshipRecord(record, relationshipType, out);
             }
+        }
+    }
 
-            System.out.println("Relationship data written successfully.");
+    private void printRelationshipRecord(RelationshipRecord record, String relationshipType, ByteArrayOutputStream out) throws IOException {
+        out.write(CSVFormat.DEFAULT.format(relationshipType, record.id(), record.type()).getBytes(StandardCharsets.UTF_8));
+        out.write(',');
+        writeField(record.attributes(), out);
+        out.write(RECORD_SEPARATOR);
+    }
 
-        } catch (IOException e) {
-            System.err.println("Error writing relationship data to CSV file.");
-            e.printStackTrace();
-        }
+    /**
+     * Writes one row of the relationship edge file: the LEI, how it relates, and the key of the related entity.
+     *
+     * @param lei The LEI the relationship belongs to.
+     * @param relationshipType The relationship type, e.g. "direct-parent".
+     * @param record The related record.
+     * @param entityHash The related entity's key in the related entities file.
+     * @param out The stream to write the UTF-8 encoded row to.
+     */
+    public void printRelationshipEdge(String lei, String relationshipType, RelationshipRecord record, String entityHash,
+                                      ByteArrayOutputStream out) throws IOException {
+        out.write(CSVFormat.DEFAULT.format(lei, relationshipType, record.id(), record.type(), entityHash).getBytes(StandardCharsets.UTF_8));
+        out.write(RECORD_SEPARATOR);
     }
 
-    private void printRelationshipRecord(JsonNode record, String relationshipType, CSVPrinter csvPrinter) throws IOException {
-        String id = record.has("id") ? record.get("id").asText() : "";
-        String type = record.has("type") ? record.get("type").asText() : "";
-        String attributes = "";
+    /**
+     * Writes one row of the related entities file, with the attributes copied from the raw response bytes.
+     *
+     * @param entityHash The entity key, see RelatedEntityIndex.
+     * @param record The related record.
+     * @param out The stream to write the UTF-8 encoded row to.
+     */
+    public void printRelatedEntity(String entityHash, RelationshipRecord record, ByteArrayOutputStream out) throws IOException {
+        out.write(CSVFormat.DEFAULT.format(entityHash, record.id(), record.type()).getBytes(StandardCharsets.UTF_8));
+        out.write(',');
+        writeField(record.attributes(), out);
+        out.write(RECORD_SEPARATOR);
+    }
 
-        if (record.has("attributes")) {
-            attributes = record.get("attributes").toString().replace("\n", "").replace("\r", "");
+    /**
+     * Writes a field with CSVFormat.DEFAULT's minimal quoting: the field is quoted when it starts with a
+     * character up to '#' or contains a delimiter, quote or line break, and quotes inside it are doubled.
+     */
+    private void writeField(byte[] value, ByteArrayOutputStream out) {
+        if (!needsQuotes(value)) {
+            out.write(value, 0, value.length);
+            return;
         }
-
-        csvPrinter.printRecord(relationshipType, id, type, attributes);
+        out.write('"');
+        int from = 0;
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] == '"') {
+                out.write(value, from, i + 1 - from);
+                out.write('"');
+                from = i + 1;
+            }
+        }
+        out.write(value, from, value.length - from);
+        out.write('"');
     }
 
-    private void createParentDirectory(String filePath) {
-        try {
-            Path path = Paths.get(filePath);
-            Files.createDirectories(path.getParent());
-        } catch (IOException e) {
-            System.err.println("Failed to create parent directories for file: " + filePath);
+    private boolean needsQuotes(byte[] value) {
+        if (value.length == 0) {
+            return false;
+        }
+        if ((value[0] & 0xFF) <= '#') {
+            return true;
+        }
+        for (byte b : value) {
+            if (b == ',' || b == '"' || b == '\n' || b == '\r') {
+                return true;
+            }
         }
+        return false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Skip listener of the bulk steps, where an item is a whole batch of LEI IDs. A batch whose processing or
+ * write throws is skipped as a whole, so every ID in it is logged to the failed records file, where the
+ * failed record replay picks it up again. IDs the batch had already logged before it failed are logged
+ * twice; the replay drops the repeats.
+ */
+@Component
+@Slf4j
+public class FailedBatchSkipListener implements SkipListener<List<String>, List<Map<String, Object>>> {
+
+    private final FailedLeiTrackerService failedLeiTrackerService;
+
+    public FailedBatchSkipListener(FailedLeiTrackerService failedLeiTrackerService) {
+        this.failedLeiTrackerService = failedLeiTrackerService;
+    }
+
+    @Override
+    public void onSkipInProcess(List<String> leiIds, Throwable t) {
+        log.warn("Skipped batch of {} LEIs in processing: {}", leiIds.size(), t.getMessage());
+        for (String leiId : leiIds) {
+            failedLeiTrackerService.logFailedLei(leiId, "Batch skipped in processing: " + t.getMessage());
+        }
+    }
+
+    @Override
+    public void onSkipInWrite(List<Map<String, Object>> records, Throwable t) {
+        log.warn("Skipped batch of {} LEI records in writing: {}", records.size(), t.getMessage());
+        for (Map<String, Object> record : records) {
+            GleifResponse leiData = (GleifResponse) record.get("leiData");
+            failedLeiTrackerService.logFailedLei(leiData.getData().getAttributes().getLei(),
+                    "Batch skipped in writing: " + t.getMessage());
+        }
+    }
+}
@@ -1,38 +1,141 @@
 package com.hashcodehub.gleifleispringbatchprocessor;
 
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * Service to track and log failed LEI IDs and URLs to dedicated output files.
+ * Callers only enqueue their entries; a single writer thread appends them, one batch at a time,
+ * to files it keeps open, and flushes once per batch. File operations that must not interleave with
+ * those appends (such as handing the failed records over to a replay) run on the same thread.
+ * <p>
+ * Registered as a stream of the fetching steps: {@link #update(ExecutionContext)} runs just before each chunk's
+ * checkpoint is saved and flushes the failures queued so far, so a crash after the commit cannot lose failed IDs
+ * that a restart will not revisit.
  */
+@Slf4j
 @Service
-public class FailedLeiTrackerService {
+public class FailedLeiTrackerService implements ItemStream {
 
     @Value("${gleif.output.failed-records}")
     private String failedRecordsPath;
 
+    @Value("${gleif.output.rejected-records:output/rejected_records.csv}")
+    private String rejectedRecordsPath;
+
+    // Upper bound on the entries written between two flushes
+    @Value("${gleif.output.failure-log.batch-size:1000}")
+    private int batchSize;
+
+    // How long a caller waits for the writer thread to reach its flush or task
+    @Value("${gleif.output.failure-log.timeout:60s}")
+    private Duration timeout;
+
     private static final String FAILED_URLS_FILE = "failed_urls.log";
 
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Writer> writers = new HashMap<>();
+    private final AtomicLong failedLeis = new AtomicLong();
+    private Thread writerThread;
+
+    /**
+     * An entry for the writer thread: either a line to append to a file, or a task to run between appends.
+     */
+    private record Entry(String filePath, String content, WriterTask<?> task) {
+    }
+
+    private record WriterTask<T>(Callable<T> callable, CompletableFuture<T> result) {
+        void run() {
+            try {
+                result.complete(callable.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final Entry STOP = new Entry(null, null, null);
+
+    @PostConstruct
+    public void start() {
+        writerThread = new Thread(this::writeLoop, "failure-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Writes everything still queued and closes the files.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        queue.add(STOP);
+        writerThread.join();
+    }
+
     /**
      * Logs a failed LEI record with the LEI ID and a reason to a dedicated CSV file.
+     * The reason is quoted where needed, so the file can be read back as CSV.
      *
      * @param leiId The ID that failed processing.
      * @param reason The reason for the failure.
      */
     public void logFailedLei(String leiId, String reason) {
-        String logEntry = String.format("%s,%s%n", leiId, reason);
-        appendToFile(failedRecordsPath, logEntry);
+        failedLeis.incrementAndGet();
+        appendToFile(failedRecordsPath, CSVFormat.DEFAULT.format(leiId, reason) + System.lineSeparator());
+    }
+
+    /**
+     * @return the number of failed LEIs logged since startup; the difference over a run is what the run logged.
+     */
+    public long getFailedLeiCount() {
+        return failedLeis.get();
+    }
+
+    /**
+     * Logs an input LEI ID that was rejected before any API call, with the reason, to a separate CSV file.
+     * The ID is quoted where needed, since it is raw input.
+     *
+     * @param leiId The rejected input ID.
+     * @param reason The reason for the rejection.
+     */
+    public void logRejectedLei(String leiId, String reason) {
+        appendToFile(rejectedRecordsPath, CSVFormat.DEFAULT.format(leiId, reason) + System.lineSeparator());
     }
 
     /**
@@ -49,21 +152,181 @@ public class FailedLeiTrackerService {
     }
 
     /**
-     * Appends a log entry to a specified file, ensuring the directory exists.
+     * Blocks until every entry logged before this call is written and flushed.
+     */
+    public void flush() {
+        runOnWriter(() -> null);
+    }
+
+    /**
+     * Flushes the failure log before the chunk commits.
+     */
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            throw new ItemStreamException("Could not flush the failure log", e);
+        }
+    }
+
+    /**
+     * Returns the file a replay of the failed records reads from: replay_ plus the failed records file name.
+     *
+     * @return the replay input path.
+     */
+    public Path getReplayInputPath() {
+        Path failedRecords = Paths.get(failedRecordsPath);
+        return failedRecords.resolveSibling("replay_" + failedRecords.getFileName());
+    }
+
+    /**
+     * Hands the failed records over to a replay: they move to the replay input file, and failures logged
+     * from then on start a new failed records file. The replay input of an earlier, unfinished replay is
+     * kept and the current failed records are appended to it, so no failed ID is lost.
+     *
+     * @return the number of lines in the replay input.
+     */
+    public long prepareReplay() {
+        return runOnWriter(() -> {
+            Path failedRecords = Paths.get(failedRecordsPath);
+            Path replayInput = getReplayInputPath();
+            if (Files.exists(failedRecords)) {
+                if (Files.exists(replayInput)) {
+                    try (InputStream in = Files.newInputStream(failedRecords);
+                         OutputStream out = Files.newOutputStream(replayInput, StandardOpenOption.APPEND)) {
+                        in.transferTo(out);
+                    }
+                    Files.delete(failedRecords);
+                } else {
+                    Files.move(failedRecords, replayInput, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            return lineCount(replayInput);
+        });
+    }
+
+    /**
+     * Ends a replay: the replay input is deleted, leaving only the IDs that failed again in the failed records file.
+     * When the replay skipped records the input is kept instead, since a skipped ID may not have been logged again;
+     * the next replay appends the new failures to it and drops the repeats.
+     *
+     * @param keepInput Whether to keep the replay input.
+     * @return the number of lines in the failed records file.
+     */
+    public long finishReplay(boolean keepInput) {
+        return runOnWriter(() -> {
+            if (!keepInput) {
+                Files.deleteIfExists(getReplayInputPath());
+            }
+            return lineCount(Paths.get(failedRecordsPath));
+        });
+    }
+
+    private long lineCount(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return lines.filter(line -> !line.isBlank()).count();
+        }
+    }
+
+    /**
+     * Queues a log entry for the writer thread.
      *
      * @param filePath The name of the file.
      * @param content The content to append.
      */
     private void appendToFile(String filePath, String content) {
+        queue.add(new Entry(filePath, content, null));
+    }
+
+    /**
+     * Runs a task on the writer thread, after every entry queued before it has been written and the files
+     * have been closed, and waits for its result, for at most gleif.output.failure-log.timeout.
+     */
+    private <T> T runOnWriter(Callable<T> callable) {
+        WriterTask<T> task = new WriterTask<>(callable, new CompletableFuture<>());
+        queue.add(new Entry(null, null, task));
         try {
-            Path path = Paths.get(filePath);
-            Files.createDirectories(path.getParent()); // Creates the 'output' directory if it doesn't exist
+            return task.result().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Failure log writer did not respond within " + timeout
+                    + (writerThread.isAlive() ? "" : "; the writer thread has stopped"), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the failure log writer", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw new UncheckedIOException(ioException);
+            }
+            throw new IllegalStateException("Failure log task failed", e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            for (Entry entry : batch) {
+                if (entry == STOP) {
+                    running = false;
+                } else if (entry.task() != null) {
+                    closeWriters();
+                    entry.task().run();
+                } else {
+                    write(entry);
+                }
+            }
+            batch.clear();
+            flushWriters();
+        }
+        closeWriters();
+    }
+
+    private void write(Entry entry) {
+        try {
+            Writer writer = writers.get(entry.filePath());
+            if (writer == null) {
+                Path path = Paths.get(entry.filePath());
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent()); // Creates the 'output' directory if it doesn't exist
+                }
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                writers.put(entry.filePath(), writer);
+            }
+            writer.write(entry.content());
+        } catch (IOException | RuntimeException e) { // Never let one entry stop the writer thread
+            log.error("Could not write to file {}", entry.filePath(), e);
+        }
+    }
+
+    private void flushWriters() {
+        for (Map.Entry<String, Writer> writer : writers.entrySet()) {
+            try {
+                writer.getValue().flush();
+            } catch (IOException e) {
+                log.error("Could not flush file {}", writer.getKey(), e);
+            }
+        }
+    }
 
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath, true))) {
-                writer.write(content);
+    private void closeWriters() {
+        for (Map.Entry<String, Writer> writer : writers.entrySet()) {
+            try {
+                writer.getValue().close();
+            } catch (IOException e) {
+                log.error("Could not close file {}", writer.getKey(), e);
             }
-        } catch (IOException e) {
-            System.err.println("Could not write to file " + filePath + ". Reason: " + e.getMessage());
         }
+        writers.clear();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides which processing step the LEI job runs.
+ * The mode comes from the "fetch.mode" job parameter and falls back to gleif.job.fetch-mode.
+ */
+@Component
+public class FetchModeDecider implements JobExecutionDecider {
+
+    public static final String FETCH_MODE_PARAMETER = "fetch.mode";
+
+    @Value("${gleif.job.fetch-mode:SINGLE}")
+    private String defaultFetchMode;
+
+    @Override
+    public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
+        String mode = jobExecution.getJobParameters().getString(FETCH_MODE_PARAMETER, defaultFetchMode);
+        return new FlowExecutionStatus(mode.trim().toUpperCase());
+    }
+}
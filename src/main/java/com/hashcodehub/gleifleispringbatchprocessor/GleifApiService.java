@@ -1,43 +1,56 @@
 package com.hashcodehub.gleifleispringbatchprocessor;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.util.concurrent.RateLimiter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Recover;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import java.util.HashMap;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Service to handle all GLEIF API interactions, with built-in retry and recovery logic.
+ * Response bodies are parsed straight from the response stream by GleifResponseParser,
+ * which binds only the fields the job writes. Request pacing is applied to every call by
+ * RateControlInterceptor, so a retry after a 429 waits for the rate controller rather than a fixed backoff.
  */
 @Service
 @Slf4j
 public class GleifApiService {
 
+    // Same media types RestTemplate sent when bodies were read as String, minus text/plain
+    private static final RequestCallback ACCEPT_JSON = request -> request.getHeaders().setAccept(List.of(
+            MediaType.APPLICATION_JSON, MediaType.parseMediaType("application/*+json"), MediaType.ALL));
+
     private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
+    private final GleifResponseParser gleifResponseParser;
     private final FailedLeiTrackerService failedLeiTrackerService;
-    // Use a RateLimiter to ensure no more than 60 requests per minute (1 per second)
-    private final RateLimiter rateLimiter = RateLimiter.create(1.0); // 1.0 permits per second
 
 
     // Inject the base URL from application.properties
     @Value("${gleif.api.base-url}")
     private String baseUrl;
 
-    public GleifApiService(RestTemplate restTemplate, ObjectMapper objectMapper, FailedLeiTrackerService failedLeiTrackerService) {
+    // Page size for filtered collection queries (GLEIF caps this at 200)
+    @Value("${gleif.api.bulk-size:200}")
+    private int bulkPageSize;
+
+    public GleifApiService(RestTemplate restTemplate, GleifResponseParser gleifResponseParser, FailedLeiTrackerService failedLeiTrackerService) {
         this.restTemplate = restTemplate;
-        this.objectMapper = objectMapper;
+        this.gleifResponseParser = gleifResponseParser;
         this.failedLeiTrackerService = failedLeiTrackerService;
     }
 
@@ -50,23 +63,19 @@ public class GleifApiService {
      */
     @Retryable(
             value = {HttpServerErrorException.class, ResourceAccessException.class},
-            notRecoverable = {HttpClientErrorException.class}, // Do not retry on 4xx client errors
+            notRecoverable = {HttpClientErrorException.class}, // Do not retry on 4xx client errors (429 is rethrown as retryable, see fetchFailure)
             maxAttempts = 3,
-            backoff = @Backoff(delay = 1000, multiplier = 2)
+            backoff = @Backoff(delay = 1000, multiplier = 2),
+            recover = "recoverFetchLeiRecord"
     )
     public GleifResponse fetchLeiRecord(String leiId) {
-        // Wait for a token from the rate limiter before proceeding
-        rateLimiter.acquire();
-        log.info("limit acquired .. ");
-        String url = baseUrl + "/lei-records/" + leiId;
-        System.out.println("Attempting to fetch LEI record for ID: " + leiId);
+        log.debug("Attempting to fetch LEI record for ID: {}", leiId);
         try {
-            String response = restTemplate.getForObject(url, String.class);
-            return objectMapper.readValue(response, GleifResponse.class);
+            return readLeiRecord(leiId);
         } catch (Exception e) {
             // Log the exception for better tracing
-            System.err.println("Error fetching or deserializing LEI ID " + leiId + ": " + e.getMessage());
-            throw new RuntimeException("Fetch or deserialization failed for LEI: " + leiId, e);
+            log.warn("Error fetching or deserializing LEI ID {}: {}", leiId, e.getMessage());
+            throw fetchFailure("Fetch or deserialization failed for LEI: " + leiId, e);
         }
     }
 
@@ -81,36 +90,154 @@ public class GleifApiService {
     @Recover
     public GleifResponse recoverFetchLeiRecord(RuntimeException e, String leiId) {
         String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
-        System.err.println("All retry attempts failed for LEI ID: " + leiId + ". Reason: " + reason);
+        log.warn("All retry attempts failed for LEI ID: {}. Reason: {}", leiId, reason);
         // Log the failure to the dedicated error file
         failedLeiTrackerService.logFailedLei(leiId, reason);
         return null;
     }
 
+    /**
+     * Fetches a single LEI record for a lookup outside the batch job. Retries and pacing are the same as in
+     * {@link #fetchLeiRecord(String)}, but failures are thrown to the caller instead of being recorded in the
+     * failure log, which the failed record replay would then fetch again.
+     *
+     * @param leiId The LEI ID to fetch.
+     * @return the record, or null when GLEIF answers 404 Not Found.
+     */
+    @Retryable(
+            value = {HttpServerErrorException.class, ResourceAccessException.class},
+            notRecoverable = {HttpClientErrorException.class},
+            maxAttempts = 3,
+            backoff = @Backoff(delay = 1000, multiplier = 2),
+            recover = "recoverLookupLeiRecord"
+    )
+    public GleifResponse lookupLeiRecord(String leiId) {
+        log.debug("Attempting to look up LEI record for ID: {}", leiId);
+        try {
+            return readLeiRecord(leiId);
+        } catch (HttpClientErrorException.NotFound e) {
+            return null;
+        } catch (Exception e) {
+            log.warn("Error looking up or deserializing LEI ID {}: {}", leiId, e.getMessage());
+            throw fetchFailure("Lookup or deserialization failed for LEI: " + leiId, e);
+        }
+    }
+
+    /**
+     * Recover method for lookupLeiRecord when all retries fail; rethrows, so the failure stays out of the failure log.
+     *
+     * @param e     The exception that caused the failure.
+     * @param leiId The LEI ID that failed.
+     * @return never returns.
+     */
+    @Recover
+    public GleifResponse recoverLookupLeiRecord(RuntimeException e, String leiId) {
+        log.warn("All retry attempts failed for lookup of LEI ID: {}", leiId);
+        throw e;
+    }
+
+    private GleifResponse readLeiRecord(String leiId) {
+        return restTemplate.execute(baseUrl + "/lei-records/" + leiId, HttpMethod.GET, ACCEPT_JSON,
+                response -> gleifResponseParser.parseRecord(response.getBody()));
+    }
+
+    /**
+     * Fetches several LEI records at once through the filtered collection endpoint,
+     * paging through {@code /lei-records?filter[lei]=A,B,C...} until every page has been read.
+     * IDs that GLEIF does not return are simply absent from the result map; it is up to the
+     * caller to decide how to report them.
+     * When updatedSince is given, the query is narrowed to records whose registration.lastUpdateDate
+     * is after it, so unchanged records are not returned at all.
+     *
+     * @param leiIds       The LEI IDs to fetch.
+     * @param updatedSince Optional ISO-8601 timestamp; null fetches every requested record.
+     * @return A map of LEI ID to its single-record GleifResponse, in the order GLEIF returned them.
+     */
+    @Retryable(
+            value = {HttpServerErrorException.class, ResourceAccessException.class},
+            notRecoverable = {HttpClientErrorException.class},
+            maxAttempts = 3,
+            backoff = @Backoff(delay = 1000, multiplier = 2),
+            recover = "recoverFetchLeiRecords"
+    )
+    public Map<String, GleifResponse> fetchLeiRecords(List<String> leiIds, String updatedSince) {
+        Map<String, GleifResponse> records = new LinkedHashMap<>();
+        int page = 1;
+        int lastPage = 1;
+        do {
+            UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromUriString(baseUrl)
+                    .path("/lei-records")
+                    .queryParam("filter[lei]", String.join(",", leiIds));
+            if (updatedSince != null) {
+                uriBuilder.queryParam("filter[registration.lastUpdateDate]", ">" + updatedSince);
+            }
+            URI uri = uriBuilder
+                    .queryParam("page[size]", bulkPageSize)
+                    .queryParam("page[number]", page)
+                    .encode()
+                    .build()
+                    .toUri();
+            log.debug("Attempting bulk fetch of {} LEI records, page {}", leiIds.size(), page);
+            try {
+                GleifCollectionResponse collection = restTemplate.execute(uri, HttpMethod.GET, ACCEPT_JSON,
+                        response -> gleifResponseParser.parseCollection(response.getBody()));
+                if (collection.getData() != null) {
+                    for (GleifResponse.Data data : collection.getData()) {
+                        records.put(data.getId(), new GleifResponse(collection.getMeta(), data, data.getLinks()));
+                    }
+                }
+                if (collection.getMeta() != null && collection.getMeta().getPagination() != null) {
+                    lastPage = collection.getMeta().getPagination().getLastPage();
+                }
+            } catch (Exception e) {
+                log.warn("Error fetching or deserializing bulk LEI page {}: {}", page, e.getMessage());
+                throw fetchFailure("Bulk fetch or deserialization failed for " + leiIds.size() + " LEIs", e);
+            }
+            page++;
+        } while (page <= lastPage);
+        return records;
+    }
+
+    /**
+     * Recover method for fetchLeiRecords when all retries fail.
+     * Every requested ID is logged as failed, since none of them could be resolved.
+     *
+     * @param e            The exception that caused the failure.
+     * @param leiIds       The LEI IDs that were requested.
+     * @param updatedSince The lastUpdateDate filter that was requested, if any.
+     * @return null to signal that the whole batch failed.
+     */
+    @Recover
+    public Map<String, GleifResponse> recoverFetchLeiRecords(RuntimeException e, List<String> leiIds, String updatedSince) {
+        String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+        log.warn("All retry attempts failed for bulk fetch of {} LEIs. Reason: {}", leiIds.size(), reason);
+        for (String leiId : leiIds) {
+            failedLeiTrackerService.logFailedLei(leiId, reason);
+        }
+        return null;
+    }
+
     /**
      * Fetches data from a relationships endpoint with retry functionality.
      *
      * @param url The URL of the relationship endpoint.
-     * @return A JsonNode representing the data from the relationship.
+     * @return The records of the relationship document, with their attributes as raw JSON bytes.
      */
     @Retryable(
             value = {HttpServerErrorException.class, ResourceAccessException.class},
             notRecoverable = {HttpClientErrorException.class},
             maxAttempts = 3,
-            backoff = @Backoff(delay = 1000, multiplier = 2)
+            backoff = @Backoff(delay = 1000, multiplier = 2),
+            recover = "recoverFetchRelationshipData"
     )
-    public JsonNode fetchRelationshipData(String url) {
-        // Wait for a token from the rate limiter before proceeding
-        rateLimiter.acquire();
-        log.info("limit acquired .. ");
+    public List<RelationshipRecord> fetchRelationshipData(String url) {
 
-        System.out.println("Attempting to fetch relationship data from URL: " + url);
+        log.debug("Attempting to fetch relationship data from URL: {}", url);
         try {
-            String response = restTemplate.getForObject(url, String.class);
-            return objectMapper.readTree(response);
+            return readRelationshipData(url);
         } catch (Exception e) {
-            System.err.println("Error fetching or deserializing relationship data from URL: " + url + ". Reason: " + e.getMessage());
-            throw new RuntimeException("Fetch or deserialization failed for URL: " + url, e);
+            log.warn("Error fetching or deserializing relationship data from URL: {}. Reason: {}", url, e.getMessage());
+            throw fetchFailure("Fetch or deserialization failed for URL: " + url, e);
         }
     }
 
@@ -119,49 +246,75 @@ public class GleifApiService {
      *
      * @param e   The exception that caused the failure.
      * @param url The URL that failed.
-     * @return A null JsonNode to signal failure.
+     * @return null to signal failure.
      */
     @Recover
-    public JsonNode recoverFetchRelationshipData(RuntimeException e, String url) {
+    public List<RelationshipRecord> recoverFetchRelationshipData(RuntimeException e, String url) {
         String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
-        System.err.println("All retry attempts failed for relationship URL: " + url + ". Reason: " + reason);
+        log.warn("All retry attempts failed for relationship URL: {}. Reason: {}", url, reason);
         failedLeiTrackerService.logFailedUrl(url, reason);
         return null;
     }
 
     /**
-     * Fetches all relationship data for a given LEI.
+     * Fetches data from a relationships endpoint for a lookup outside the batch job; as
+     * {@link #fetchRelationshipData(String)}, but failures are not recorded in the failure log.
      *
-     * @param relationships The relationships object from the LEI record.
-     * @return A map of relationship types to their JSON data, or null if any fetch fails.
+     * @param url The URL of the relationship endpoint.
+     * @return The records of the relationship document, or null if the fetch failed.
      */
-    public Map<String, JsonNode> fetchAllRelationships(GleifResponse.Relationships relationships) {
-        Map<String, JsonNode> fetchedRelationships = new HashMap<>();
-        boolean allFetched = true;
-
-        if (relationships != null) {
-            Map<String, GleifResponse.RelationshipLink> relationshipLinks = new HashMap<>();
-            relationshipLinks.put("managing-lou", relationships.getManagingLou());
-            relationshipLinks.put("lei-issuer", relationships.getLeiIssuer());
-            relationshipLinks.put("direct-parent", relationships.getDirectParent());
-            relationshipLinks.put("ultimate-parent", relationships.getUltimateParent());
-            relationshipLinks.put("field-modifications", relationships.getFieldModifications());
-
-            for (Map.Entry<String, GleifResponse.RelationshipLink> entry : relationshipLinks.entrySet()) {
-                String type = entry.getKey();
-                GleifResponse.RelationshipLink link = entry.getValue();
-
-                if (link != null && link.getLinks() != null && link.getLinks().getRelated() != null) {
-                    String relatedUrl = link.getLinks().getRelated();
-                    JsonNode relationshipData = fetchRelationshipData(relatedUrl);
-                    if (relationshipData == null) {
-                        allFetched = false;
-                        break;
-                    }
-                    fetchedRelationships.put(type, relationshipData);
-                }
+    @Retryable(
+            value = {HttpServerErrorException.class, ResourceAccessException.class},
+            notRecoverable = {HttpClientErrorException.class},
+            maxAttempts = 3,
+            backoff = @Backoff(delay = 1000, multiplier = 2),
+            recover = "recoverLookupRelationshipData"
+    )
+    public List<RelationshipRecord> lookupRelationshipData(String url) {
+        log.debug("Attempting to look up relationship data from URL: {}", url);
+        try {
+            return readRelationshipData(url);
+        } catch (Exception e) {
+            log.warn("Error looking up or deserializing relationship data from URL: {}. Reason: {}", url, e.getMessage());
+            throw fetchFailure("Lookup or deserialization failed for URL: " + url, e);
+        }
+    }
+
+    /**
+     * Recover method for lookupRelationshipData when all retries fail.
+     *
+     * @param e   The exception that caused the failure.
+     * @param url The URL that failed.
+     * @return null to signal failure.
+     */
+    @Recover
+    public List<RelationshipRecord> recoverLookupRelationshipData(RuntimeException e, String url) {
+        log.warn("All retry attempts failed for lookup of relationship URL: {}", url);
+        return null;
+    }
+
+    private List<RelationshipRecord> readRelationshipData(String url) {
+        return restTemplate.execute(url, HttpMethod.GET, ACCEPT_JSON, response -> {
+            try (InputStream body = response.getBody()) {
+                // Read as bytes (never as a String) so the attributes can be sliced out by offset
+                return gleifResponseParser.parseRelationships(body.readAllBytes());
             }
+        });
+    }
+
+    /**
+     * Wraps a fetch failure for Spring Retry. A 429 is transient, so it is rethrown as a
+     * ResourceAccessException without the client error in its cause chain: it is then retried
+     * (after the pause the RateController applies) and, once attempts run out, recovered and logged.
+     *
+     * @param message The failure message.
+     * @param e       The exception that caused the failure.
+     * @return the exception to throw.
+     */
+    private RuntimeException fetchFailure(String message, Exception e) {
+        if (e instanceof HttpClientErrorException.TooManyRequests) {
+            return new ResourceAccessException(message + ": " + e.getMessage());
         }
-        return allFetched ? fetchedRelationships : null;
+        return new RuntimeException(message, e);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,19 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * POJO for a page of a GLEIF collection query such as {@code /lei-records?filter[lei]=...}.
+ * Each element of {@code data} has the same shape as the single-record {@link GleifResponse}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GleifCollectionResponse {
+    private GleifResponse.Meta meta;
+    private List<GleifResponse.Data> data;
+}
@@ -0,0 +1,32 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import java.net.URI;
+
+/**
+ * The classes of GLEIF endpoint that are rate-controlled separately.
+ */
+public enum GleifEndpoint {
+
+    /** Single-record and filtered collection lookups under /lei-records. */
+    LEI_RECORDS,
+
+    /** Relationship documents: /lei-records/{id}/{relationship}, /lei-issuers/{id} and the rest. */
+    RELATIONSHIPS;
+
+    /**
+     * Classifies a request by its path.
+     *
+     * @param uri The request URI.
+     * @return LEI_RECORDS for /lei-records and /lei-records/{id}, RELATIONSHIPS for everything else.
+     */
+    public static GleifEndpoint of(URI uri) {
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        int index = path.indexOf("/lei-records");
+        if (index < 0) {
+            return RELATIONSHIPS;
+        }
+        String rest = path.substring(index + "/lei-records".length());
+        // "" is the collection, "/{id}" a single record; anything deeper is a relationship link
+        return rest.isEmpty() || rest.lastIndexOf('/') == 0 ? LEI_RECORDS : RELATIONSHIPS;
+    }
+}
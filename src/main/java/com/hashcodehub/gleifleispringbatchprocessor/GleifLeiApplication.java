@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.retry.annotation.EnableRetry;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
@@ -19,8 +20,16 @@ public class GleifLeiApplication {
     }
 
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(ClientHttpRequestFactory gleifClientHttpRequestFactory,
+                                     ConditionalGetInterceptor conditionalGetInterceptor,
+                                     RateControlInterceptor rateControlInterceptor) {
+        // Pooled keep-alive connections with gzip, see HttpClientConfig
+        RestTemplate restTemplate = new RestTemplate(gleifClientHttpRequestFactory);
+        // Serve unchanged GLEIF responses from the persistent HTTP cache
+        restTemplate.getInterceptors().add(conditionalGetInterceptor);
+        // Pace whatever still goes to GLEIF, adapting to 429/503 and Retry-After
+        restTemplate.getInterceptors().add(rateControlInterceptor);
+        return restTemplate;
     }
 
     @Bean
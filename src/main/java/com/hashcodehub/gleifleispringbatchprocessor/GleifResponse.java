@@ -24,6 +24,18 @@ public class GleifResponse {
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Meta {
         private GoldenCopy goldenCopy;
+        private Pagination pagination;
+    }
+
+    @lombok.Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Pagination {
+        private int currentPage;
+        private int perPage;
+        private int total;
+        private int lastPage;
     }
 
 
@@ -0,0 +1,407 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for GLEIF API responses. It reads the token stream straight from the response
+ * body and binds only the fields the job uses (the columns CsvWriterService emits, the relationship
+ * links and the pagination block). Everything else, such as eventGroups, otherAddresses and the other
+ * names, is skipped without being materialised.
+ */
+@Component
+public class GleifResponseParser {
+
+    private final JsonFactory jsonFactory;
+    private final PipelineMetrics pipelineMetrics;
+
+    public GleifResponseParser(ObjectMapper objectMapper, PipelineMetrics pipelineMetrics) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * Parses a single-record response, e.g. {@code /lei-records/{id}}.
+     *
+     * @param body The response body.
+     * @return the projected GleifResponse.
+     * @throws IOException if the body cannot be read or is not the expected JSON.
+     */
+    public GleifResponse parseRecord(InputStream body) throws IOException {
+        long start = System.nanoTime();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expectStartObject(parser, parser.nextToken());
+            GleifResponse response = new GleifResponse();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "meta" -> response.setMeta(parseMeta(parser));
+                    case "data" -> response.setData(parseData(parser));
+                    case "links" -> response.setLinks(parseLinks(parser));
+                    default -> parser.skipChildren();
+                }
+            }
+            return response;
+        } finally {
+            pipelineMetrics.recordJsonBind(PipelineMetrics.JSON_RECORD, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Parses a collection response, e.g. {@code /lei-records?filter[lei]=...}.
+     *
+     * @param body The response body.
+     * @return the projected collection with its pagination metadata.
+     * @throws IOException if the body cannot be read or is not the expected JSON.
+     */
+    public GleifCollectionResponse parseCollection(InputStream body) throws IOException {
+        long start = System.nanoTime();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expectStartObject(parser, parser.nextToken());
+            GleifCollectionResponse collection = new GleifCollectionResponse();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("meta".equals(field)) {
+                    collection.setMeta(parseMeta(parser));
+                } else if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    List<GleifResponse.Data> data = new ArrayList<>();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        data.add(parseData(parser));
+                    }
+                    collection.setData(data);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return collection;
+        } finally {
+            pipelineMetrics.recordJsonBind(PipelineMetrics.JSON_COLLECTION, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Parses a relationship document. Its "data" member is either one record or an array of records.
+     * The attributes of each record are sliced out of the body by byte offset, so the body must be
+     * given as an array rather than a stream.
+     *
+     * @param body The complete response body.
+     * @return the records of the document, in document order.
+     * @throws IOException if the body is not the expected JSON.
+     */
+    public List<RelationshipRecord> parseRelationships(byte[] body) throws IOException {
+        long start = System.nanoTime();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expectStartObject(parser, parser.nextToken());
+            List<RelationshipRecord> records = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!"data".equals(field)) {
+                    parser.skipChildren();
+                } else if (value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        records.add(parseRelationshipRecord(parser, body));
+                    }
+                } else if (value == JsonToken.START_OBJECT) {
+                    records.add(parseRelationshipRecord(parser, body));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return records;
+        } finally {
+            pipelineMetrics.recordJsonBind(PipelineMetrics.JSON_RELATIONSHIPS, System.nanoTime() - start);
+        }
+    }
+
+    private RelationshipRecord parseRelationshipRecord(JsonParser parser, byte[] body) throws IOException {
+        String id = "";
+        String type = "";
+        byte[] attributes = new byte[0];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsString("");
+                case "type" -> type = parser.getValueAsString("");
+                case "attributes" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        int start = (int) parser.currentTokenLocation().getByteOffset();
+                        parser.skipChildren(); // Now positioned on the matching END_OBJECT
+                        int end = (int) parser.currentTokenLocation().getByteOffset() + 1;
+                        attributes = copyWithoutLineBreaks(body, start, end);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return new RelationshipRecord(id, type, attributes);
+    }
+
+    /**
+     * Copies a slice of the body, dropping CR and LF bytes. JSON strings cannot contain raw line
+     * breaks, so these can only be formatting whitespace; dropping them keeps one CSV row per line.
+     */
+    private byte[] copyWithoutLineBreaks(byte[] body, int start, int end) {
+        byte[] copy = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = body[i];
+            if (b != '\n' && b != '\r') {
+                copy[length++] = b;
+            }
+        }
+        if (length == copy.length) {
+            return copy;
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(copy, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    private GleifResponse.Meta parseMeta(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.Meta meta = new GleifResponse.Meta();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "goldenCopy" -> meta.setGoldenCopy(parseGoldenCopy(parser));
+                case "pagination" -> meta.setPagination(parsePagination(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        return meta;
+    }
+
+    private GleifResponse.GoldenCopy parseGoldenCopy(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.GoldenCopy goldenCopy = new GleifResponse.GoldenCopy();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("publishDate".equals(field)) {
+                goldenCopy.setPublishDate(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return goldenCopy;
+    }
+
+    private GleifResponse.Pagination parsePagination(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.Pagination pagination = new GleifResponse.Pagination();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "currentPage" -> pagination.setCurrentPage(parser.getValueAsInt());
+                case "perPage" -> pagination.setPerPage(parser.getValueAsInt());
+                case "total" -> pagination.setTotal(parser.getValueAsInt());
+                case "lastPage" -> pagination.setLastPage(parser.getValueAsInt());
+                default -> parser.skipChildren();
+            }
+        }
+        return pagination;
+    }
+
+    private GleifResponse.Data parseData(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.Data data = new GleifResponse.Data();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "type" -> data.setType(parser.getValueAsString());
+                case "id" -> data.setId(parser.getValueAsString());
+                case "attributes" -> data.setAttributes(parseAttributes(parser));
+                case "relationships" -> data.setRelationships(parseRelationshipLinks(parser));
+                case "links" -> data.setLinks(parseLinks(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        return data;
+    }
+
+    private GleifResponse.Attributes parseAttributes(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.Attributes attributes = new GleifResponse.Attributes();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "lei" -> attributes.setLei(parser.getValueAsString());
+                case "entity" -> attributes.setEntity(parseEntity(parser));
+                case "registration" -> attributes.setRegistration(parseRegistration(parser));
+                case "bic" -> attributes.setBic(parseStringList(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        return attributes;
+    }
+
+    private GleifResponse.Entity parseEntity(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.Entity entity = new GleifResponse.Entity();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "legalName" -> entity.setLegalName(parseLegalName(parser));
+                case "registeredAs" -> entity.setRegisteredAs(parser.getValueAsString());
+                case "jurisdiction" -> entity.setJurisdiction(parser.getValueAsString());
+                case "status" -> entity.setStatus(parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+        return entity;
+    }
+
+    private GleifResponse.LegalName parseLegalName(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.LegalName legalName = new GleifResponse.LegalName();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "name" -> legalName.setName(parser.getValueAsString());
+                case "language" -> legalName.setLanguage(parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+        return legalName;
+    }
+
+    private GleifResponse.Registration parseRegistration(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.Registration registration = new GleifResponse.Registration();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "initialRegistrationDate" -> registration.setInitialRegistrationDate(parser.getValueAsString());
+                case "lastUpdateDate" -> registration.setLastUpdateDate(parser.getValueAsString());
+                case "status" -> registration.setStatus(parser.getValueAsString());
+                case "nextRenewalDate" -> registration.setNextRenewalDate(parser.getValueAsString());
+                case "managingLou" -> registration.setManagingLou(parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+        return registration;
+    }
+
+    private GleifResponse.Relationships parseRelationshipLinks(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.Relationships relationships = new GleifResponse.Relationships();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "managing-lou" -> relationships.setManagingLou(parseRelationshipLink(parser));
+                case "lei-issuer" -> relationships.setLeiIssuer(parseRelationshipLink(parser));
+                case "field-modifications" -> relationships.setFieldModifications(parseRelationshipLink(parser));
+                case "direct-parent" -> relationships.setDirectParent(parseRelationshipLink(parser));
+                case "ultimate-parent" -> relationships.setUltimateParent(parseRelationshipLink(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        return relationships;
+    }
+
+    private GleifResponse.RelationshipLink parseRelationshipLink(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.RelationshipLink link = new GleifResponse.RelationshipLink();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("links".equals(field)) {
+                link.setLinks(parseLinks(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return link;
+    }
+
+    private GleifResponse.Links parseLinks(JsonParser parser) throws IOException {
+        if (!isObject(parser)) {
+            return null;
+        }
+        GleifResponse.Links links = new GleifResponse.Links();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "related" -> links.setRelated(parser.getValueAsString());
+                case "reporting-exception" -> links.setReportingException(parser.getValueAsString());
+                case "self" -> links.setSelf(parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+        return links;
+    }
+
+    private List<String> parseStringList(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(parser.getValueAsString());
+            parser.skipChildren();
+        }
+        return values;
+    }
+
+    /**
+     * @return true if the current token starts an object; any other value (usually null) is skipped.
+     */
+    private boolean isObject(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            return true;
+        }
+        parser.skipChildren();
+        return false;
+    }
+
+    private void expectStartObject(JsonParser parser, JsonToken token) throws JsonParseException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object but found " + token);
+        }
+    }
+}
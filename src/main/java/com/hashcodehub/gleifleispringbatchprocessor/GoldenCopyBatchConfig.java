@@ -0,0 +1,120 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Spring Batch configuration for the golden-copy ingestion job.
+ * Instead of one API call per LEI, this job streams a locally downloaded GLEIF golden-copy file,
+ * maps the records and writes them with the regular LEI writer. The API job is then only needed
+ * for top-ups between golden-copy publications.
+ * The job is bound to one core: reading, parsing, mapping and writing all run on the step thread.
+ */
+@Configuration
+public class GoldenCopyBatchConfig {
+
+    public static final String FILE_PARAMETER = "golden-copy.file";
+    public static final String FILTER_PARAMETER = "golden-copy.filter";
+
+    private final JobRepository jobRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${gleif.input.file-path}")
+    private Resource inputResource;
+
+    @Value("${gleif.golden-copy.chunk-size:1000}")
+    private int chunkSize;
+
+    public GoldenCopyBatchConfig(JobRepository jobRepository, PlatformTransactionManager transactionManager) {
+        this.jobRepository = jobRepository;
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Defines the streaming reader over the golden-copy file given by the "golden-copy.file" job parameter.
+     *
+     * @param file The path of the .xml, .csv or .zip golden-copy file.
+     * @return the step-scoped reader.
+     */
+    @Bean
+    @StepScope
+    public GoldenCopyItemReader goldenCopyReader(@Value("#{jobParameters['golden-copy.file']}") String file) {
+        return new GoldenCopyItemReader(Paths.get(file));
+    }
+
+    /**
+     * Defines the record mapper. With "golden-copy.filter" set to INPUT (the default) only the LEIs
+     * in the configured input file are kept; with ALL every record in the file is written.
+     *
+     * @param filter The filter mode.
+     * @return the step-scoped mapper.
+     */
+    @Bean
+    @StepScope
+    public GoldenCopyRecordMapper goldenCopyRecordMapper(@Value("#{jobParameters['golden-copy.filter'] ?: 'INPUT'}") String filter) {
+        return new GoldenCopyRecordMapper("ALL".equalsIgnoreCase(filter) ? null : loadInputLeis());
+    }
+
+    /**
+     * Defines the golden-copy step. It runs on a single thread: the file is one sequential stream whose
+     * parsing dominates the cost, and the mapping is too cheap to pay for handing records to other threads.
+     *
+     * @return the Step bean.
+     */
+    @Bean
+    public Step goldenCopyStep(GoldenCopyItemReader goldenCopyReader, GoldenCopyRecordMapper goldenCopyRecordMapper,
+                               ItemWriter<Map<String, Object>> leiDataWriter, StepMetricsListener stepMetricsListener) {
+        return new StepBuilder("goldenCopyStep", jobRepository)
+                .<Map<String, String>, Map<String, Object>>chunk(chunkSize, transactionManager)
+                .reader(goldenCopyReader)
+                .processor(goldenCopyRecordMapper)
+                .writer(leiDataWriter)
+                .listener(stepMetricsListener)
+                .build();
+    }
+
+    @Bean
+    public Job goldenCopyJob(Step goldenCopyStep, SyncWatermarkListener syncWatermarkListener, OwnershipGraph ownershipGraph) {
+        return new JobBuilder("goldenCopyJob", jobRepository)
+                .listener(syncWatermarkListener) // A golden-copy load also moves the incremental sync watermark
+                .listener(ownershipGraph)
+                .start(goldenCopyStep)
+                .build();
+    }
+
+    private LeiSet loadInputLeis() {
+        LeiSet leis = new LeiSet();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputResource.getInputStream(), StandardCharsets.UTF_8))) {
+            reader.readLine(); // Skip the "lei_id" header row
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String lei = line.trim();
+                // Anything but a well-formed LEI could never match a golden-copy record
+                if (Lei.isValid(lei)) {
+                    leis.add(lei);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the LEI input file", e);
+        }
+        return leis;
+    }
+}
@@ -0,0 +1,177 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streams LEI records out of a GLEIF golden-copy file (LEI-CDF XML or CSV, optionally zipped).
+ * The file is never loaded as a whole: CSV is read row by row and XML with a StAX cursor, so memory
+ * stays constant regardless of file size. Each record is projected to the few fields the LEI output
+ * needs, keyed by the golden-copy CSV column names (e.g. "Entity.LegalName"); XML element paths below
+ * LEIRecord are mapped to the same names so both formats produce identical items.
+ * Restart is handled by the item-counting base class, which skips already processed records.
+ */
+public class GoldenCopyItemReader extends AbstractItemCountingItemStreamItemReader<Map<String, String>> {
+
+    public static final String LEI = "LEI";
+    public static final String LEGAL_NAME = "Entity.LegalName";
+    public static final String LEGAL_NAME_LANGUAGE = "Entity.LegalName.xmllang";
+    public static final String REGISTERED_AS = "Entity.RegistrationAuthority.RegistrationAuthorityEntityID";
+    public static final String JURISDICTION = "Entity.LegalJurisdiction";
+    public static final String ENTITY_STATUS = "Entity.EntityStatus";
+    public static final String INITIAL_REGISTRATION_DATE = "Registration.InitialRegistrationDate";
+    public static final String LAST_UPDATE_DATE = "Registration.LastUpdateDate";
+    public static final String NEXT_RENEWAL_DATE = "Registration.NextRenewalDate";
+    public static final String MANAGING_LOU = "Registration.ManagingLOU";
+
+    private static final Set<String> FIELDS = Set.of(LEI, LEGAL_NAME, LEGAL_NAME_LANGUAGE, REGISTERED_AS, JURISDICTION,
+            ENTITY_STATUS, INITIAL_REGISTRATION_DATE, LAST_UPDATE_DATE, NEXT_RENEWAL_DATE, MANAGING_LOU);
+    private static final String RECORD_ELEMENT = "LEIRecord";
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path file;
+    private InputStream inputStream;
+    private CSVParser csvParser;
+    private Iterator<CSVRecord> csvRecords;
+    private Map<String, Integer> csvColumns;
+    private XMLStreamReader xmlReader;
+
+    public GoldenCopyItemReader(Path file) {
+        this.file = file;
+        setName("goldenCopyReader");
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        inputStream = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        String dataName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (dataName.endsWith(".zip")) {
+            ZipInputStream zip = new ZipInputStream(inputStream);
+            ZipEntry entry;
+            do {
+                entry = zip.getNextEntry();
+            } while (entry != null && entry.isDirectory());
+            if (entry == null) {
+                throw new IllegalStateException("Golden-copy archive contains no file: " + file);
+            }
+            inputStream = zip;
+            dataName = entry.getName().toLowerCase(Locale.ROOT);
+        }
+
+        if (dataName.endsWith(".xml")) {
+            XMLInputFactory factory = XMLInputFactory.newFactory();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+            xmlReader = factory.createXMLStreamReader(inputStream, StandardCharsets.UTF_8.name());
+        } else if (dataName.endsWith(".csv")) {
+            csvParser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build()
+                    .parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            csvColumns = new HashMap<>();
+            for (Map.Entry<String, Integer> column : csvParser.getHeaderMap().entrySet()) {
+                if (FIELDS.contains(column.getKey())) {
+                    csvColumns.put(column.getKey(), column.getValue());
+                }
+            }
+            csvRecords = csvParser.iterator();
+        } else {
+            throw new IllegalStateException("Unsupported golden-copy format (expected .xml or .csv): " + dataName);
+        }
+    }
+
+    @Override
+    protected Map<String, String> doRead() throws Exception {
+        return xmlReader != null ? readXmlRecord() : readCsvRecord();
+    }
+
+    private Map<String, String> readCsvRecord() {
+        if (!csvRecords.hasNext()) {
+            return null;
+        }
+        CSVRecord record = csvRecords.next();
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<String, Integer> column : csvColumns.entrySet()) {
+            // An empty cell stands for an element the XML file leaves out, so it is left out here as well
+            if (column.getValue() < record.size() && !record.get(column.getValue()).isEmpty()) {
+                fields.put(column.getKey(), record.get(column.getValue()));
+            }
+        }
+        return fields;
+    }
+
+    private Map<String, String> readXmlRecord() throws Exception {
+        // Advance to the next LEIRecord
+        while (xmlReader.hasNext()) {
+            if (xmlReader.next() == XMLStreamConstants.START_ELEMENT && RECORD_ELEMENT.equals(xmlReader.getLocalName())) {
+                return readXmlFields();
+            }
+        }
+        return null;
+    }
+
+    private Map<String, String> readXmlFields() throws Exception {
+        Map<String, String> fields = new HashMap<>();
+        List<String> path = new ArrayList<>();
+        while (xmlReader.hasNext()) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                path.add(xmlReader.getLocalName());
+                String key = String.join(".", path);
+                if (FIELDS.contains(key)) {
+                    if (LEGAL_NAME.equals(key)) {
+                        String language = xmlReader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+                        if (language != null) {
+                            fields.put(LEGAL_NAME_LANGUAGE, language);
+                        }
+                    }
+                    // getElementText consumes the matching end element
+                    fields.put(key, xmlReader.getElementText().trim());
+                    path.remove(path.size() - 1);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (path.isEmpty()) {
+                    return fields; // End of LEIRecord
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+        return fields;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (xmlReader != null) {
+            xmlReader.close();
+            xmlReader = null;
+        }
+        if (csvParser != null) {
+            csvParser.close();
+            csvParser = null;
+        }
+        if (inputStream != null) {
+            inputStream.close();
+            inputStream = null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.batch.item.ItemProcessor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps a projected golden-copy record into the same GleifResponse shape the API path produces,
+ * so the records can be written by the regular LEI writer. Records outside the LEI filter are
+ * dropped before any mapping work is done.
+ */
+public class GoldenCopyRecordMapper implements ItemProcessor<Map<String, String>, Map<String, Object>> {
+
+    private final LeiSet leiFilter;
+
+    /**
+     * @param leiFilter The LEIs to keep, or null to keep every record in the file.
+     */
+    public GoldenCopyRecordMapper(LeiSet leiFilter) {
+        this.leiFilter = leiFilter;
+    }
+
+    @Override
+    public Map<String, Object> process(Map<String, String> fields) {
+        String lei = fields.get(GoldenCopyItemReader.LEI);
+        if (lei == null || lei.isEmpty() || (leiFilter != null && !leiFilter.contains(lei))) {
+            return null;
+        }
+
+        GleifResponse.Entity entity = new GleifResponse.Entity();
+        entity.setLegalName(new GleifResponse.LegalName(fields.get(GoldenCopyItemReader.LEGAL_NAME),
+                fields.get(GoldenCopyItemReader.LEGAL_NAME_LANGUAGE)));
+        entity.setRegisteredAs(fields.get(GoldenCopyItemReader.REGISTERED_AS));
+        entity.setJurisdiction(fields.get(GoldenCopyItemReader.JURISDICTION));
+        entity.setStatus(fields.get(GoldenCopyItemReader.ENTITY_STATUS));
+
+        GleifResponse.Registration registration = new GleifResponse.Registration();
+        registration.setInitialRegistrationDate(fields.get(GoldenCopyItemReader.INITIAL_REGISTRATION_DATE));
+        registration.setLastUpdateDate(fields.get(GoldenCopyItemReader.LAST_UPDATE_DATE));
+        registration.setNextRenewalDate(fields.get(GoldenCopyItemReader.NEXT_RENEWAL_DATE));
+        registration.setManagingLou(fields.get(GoldenCopyItemReader.MANAGING_LOU));
+
+        GleifResponse.Attributes attributes = new GleifResponse.Attributes();
+        attributes.setLei(lei);
+        attributes.setEntity(entity);
+        attributes.setRegistration(registration);
+
+        GleifResponse.Data data = new GleifResponse.Data();
+        data.setType("lei-records");
+        data.setId(lei);
+        data.setAttributes(attributes);
+
+        GleifResponse leiData = new GleifResponse();
+        leiData.setData(data);
+
+        // The golden-copy LEI file carries no relationship documents
+        Map<String, Object> result = new HashMap<>();
+        result.put("leiData", leiData);
+        result.put("relationships", Collections.emptyMap());
+        return result;
+    }
+}
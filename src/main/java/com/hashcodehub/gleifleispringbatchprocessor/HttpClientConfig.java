@@ -0,0 +1,75 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.time.Duration;
+
+/**
+ * Configures the HTTP client behind the RestTemplate used for GLEIF calls.
+ * Connections are pooled and kept alive, so the TCP and TLS handshakes are paid once per
+ * connection instead of once per request. Responses are requested with Accept-Encoding: gzip
+ * and decompressed as they are read.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    /**
+     * Creates the pooled Apache HttpClient. Pool size and timeouts come from the gleif.http.* properties.
+     *
+     * @return the CloseableHttpClient bean, closed with the application context.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient gleifHttpClient(@Value("${gleif.http.max-connections:20}") int maxConnections,
+                                               @Value("${gleif.http.max-connections-per-route:20}") int maxConnectionsPerRoute,
+                                               @Value("${gleif.http.connect-timeout:5s}") Duration connectTimeout,
+                                               @Value("${gleif.http.read-timeout:30s}") Duration readTimeout,
+                                               @Value("${gleif.http.connection-request-timeout:10s}") Duration connectionRequestTimeout,
+                                               @Value("${gleif.http.max-idle:1m}") Duration maxIdle,
+                                               @Value("${gleif.http.time-to-live:10m}") Duration timeToLive) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute) // All GLEIF calls share one route
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout.toMillis()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeout.toMillis()))
+                        .setTimeToLive(TimeValue.ofMilliseconds(timeToLive.toMillis()))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2)) // Check connections the server may have dropped
+                        .build())
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeout.toMillis()))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeout.toMillis()))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(maxIdle.toMillis()))
+                // Retries are handled by Spring Retry in GleifApiService, so the client must not add its own
+                .disableAutomaticRetries()
+                .build(); // Content compression (gzip/deflate) is enabled by default
+    }
+
+    /**
+     * Wraps the pooled client as the request factory for RestTemplate.
+     *
+     * @param gleifHttpClient The pooled client.
+     * @return the ClientHttpRequestFactory bean.
+     */
+    @Bean
+    public ClientHttpRequestFactory gleifClientHttpRequestFactory(CloseableHttpClient gleifHttpClient) {
+        return new HttpComponentsClientHttpRequestFactory(gleifHttpClient);
+    }
+}
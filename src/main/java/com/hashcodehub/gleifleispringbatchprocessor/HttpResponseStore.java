@@ -0,0 +1,326 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A persistent, size-capped store of GLEIF HTTP responses, kept across job runs.
+ * Each URL is stored in its own file together with its validators (ETag and Last-Modified),
+ * so the next run can revalidate it with a conditional GET instead of downloading it again.
+ * Accesses are tracked in memory and drive least-recently-used eviction; they are written to the files'
+ * modification times only at compaction and shutdown, so a cache hit costs no file metadata write.
+ * Reference documents that many records share and that rarely change, such as the documents of the managing LOUs
+ * and LEI issuers, get a freshness window of their own (see {@link #markReference(String)}).
+ */
+@Component
+@Slf4j
+public class HttpResponseStore {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final int HEADER_BUFFER_SIZE = 512;
+
+    /**
+     * A stored response: the body plus everything needed to revalidate and replay it.
+     * The body is null when only the validators were read (see {@link #peek(String)}).
+     */
+    public record Entry(String url, String etag, String lastModified, String contentType, long storedAt, byte[] body) {
+    }
+
+    @Value("${gleif.http-cache.enabled:true}")
+    private boolean enabled;
+    @Value("${gleif.http-cache.dir:data/http-cache}")
+    private String cacheDir;
+    @Value("${gleif.http-cache.max-size:512MB}")
+    private DataSize maxSize;
+    // Entries younger than this are served without contacting GLEIF at all; 0 revalidates every request
+    @Value("${gleif.http-cache.fresh-for:0s}")
+    private Duration freshFor;
+    // The same for reference documents; never shorter than fresh-for
+    @Value("${gleif.http-cache.reference-fresh-for:24h}")
+    private Duration referenceFreshFor;
+    // Entries not used for this long are dropped at compaction, even if the store is under its cap
+    @Value("${gleif.http-cache.max-idle:14d}")
+    private Duration maxIdle;
+
+    private final AtomicLong totalBytes = new AtomicLong();
+    // Last access time by entry file, since the last compaction
+    private final Map<Path, Long> accessTimes = new ConcurrentHashMap<>();
+    private final Set<String> referenceUrls = ConcurrentHashMap.newKeySet();
+    private Path directory;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(cacheDir);
+        Files.createDirectories(directory);
+        compact();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks whether a URL can be served from disk without any request to GLEIF.
+     *
+     * @param url The request URL.
+     * @return true if a stored entry exists and is still within its freshness window.
+     */
+    public boolean isFresh(String url) {
+        Entry entry = peek(url);
+        return entry != null && isFresh(entry);
+    }
+
+    public boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.storedAt() < freshFor(entry.url()).toMillis();
+    }
+
+    /**
+     * Marks a URL as a reference document, so its entry is served without a request for
+     * gleif.http-cache.reference-fresh-for rather than gleif.http-cache.fresh-for. Marks last until shutdown;
+     * callers mark a URL each time before requesting it.
+     *
+     * @param url The request URL.
+     */
+    public void markReference(String url) {
+        if (enabled) {
+            referenceUrls.add(url);
+        }
+    }
+
+    private Duration freshFor(String url) {
+        if (referenceUrls.contains(url) && referenceFreshFor.compareTo(freshFor) > 0) {
+            return referenceFreshFor;
+        }
+        return freshFor;
+    }
+
+    /**
+     * Reads the validators of the stored entry for a URL, without its body, and records the access for eviction.
+     *
+     * @param url The request URL.
+     * @return the stored entry with a null body, or null if there is none or it could not be read.
+     */
+    public Entry peek(String url) {
+        return read(url, false);
+    }
+
+    /**
+     * Reads the stored entry for a URL, body included, and records the access for eviction.
+     *
+     * @param url The request URL.
+     * @return the stored entry, or null if there is none or it could not be read.
+     */
+    public Entry get(String url) {
+        return read(url, true);
+    }
+
+    /**
+     * Records that GLEIF confirmed an entry unchanged. With a freshness window the entry is stored again with a new
+     * storedAt; without one storedAt is never read, so only the access is recorded and the file is left alone.
+     *
+     * @param entry The revalidated entry, body included.
+     */
+    public void revalidated(Entry entry) {
+        if (freshFor(entry.url()).isZero()) {
+            return; // The access was recorded when the entry was read
+        }
+        put(new Entry(entry.url(), entry.etag(), entry.lastModified(), entry.contentType(), System.currentTimeMillis(), entry.body()));
+    }
+
+    private Entry read(String url, boolean withBody) {
+        if (!enabled) {
+            return null;
+        }
+        Path path = pathFor(url);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path),
+                withBody ? 8192 : HEADER_BUFFER_SIZE))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            String storedUrl = in.readUTF();
+            if (!storedUrl.equals(url)) {
+                return null; // Hash collision, treat as a miss
+            }
+            Entry entry = new Entry(storedUrl, emptyToNull(in.readUTF()), emptyToNull(in.readUTF()),
+                    emptyToNull(in.readUTF()), in.readLong(), withBody ? in.readAllBytes() : null);
+            accessTimes.put(path, System.currentTimeMillis());
+            return entry;
+        } catch (IOException e) {
+            log.warn("Discarding unreadable HTTP cache entry {}: {}", path, e.getMessage());
+            delete(path);
+            return null;
+        }
+    }
+
+    /**
+     * Stores (or replaces) the entry for a URL. The file is written to a temporary name and then
+     * moved into place, so a crash never leaves a half-written entry behind.
+     *
+     * @param entry The entry to store.
+     */
+    public void put(Entry entry) {
+        if (!enabled) {
+            return;
+        }
+        Path path = pathFor(entry.url());
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(entry.body().length + 256);
+            try (DataOutputStream out = new DataOutputStream(buffer)) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(entry.url());
+                out.writeUTF(nullToEmpty(entry.etag()));
+                out.writeUTF(nullToEmpty(entry.lastModified()));
+                out.writeUTF(nullToEmpty(entry.contentType()));
+                out.writeLong(entry.storedAt());
+                out.write(entry.body());
+            }
+            long previousSize = Files.exists(path) ? Files.size(path) : 0;
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            Files.write(temp, buffer.toByteArray());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            accessTimes.remove(path); // The new file's modification time is its last access
+            if (totalBytes.addAndGet(buffer.size() - previousSize) > maxSize.toBytes()) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.warn("Could not store HTTP cache entry for {}: {}", entry.url(), e.getMessage());
+        }
+    }
+
+    /**
+     * Compacts the store: removes leftover temporary files and entries idle for longer than
+     * gleif.http-cache.max-idle, then evicts the least recently used entries until the store
+     * is back under 90% of gleif.http-cache.max-size. The access times recorded in memory are written
+     * to the remaining entries first.
+     */
+    public synchronized void compact() {
+        if (!enabled) {
+            return;
+        }
+        saveAccessTimes();
+        List<Path> entries = new ArrayList<>();
+        long idleCutoff = System.currentTimeMillis() - maxIdle.toMillis();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(ENTRY_SUFFIX) || lastAccess(path) < idleCutoff) {
+                    delete(path);
+                } else {
+                    entries.add(path);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("HTTP cache compaction failed: {}", e.getMessage());
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(HttpResponseStore::lastAccess));
+        long size = 0;
+        for (Path path : entries) {
+            size += sizeOf(path);
+        }
+        long target = maxSize.toBytes() * 9 / 10;
+        int evicted = 0;
+        for (int i = 0; i < entries.size() && size > target; i++) {
+            size -= sizeOf(entries.get(i));
+            delete(entries.get(i));
+            evicted++;
+        }
+        totalBytes.set(size);
+        log.info("HTTP cache compacted: {} entries, {} bytes, {} evicted", entries.size() - evicted, size, evicted);
+    }
+
+    /**
+     * Writes the access times recorded since the last compaction to the entries' modification times,
+     * so the next run evicts by them too.
+     */
+    @PreDestroy
+    public synchronized void saveAccessTimes() {
+        for (Path path : accessTimes.keySet()) {
+            Long accessedAt = accessTimes.remove(path);
+            try {
+                if (accessedAt != null && Files.exists(path)) {
+                    Files.setLastModifiedTime(path, FileTime.fromMillis(accessedAt));
+                }
+            } catch (IOException e) {
+                log.debug("Could not record the last access of HTTP cache entry {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    private Path pathFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(digest) + ENTRY_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long lastAccess(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete HTTP cache file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,90 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Launches the application's jobs one at a time. Every job writes the same outputs, so a launch is refused with a
+ * JobExecutionAlreadyRunningException while any job execution is running, whether the scheduler, the API or a
+ * resume started it.
+ * <p>
+ * With gleif.job.launch-mode=ASYNC (the default) a launch returns as soon as the execution is recorded, with status
+ * STARTING, and the job runs on its own thread; with SYNC it returns when the job has finished, as Spring Boot's
+ * launcher does. Follow an asynchronous run with JobProgressService.
+ */
+@Service
+@Slf4j
+public class JobLaunchService {
+
+    private final JobLauncher jobLauncher;
+    private final TaskExecutorJobLauncher asyncJobLauncher;
+    private final JobExplorer jobExplorer;
+    // Held from the overlap check until the new execution is visible in the job repository (for SYNC, the whole run)
+    private final AtomicBoolean launching = new AtomicBoolean();
+
+    // ASYNC or SYNC
+    @Value("${gleif.job.launch-mode:ASYNC}")
+    private String launchMode;
+
+    public JobLaunchService(JobLauncher jobLauncher, JobRepository jobRepository, JobExplorer jobExplorer) {
+        this.jobLauncher = jobLauncher;
+        this.jobExplorer = jobExplorer;
+        this.asyncJobLauncher = new TaskExecutorJobLauncher();
+        this.asyncJobLauncher.setJobRepository(jobRepository);
+        this.asyncJobLauncher.setTaskExecutor(new SimpleAsyncTaskExecutor("job-run-"));
+    }
+
+    /**
+     * Launches a job unless a job execution is already running.
+     *
+     * @param job        The job to launch.
+     * @param parameters Its parameters; the parameters of a failed instance restart it.
+     * @return the execution: just started in ASYNC mode, finished in SYNC mode.
+     * @throws JobExecutionAlreadyRunningException if a job execution is running or being launched.
+     * @throws JobExecutionException if Spring Batch refuses the launch.
+     */
+    public JobExecution launch(Job job, JobParameters parameters) throws JobExecutionException {
+        if (!launching.compareAndSet(false, true)) {
+            throw new JobExecutionAlreadyRunningException("Another job is being launched or is running");
+        }
+        try {
+            JobExecution running = runningExecution();
+            if (running != null) {
+                throw new JobExecutionAlreadyRunningException("Job " + running.getJobInstance().getJobName()
+                        + " is already running as execution " + running.getId());
+            }
+            JobExecution execution = ("SYNC".equalsIgnoreCase(launchMode) ? jobLauncher : asyncJobLauncher).run(job, parameters);
+            log.info("Launched {} as execution {} ({}).", job.getName(), execution.getId(), launchMode.toUpperCase());
+            return execution;
+        } finally {
+            launching.set(false);
+        }
+    }
+
+    /**
+     * @return a running execution of any job, or null if none is running.
+     */
+    public JobExecution runningExecution() {
+        for (String jobName : jobExplorer.getJobNames()) {
+            Set<JobExecution> running = jobExplorer.findRunningJobExecutions(jobName);
+            if (!running.isEmpty()) {
+                return running.iterator().next();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,264 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Progress of job executions, as read from the job repository: the read, write, filter and skip counts of their
+ * steps, the input records consumed, throughput and an estimated completion time.
+ * Input records consumed are the committed read counts the readers keep in their step execution contexts
+ * (the "*.read.count" entries), so they include IDs the pre-flight checks dropped and match the lines of the input.
+ * The completion estimate needs the input size, which is known for leiProcessorJob (the input file) and
+ * failedLeiReplayJob (the replay input), not for golden-copy ingestion.
+ * <p>
+ * A progress stream pushes a snapshot over SSE every gleif.job.progress.interval until the execution ends;
+ * all streams share one thread, so a stream costs one job repository query per interval, not a thread.
+ */
+@Service
+@Slf4j
+public class JobProgressService {
+
+    private static final String READ_COUNT_SUFFIX = ".read.count";
+
+    private final JobExplorer jobExplorer;
+    private final FailedLeiTrackerService failedLeiTrackerService;
+    private final ScheduledExecutorService progressExecutor;
+    // Input records by job execution, so the input is only counted once per execution
+    private final Cache<Long, Long> totalRecords = CacheBuilder.newBuilder().maximumSize(100).build();
+
+    @Value("${gleif.input.file-path}")
+    private Resource inputResource;
+
+    @Value("${gleif.job.progress.interval:2s}")
+    private Duration interval;
+
+    public JobProgressService(JobExplorer jobExplorer, FailedLeiTrackerService failedLeiTrackerService) {
+        this.jobExplorer = jobExplorer;
+        this.failedLeiTrackerService = failedLeiTrackerService;
+        this.progressExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("job-progress-"));
+    }
+
+    /**
+     * @param executionId The job execution id.
+     * @return the execution, or null if there is none with this id.
+     */
+    public JobExecution find(long executionId) {
+        return jobExplorer.getJobExecution(executionId);
+    }
+
+    /**
+     * Reads the current progress of an execution, with its average throughput.
+     *
+     * @param executionId The job execution id.
+     * @return the progress, or null if there is no execution with this id.
+     */
+    public Map<String, Object> snapshot(long executionId) {
+        JobExecution execution = find(executionId);
+        return execution != null ? progress(execution, null) : null;
+    }
+
+    /**
+     * Streams the progress of an execution as "progress" events, each with the throughput since the previous one,
+     * and completes the stream after the event that reports the execution as ended.
+     *
+     * @param executionId The job execution id, which must exist.
+     * @return the emitter to return from the handler.
+     */
+    public SseEmitter stream(long executionId) {
+        SseEmitter emitter = new SseEmitter(0L); // No timeout: the stream ends with the job
+        AtomicReference<Map<String, Object>> previous = new AtomicReference<>();
+        AtomicReference<ScheduledFuture<?>> task = new AtomicReference<>();
+        Runnable push = () -> {
+            try {
+                JobExecution execution = find(executionId);
+                Map<String, Object> progress = progress(execution, previous.get());
+                previous.set(progress);
+                emitter.send(SseEmitter.event().name("progress").data(progress, MediaType.APPLICATION_JSON));
+                if (!execution.isRunning()) {
+                    task.get().cancel(false);
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client has gone; stop polling for it
+                log.debug("Progress stream of execution {} closed: {}", executionId, e.getMessage());
+                task.get().cancel(false);
+            } catch (RuntimeException e) {
+                log.warn("Progress stream of execution {} failed: {}", executionId, e.getMessage());
+                task.get().cancel(false);
+                emitter.completeWithError(e);
+            }
+        };
+        synchronized (task) { // The first push must not run before the task is known
+            task.set(progressExecutor.scheduleAtFixedRate(() -> {
+                synchronized (task) {
+                    push.run();
+                }
+            }, 0, interval.toMillis(), TimeUnit.MILLISECONDS));
+        }
+        emitter.onCompletion(() -> task.get().cancel(false));
+        emitter.onError(e -> task.get().cancel(false));
+        return emitter;
+    }
+
+    private Map<String, Object> progress(JobExecution execution, Map<String, Object> previous) {
+        long now = System.currentTimeMillis();
+        long read = 0;
+        long written = 0;
+        long filtered = 0;
+        long skipped = 0;
+        long recordsRead = 0;
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (StepExecution stepExecution : execution.getStepExecutions()) {
+            read += stepExecution.getReadCount();
+            written += stepExecution.getWriteCount();
+            filtered += stepExecution.getFilterCount();
+            skipped += stepExecution.getSkipCount();
+            recordsRead += committedReadCount(stepExecution.getExecutionContext());
+            Map<String, Object> step = new LinkedHashMap<>();
+            step.put("name", stepExecution.getStepName());
+            step.put("status", stepExecution.getStatus());
+            step.put("readCount", stepExecution.getReadCount());
+            step.put("writeCount", stepExecution.getWriteCount());
+            step.put("filterCount", stepExecution.getFilterCount());
+            step.put("skipCount", stepExecution.getSkipCount());
+            step.put("commitCount", stepExecution.getCommitCount());
+            steps.add(step);
+        }
+
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("executionId", execution.getId());
+        progress.put("jobName", execution.getJobInstance().getJobName());
+        progress.put("status", execution.getStatus());
+        progress.put("startTime", isoTime(execution.getStartTime()));
+        progress.put("endTime", isoTime(execution.getEndTime()));
+        progress.put("readCount", read);
+        progress.put("writeCount", written);
+        progress.put("filterCount", filtered);
+        progress.put("skipCount", skipped);
+        progress.put("recordsRead", recordsRead);
+        progress.put("timestamp", now);
+
+        // Items per second since the previous snapshot, or over the whole run for the first one
+        double elapsedSeconds = execution.getStartTime() != null
+                ? Duration.between(execution.getStartTime(), execution.getEndTime() != null ? execution.getEndTime() : LocalDateTime.now()).toMillis() / 1000.0
+                : 0;
+        double itemsPerSecond = elapsedSeconds > 0 ? written / elapsedSeconds : 0;
+        double recordsPerSecond = elapsedSeconds > 0 ? recordsRead / elapsedSeconds : 0;
+        if (previous != null && now > (long) previous.get("timestamp")) {
+            double seconds = (now - (long) previous.get("timestamp")) / 1000.0;
+            itemsPerSecond = (written - (long) previous.get("writeCount")) / seconds;
+            recordsPerSecond = (recordsRead - (long) previous.get("recordsRead")) / seconds;
+        }
+        progress.put("itemsPerSecond", Math.round(itemsPerSecond * 10) / 10.0);
+
+        Long total = totalRecords(execution);
+        progress.put("totalRecords", total);
+        if (total != null && total > 0) {
+            progress.put("percentComplete", Math.min(100, Math.round(1000.0 * recordsRead / total) / 10.0));
+            if (recordsPerSecond > 0 && recordsRead < total) {
+                progress.put("estimatedCompletion", isoTime(LocalDateTime.now().plusSeconds(Math.round((total - recordsRead) / recordsPerSecond))));
+            }
+        }
+        progress.put("steps", steps);
+        return progress;
+    }
+
+    /**
+     * Formats a time as ISO-8601 text; the application's ObjectMapper has no java.time support.
+     */
+    private static String isoTime(LocalDateTime time) {
+        return time != null ? time.truncatedTo(ChronoUnit.SECONDS).toString() : null;
+    }
+
+    /**
+     * Sums the committed counts of the item-counting readers in a step execution context.
+     */
+    private static long committedReadCount(ExecutionContext context) {
+        long count = 0;
+        for (Entry<String, Object> entry : context.entrySet()) {
+            if (entry.getKey().endsWith(READ_COUNT_SUFFIX) && entry.getValue() instanceof Number number) {
+                count += number.longValue();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the input records of the execution, or null if they cannot be known in advance.
+     */
+    private Long totalRecords(JobExecution execution) {
+        Resource input;
+        int headerLines;
+        switch (execution.getJobInstance().getJobName()) {
+            case "leiProcessorJob" -> {
+                input = inputResource;
+                headerLines = 1;
+            }
+            case "failedLeiReplayJob" -> {
+                input = new FileSystemResource(failedLeiTrackerService.getReplayInputPath());
+                headerLines = 0;
+            }
+            default -> {
+                return null;
+            }
+        }
+        try {
+            return totalRecords.get(execution.getId(), () -> Math.max(0, countLines(input) - headerLines));
+        } catch (ExecutionException e) {
+            log.debug("Could not count the input of execution {}: {}", execution.getId(), e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private static long countLines(Resource resource) throws IOException {
+        long lines = 0;
+        boolean endsWithNewline = true;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = resource.getInputStream()) {
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+                endsWithNewline = buffer[n - 1] == '\n';
+            }
+        }
+        return endsWithNewline ? lines : lines + 1; // A last line without a line break still counts
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        progressExecutor.shutdownNow();
+    }
+}
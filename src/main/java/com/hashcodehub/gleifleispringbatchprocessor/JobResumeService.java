@@ -0,0 +1,139 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Resumes interrupted runs of leiProcessorJob instead of starting over.
+ * A resumed run is a new execution of the same job instance, launched with the parameters of the failed one, so
+ * completed steps are skipped and the interrupted step continues after its last committed chunk: the reader skips
+ * the LEIs it had read, and LeiDataWriter cuts its outputs back to the bytes that were committed.
+ * <p>
+ * With the in-memory job repository this covers runs that failed while the application was up, e.g. during a
+ * GLEIF outage; with a file-backed or external repository (the "durable" profile) it also covers a crash or kill.
+ * An execution that was running when its process died stays STARTED in the repository and would block a restart,
+ * so at startup every execution still marked as running is marked FAILED. This assumes that only one application
+ * instance uses the job repository.
+ * <p>
+ * A run that keeps failing (the same bad input, or Parquet output that cannot be resumed, see LeiDataWriter) is
+ * resumed at most gleif.job.resume-max-attempts times; after that a new run with the same parameters starts from
+ * the beginning instead.
+ */
+@Service
+@Slf4j
+@Order(Ordered.HIGHEST_PRECEDENCE) // Before the Scheduler's startup run
+public class JobResumeService implements ApplicationRunner {
+
+    private final JobExplorer jobExplorer;
+    private final JobRepository jobRepository;
+    private final JobLaunchService jobLaunchService;
+    private final Job leiProcessorJob;
+
+    // Resume a failed run of leiProcessorJob at startup and on the next scheduled run, instead of starting a new one
+    @Value("${gleif.job.resume-failed:false}")
+    private boolean resumeFailed;
+
+    // Restarts of one job instance before a new run replaces it
+    @Value("${gleif.job.resume-max-attempts:3}")
+    private int resumeMaxAttempts;
+
+    public JobResumeService(JobExplorer jobExplorer, JobRepository jobRepository, JobLaunchService jobLaunchService, Job leiProcessorJob) {
+        this.jobExplorer = jobExplorer;
+        this.jobRepository = jobRepository;
+        this.jobLaunchService = jobLaunchService;
+        this.leiProcessorJob = leiProcessorJob;
+    }
+
+    public boolean isResumeFailed() {
+        return resumeFailed;
+    }
+
+    /**
+     * Marks executions left running by an earlier process as FAILED, then resumes the last failed run
+     * if gleif.job.resume-failed is set.
+     */
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        failStaleExecutions();
+        if (resumeFailed) {
+            resumeLastFailed(leiProcessorJob);
+        }
+    }
+
+    /**
+     * Restarts the most recent instance of a job if its last execution failed or was stopped.
+     * An older failed instance is not resumed once a newer instance exists, since that run has superseded it.
+     * The restart is launched through JobLaunchService, so it is refused while another job is running.
+     * Once the instance has been restarted gleif.job.resume-max-attempts times, a new run with the same
+     * parameters is launched instead.
+     *
+     * @param job The job to resume.
+     * @return the execution of the resumed (or replacing) run, or null if the last run did not fail.
+     * @throws JobExecutionException if the restart could not be launched.
+     */
+    public JobExecution resumeLastFailed(Job job) throws JobExecutionException {
+        JobInstance lastInstance = jobExplorer.getLastJobInstance(job.getName());
+        JobExecution lastExecution = lastInstance != null ? jobExplorer.getLastJobExecution(lastInstance) : null;
+        if (lastExecution == null
+                || (lastExecution.getStatus() != BatchStatus.FAILED && lastExecution.getStatus() != BatchStatus.STOPPED)) {
+            log.info("No failed run of {} to resume.", job.getName());
+            return null;
+        }
+        int resumes = jobExplorer.getJobExecutions(lastInstance).size() - 1;
+        if (resumes >= resumeMaxAttempts) {
+            log.warn("{} instance {} failed again after {} resumes; starting a new run instead.",
+                    job.getName(), lastInstance.getInstanceId(), resumes);
+            JobParameters parameters = new JobParametersBuilder(lastExecution.getJobParameters())
+                    .addLong("run.id", System.currentTimeMillis())
+                    .toJobParameters();
+            return jobLaunchService.launch(job, parameters);
+        }
+        log.info("Resuming {} instance {} after execution {} ended {}; committed records are not fetched again.",
+                job.getName(), lastInstance.getInstanceId(), lastExecution.getId(), lastExecution.getStatus());
+        return jobLaunchService.launch(job, lastExecution.getJobParameters());
+    }
+
+    /**
+     * Marks every execution still recorded as running, and its running steps, as FAILED.
+     * Only safe while no job runs in this process, i.e. at startup.
+     */
+    private void failStaleExecutions() {
+        for (String jobName : jobExplorer.getJobNames()) {
+            for (JobExecution execution : jobExplorer.findRunningJobExecutions(jobName)) {
+                LocalDateTime now = LocalDateTime.now();
+                ExitStatus interrupted = ExitStatus.FAILED.addExitDescription("Interrupted: the application stopped while the job was running");
+                for (StepExecution stepExecution : execution.getStepExecutions()) {
+                    if (stepExecution.getStatus().isRunning()) {
+                        stepExecution.setStatus(BatchStatus.FAILED);
+                        stepExecution.setExitStatus(interrupted);
+                        stepExecution.setEndTime(now);
+                        jobRepository.update(stepExecution);
+                    }
+                }
+                execution.setStatus(BatchStatus.FAILED);
+                execution.setExitStatus(interrupted);
+                execution.setEndTime(now);
+                jobRepository.update(execution);
+                log.warn("Marked interrupted execution {} of {} as FAILED, so it can be resumed.", execution.getId(), jobName);
+            }
+        }
+    }
+}
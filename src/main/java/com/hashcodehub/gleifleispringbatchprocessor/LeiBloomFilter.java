@@ -0,0 +1,130 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A scalable Bloom filter of packed LEIs (see Lei): a chain of plain Bloom filters, each twice
+ * the capacity of the one before and with half its false-positive rate, so the filter grows with
+ * the input while the combined false-positive rate stays below the configured one.
+ * Bit positions come from two 64-bit hashes of the packed halves (double hashing), so adding and
+ * testing allocate nothing. Not thread-safe.
+ */
+public class LeiBloomFilter {
+
+    private final List<Stage> stages = new ArrayList<>();
+    private int nextCapacity;
+    private double nextFalsePositiveRate;
+
+    /**
+     * @param initialCapacity   The number of LEIs the first stage holds at its false-positive rate.
+     * @param falsePositiveRate The highest false-positive rate of the whole filter.
+     */
+    public LeiBloomFilter(int initialCapacity, double falsePositiveRate) {
+        this.nextCapacity = Math.max(1024, initialCapacity);
+        // The stage rates are p/2, p/4, ..., which add up to less than p
+        this.nextFalsePositiveRate = falsePositiveRate / 2;
+        stages.add(new Stage(nextCapacity, nextFalsePositiveRate));
+    }
+
+    /**
+     * @return true if the LEI may have been added before; false if it certainly was not.
+     */
+    public boolean mightContain(long high, long low) {
+        long hash1 = hash1(high, low);
+        long hash2 = hash2(high, low);
+        for (Stage stage : stages) {
+            if (stage.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds an LEI unless it may already be in the filter.
+     *
+     * @return true if the LEI was added, false if it may have been added before.
+     */
+    public boolean add(long high, long low) {
+        if (mightContain(high, low)) {
+            return false;
+        }
+        Stage current = stages.get(stages.size() - 1);
+        if (current.count >= current.capacity) {
+            nextCapacity = (int) Math.min(Integer.MAX_VALUE, nextCapacity * 2L);
+            nextFalsePositiveRate /= 2;
+            current = new Stage(nextCapacity, nextFalsePositiveRate);
+            stages.add(current);
+        }
+        current.add(hash1(high, low), hash2(high, low));
+        return true;
+    }
+
+    /**
+     * @return the memory held by the bit arrays, in bytes.
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (Stage stage : stages) {
+            bytes += stage.bits.length * (long) Long.BYTES;
+        }
+        return bytes;
+    }
+
+    private static long hash1(long high, long low) {
+        return mix(high * 0x9E3779B97F4A7C15L + low);
+    }
+
+    private static long hash2(long high, long low) {
+        return mix(low * 0xC2B2AE3D27D4EB4FL + high) | 1; // Odd, so the probe sequence never repeats early
+    }
+
+    // The MurmurHash3 64-bit finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Stage {
+
+        private final long[] bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final int capacity;
+        private int count;
+
+        Stage(int capacity, double falsePositiveRate) {
+            double ln2 = Math.log(2);
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64)];
+            this.bitCount = bits.length * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * ln2));
+            this.capacity = capacity;
+        }
+
+        boolean mightContain(long hash1, long hash2) {
+            long combined = hash1;
+            for (int i = 0; i < hashCount; i++, combined += hash2) {
+                long bit = (combined & Long.MAX_VALUE) % bitCount;
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(long hash1, long hash2) {
+            long combined = hash1;
+            for (int i = 0; i < hashCount; i++, combined += hash2) {
+                long bit = (combined & Long.MAX_VALUE) % bitCount;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+    }
+}
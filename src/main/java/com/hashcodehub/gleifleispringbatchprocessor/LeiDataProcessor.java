@@ -1,23 +1,35 @@
 package com.hashcodehub.gleifleispringbatchprocessor;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * An ItemProcessor to handle the data fetching and processing logic for each LEI ID.
  * This component ensures that only complete data is passed to the writer.
  */
 @Component
+@Slf4j
 public class LeiDataProcessor implements ItemProcessor<String, Map<String, Object>> {
 
     private final GleifApiService gleifApiService;
+    private final RelationshipFetchService relationshipFetchService;
+    private final FailedLeiTrackerService failedLeiTrackerService;
+    private final PipelineMetrics pipelineMetrics;
 
-    public LeiDataProcessor(GleifApiService gleifApiService) {
+    public LeiDataProcessor(GleifApiService gleifApiService, RelationshipFetchService relationshipFetchService,
+                            FailedLeiTrackerService failedLeiTrackerService, PipelineMetrics pipelineMetrics) {
         this.gleifApiService = gleifApiService;
+        this.relationshipFetchService = relationshipFetchService;
+        this.failedLeiTrackerService = failedLeiTrackerService;
+        this.pipelineMetrics = pipelineMetrics;
     }
 
     /**
@@ -31,7 +43,8 @@ public class LeiDataProcessor implements ItemProcessor<String, Map<String, Objec
      */
     @Override
     public Map<String, Object> process(String leiId) throws Exception {
-        System.out.println("Processing LEI ID: " + leiId);
+        log.debug("Processing LEI ID: {}", leiId);
+        long start = System.nanoTime();
 
         // Step 1: Fetch the main LEI record
         // Simple throttle: 60 requests/min = 1 request/sec
@@ -39,51 +52,123 @@ public class LeiDataProcessor implements ItemProcessor<String, Map<String, Objec
 //        Thread.sleep(1000);
         GleifResponse leiData = gleifApiService.fetchLeiRecord(leiId);
         if (leiData == null || leiData.getData() == null) {
-            System.err.println("Skipping LEI " + leiId + " due to main record fetch failure.");
+            log.warn("Skipping LEI {} due to main record fetch failure.", leiId);
+            pipelineMetrics.recordRecordLatency(PipelineMetrics.RECORD_FAILED, System.nanoTime() - start);
             return null; // Signals to Spring Batch to skip this item
         }
 
-        // Step 2: Fetch all relationships and check for any failures
-        System.out.println("Processing relationship links for LEI: " + leiId);
-        Map<String, JsonNode> fetchedRelationships = new HashMap<>();
-        boolean allRelationshipsFetched = true;
-
-        if (leiData.getData().getRelationships() != null) {
-            Map<String, GleifResponse.RelationshipLink> relationshipLinks = new HashMap<>();
-            relationshipLinks.put("managing-lou", leiData.getData().getRelationships().getManagingLou());
-            relationshipLinks.put("lei-issuer", leiData.getData().getRelationships().getLeiIssuer());
-            relationshipLinks.put("direct-parent", leiData.getData().getRelationships().getDirectParent());
-            relationshipLinks.put("ultimate-parent", leiData.getData().getRelationships().getUltimateParent());
-            relationshipLinks.put("field-modifications", leiData.getData().getRelationships().getFieldModifications());
-
-            for (Map.Entry<String, GleifResponse.RelationshipLink> entry : relationshipLinks.entrySet()) {
-                String type = entry.getKey();
-                GleifResponse.RelationshipLink link = entry.getValue();
-
-                if (link != null && link.getLinks() != null && link.getLinks().getRelated() != null) {
-                    String relatedUrl = link.getLinks().getRelated();
-// since we are using the guave rate limiter token bucket algorithm thread sleep is not required
-            //        Thread.sleep(1000);
-                    JsonNode relationshipData = gleifApiService.fetchRelationshipData(relatedUrl);
-                    if (relationshipData == null) {
-                        // If any relationship call fails, the entire record is invalid.
-                        allRelationshipsFetched = false;
-                        break;
-                    }
-                    fetchedRelationships.put(type, relationshipData);
-                }
+        // Steps 2 and 3: Fetch the relationships and return data only if all of them succeeded
+        return withRelationships(leiId, leiData, start);
+    }
+
+    /**
+     * Processes a whole batch of LEI IDs, resolving the main records with a single bulk
+     * lookup instead of one request per ID. IDs that GLEIF does not return are logged
+     * as failed one at a time, and records with a failed relationship are dropped, exactly
+     * as in {@link #process(String)}.
+     *
+     * @param leiIds The LEI IDs to process.
+     * @return the complete records, in input order, for every LEI that was fully fetched.
+     */
+    public List<Map<String, Object>> processChunk(List<String> leiIds) {
+        return processChunk(leiIds, null, null);
+    }
+
+    /**
+     * Processes a batch of LEI IDs, only fetching the records of already written LEIs if they were updated after
+     * the given timestamp. IDs that GLEIF leaves out of such a query are unchanged, not failed, so they are skipped
+     * silently. LEIs no earlier run has written, e.g. ones newly added to the input, are always fetched.
+     *
+     * @param leiIds       The LEI IDs to process.
+     * @param updatedSince ISO-8601 lastUpdateDate watermark, or null to fetch every record.
+     * @param writtenLeis  The LEIs earlier runs have written; null when updatedSince is null.
+     * @return the complete records, in input order, for every changed or new LEI that was fully fetched.
+     */
+    public List<Map<String, Object>> processChunk(List<String> leiIds, String updatedSince, LeiSet writtenLeis) {
+        log.debug("Processing batch of {} LEI IDs", leiIds.size());
+        List<Map<String, Object>> results = new ArrayList<>();
+        long start = System.nanoTime();
+
+        // Step 1: Resolve all main records in as few paged calls as possible
+        List<String> changedOnly = new ArrayList<>();
+        List<String> always = new ArrayList<>();
+        for (String leiId : leiIds) {
+            (updatedSince != null && writtenLeis.contains(leiId) ? changedOnly : always).add(leiId);
+        }
+        Map<String, GleifResponse> leiRecords = new HashMap<>();
+        Set<String> failedIds = new HashSet<>();
+        fetchInto(leiRecords, failedIds, always, null);
+        fetchInto(leiRecords, failedIds, changedOnly, updatedSince);
+        if (!failedIds.isEmpty()) {
+            // Every ID has already been logged as failed by the recover method
+            log.warn("Skipping {} LEIs due to bulk fetch failure.", failedIds.size());
+            long elapsed = System.nanoTime() - start;
+            failedIds.forEach(leiId -> pipelineMetrics.recordRecordLatency(PipelineMetrics.RECORD_FAILED, elapsed));
+        }
+
+        for (String leiId : leiIds) {
+            GleifResponse leiData = leiRecords.get(leiId);
+            if (leiData == null && (failedIds.contains(leiId) || updatedSince != null && writtenLeis.contains(leiId))) {
+                continue; // Already logged as failed, or not changed since the last successful sync
+            }
+            if (leiData == null || leiData.getData() == null) {
+                log.warn("Skipping LEI {} as it was missing from the bulk response.", leiId);
+                failedLeiTrackerService.logFailedLei(leiId, "Not returned by bulk lookup");
+                pipelineMetrics.recordRecordLatency(PipelineMetrics.RECORD_FAILED, System.nanoTime() - start);
+                continue;
             }
+
+            // Steps 2 and 3: Fetch the relationships for this record
+            Map<String, Object> result = withRelationships(leiId, leiData, start);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Bulk-fetches a group of IDs into the given map, or adds them all to the failed IDs if the fetch failed.
+     */
+    private void fetchInto(Map<String, GleifResponse> leiRecords, Set<String> failedIds, List<String> leiIds, String updatedSince) {
+        if (leiIds.isEmpty()) {
+            return;
         }
+        Map<String, GleifResponse> fetched = gleifApiService.fetchLeiRecords(leiIds, updatedSince);
+        if (fetched == null) {
+            failedIds.addAll(leiIds);
+        } else {
+            leiRecords.putAll(fetched);
+        }
+    }
+
+    /**
+     * Fetches every relationship link of an LEI record and combines them with the record.
+     *
+     * @param leiId   The LEI ID being processed.
+     * @param leiData The already fetched main LEI record.
+     * @param start   System.nanoTime() when fetching the record began, for gleif.record.latency.
+     * @return a Map containing the complete LEI data and relationships, or null if any relationship failed.
+     */
+    private Map<String, Object> withRelationships(String leiId, GleifResponse leiData, long start) {
+        // Step 2: Fetch all relationships in parallel; null means at least one of them failed
+        log.debug("Processing relationship links for LEI: {}", leiId);
+        Map<String, List<RelationshipRecord>> fetchedRelationships =
+                relationshipFetchService.fetchAllRelationships(leiId, leiData.getData());
+        boolean allRelationshipsFetched = fetchedRelationships != null;
 
         // Step 3: Return data only if all relationships were successfully fetched
         if (allRelationshipsFetched) {
-            System.out.println("All data for LEI " + leiId + " fetched successfully.");
+            log.debug("All data for LEI {} fetched successfully.", leiId);
             Map<String, Object> result = new HashMap<>();
             result.put("leiData", leiData);
             result.put("relationships", fetchedRelationships);
+            pipelineMetrics.recordRecordLatency(PipelineMetrics.RECORD_COMPLETE, System.nanoTime() - start);
             return result;
         } else {
-            System.err.println("Skipping writing LEI " + leiId + " due to partial data failure.");
+            log.warn("Skipping writing LEI {} due to partial data failure.", leiId);
+            failedLeiTrackerService.logFailedLei(leiId, "Relationship fetch failed");
+            pipelineMetrics.recordRecordLatency(PipelineMetrics.RECORD_FAILED, System.nanoTime() - start);
             return null;
         }
     }
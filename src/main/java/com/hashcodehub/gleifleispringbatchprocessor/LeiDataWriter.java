@@ -1,24 +1,140 @@
 package com.hashcodehub.gleifleispringbatchprocessor;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.hash.HashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.parquet.example.data.Group;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.item.Chunk;
-import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * An ItemWriter to handle writing the processed data to CSV files.
  * This component writes to two different CSVs based on the data provided.
+ * The files are held open for the whole step and each chunk is formatted in memory and
+ * written with a single write per file. The committed byte offsets are stored in the step's
+ * ExecutionContext, so a restarted step first truncates anything written after the last commit.
+ * The rows of a chunk that rolls back are cut off the same way: when the chunk fails (the writer is also a chunk
+ * listener) and again before the next write, so a retried or scanned chunk never leaves its rows in twice.
+ * With gleif.output.relationship-layout=NORMALIZED the relationships are split into an edge file and a
+ * related entities file holding each distinct related record once per run (see RelatedEntityIndex).
+ * With PARQUET in gleif.output.formats the same records also go to Parquet files (see LeiParquetWriter),
+ * with or without the CSVs. Parquet files cannot be reopened for appending, so a restart refuses to resume
+ * a step that died with committed rows in an unfinished Parquet file (see gleif.output.parquet.commits-per-file).
+ * Once a chunk has committed, its records are passed on to every CommittedRecordListener (the sync watermark, the
+ * ownership graph and the lookup cache), so a chunk that rolls back or is skipped leaves nothing behind in them.
  */
 @Component
-public class LeiDataWriter implements ItemWriter<Map<String, Object>> {
+@StepScope
+@Slf4j
+public class LeiDataWriter implements ItemStreamWriter<Map<String, Object>>, ChunkListener {
+
+    private static final String LEI_OFFSET_KEY = "leiDataWriter.leiRecordsOffset";
+    private static final String RELATIONSHIP_OFFSET_KEY = "leiDataWriter.relationshipRecordsOffset";
+    private static final String EDGE_OFFSET_KEY = "leiDataWriter.relationshipEdgesOffset";
+    private static final String ENTITY_OFFSET_KEY = "leiDataWriter.relatedEntitiesOffset";
+    // Where this run's related entities start, so a restart can rebuild its index from the committed rows
+    private static final String ENTITY_RUN_START_KEY = "leiDataWriter.relatedEntitiesRunStart";
+    // The unfinished Parquet files holding committed rows, comma separated
+    private static final String PARQUET_OPEN_FILES_KEY = "leiDataWriter.parquetOpenFiles";
 
     private final CsvWriterService csvWriterService;
+    private final PipelineMetrics pipelineMetrics;
+    private final List<CommittedRecordListener> committedRecordListeners;
+
+    // Set on partition worker steps (see LeiIdRangePartitioner); the configured paths are used otherwise
+    @Value("#{stepExecutionContext['" + LeiIdRangePartitioner.LEI_RECORDS_OUTPUT + "']}")
+    private String partitionLeiRecordsPath;
+    @Value("#{stepExecutionContext['" + LeiIdRangePartitioner.RELATIONSHIP_RECORDS_OUTPUT + "']}")
+    private String partitionRelationshipRecordsPath;
+    @Value("#{stepExecutionContext['" + LeiIdRangePartitioner.RELATIONSHIP_EDGES_OUTPUT + "']}")
+    private String partitionRelationshipEdgesPath;
+    @Value("#{stepExecutionContext['" + LeiIdRangePartitioner.RELATED_ENTITIES_OUTPUT + "']}")
+    private String partitionRelatedEntitiesPath;
+
+    // CSV, PARQUET or both, comma separated
+    @Value("${gleif.output.formats:CSV}")
+    private String[] outputFormats;
+
+    // EMBEDDED or NORMALIZED
+    @Value("${gleif.output.relationship-layout:EMBEDDED}")
+    private String relationshipLayout;
+
+    @Value("${gleif.output.parquet.commits-per-file:10}")
+    private int parquetCommitsPerFile;
+
+    @Value("#{stepExecution.id}")
+    private Long stepExecutionId;
+
+    private final ParquetWriterService parquetWriterService;
+
+    // The open CSV files by the key of their committed offset
+    private final Map<String, FileChannel> csvChannels = new LinkedHashMap<>();
+    // The end of each CSV file as of the last commit
+    private final Map<String, Long> committedOffsets = new HashMap<>();
+    private RelatedEntityIndex relatedEntityIndex;
+    // Related entities written since the last commit
+    private final Set<HashCode> uncommittedEntities = new HashSet<>();
+    // Items written since the last commit, passed on to the listeners once it has committed
+    private final List<Map<String, Object>> uncommittedItems = new ArrayList<>();
+    private LeiParquetWriter parquetWriter;
 
     @Autowired
-    public LeiDataWriter(CsvWriterService csvWriterService) {
+    public LeiDataWriter(CsvWriterService csvWriterService, ParquetWriterService parquetWriterService, PipelineMetrics pipelineMetrics,
+                         List<CommittedRecordListener> committedRecordListeners) {
         this.csvWriterService = csvWriterService;
+        this.parquetWriterService = parquetWriterService;
+        this.pipelineMetrics = pipelineMetrics;
+        this.committedRecordListeners = committedRecordListeners;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (isEnabled("PARQUET")) {
+            checkParquetRestartable(executionContext);
+            parquetWriter = new LeiParquetWriter(parquetWriterService, stepExecutionId, parquetCommitsPerFile);
+        }
+        if (!isEnabled("CSV")) {
+            return;
+        }
+        openChannel(LEI_OFFSET_KEY, pathOf(partitionLeiRecordsPath, csvWriterService.getLeiRecordsPath()),
+                CsvWriterService.LEI_RECORD_HEADERS, executionContext);
+        if ("NORMALIZED".equalsIgnoreCase(relationshipLayout)) {
+            openChannel(EDGE_OFFSET_KEY, pathOf(partitionRelationshipEdgesPath, csvWriterService.getRelationshipEdgesPath()),
+                    CsvWriterService.RELATIONSHIP_EDGE_HEADERS, executionContext);
+            Path relatedEntitiesPath = pathOf(partitionRelatedEntitiesPath, csvWriterService.getRelatedEntitiesPath());
+            openChannel(ENTITY_OFFSET_KEY, relatedEntitiesPath, CsvWriterService.RELATED_ENTITY_HEADERS, executionContext);
+            relatedEntityIndex = openRelatedEntityIndex(relatedEntitiesPath, executionContext);
+        } else {
+            openChannel(RELATIONSHIP_OFFSET_KEY, pathOf(partitionRelationshipRecordsPath, csvWriterService.getRelationshipRecordsPath()),
+                    CsvWriterService.RELATIONSHIP_HEADERS, executionContext);
+        }
     }
 
     /**
@@ -29,16 +145,288 @@ public class LeiDataWriter implements ItemWriter<Map<String, Object>> {
      */
     @Override
     public void write(Chunk<? extends Map<String, Object>> chunk) throws Exception {
+        discardUncommitted(); // Rows of a rolled back chunk the chunk listener did not see fail
+        StringBuilder leiRows = new StringBuilder();
+        ByteArrayOutputStream relationshipRows = new ByteArrayOutputStream();
+        ByteArrayOutputStream edgeRows = new ByteArrayOutputStream();
+        ByteArrayOutputStream entityRows = new ByteArrayOutputStream();
+        Set<HashCode> newEntities = new HashSet<>();
+        CSVPrinter leiPrinter = new CSVPrinter(leiRows, CSVFormat.DEFAULT);
+        List<Group> leiParquetRows = new ArrayList<>();
+        List<Group> relationshipParquetRows = new ArrayList<>();
+
         for (Map<String, Object> item : chunk) {
             GleifResponse leiData = (GleifResponse) item.get("leiData");
-            Map<String, JsonNode> relationships = (Map<String, JsonNode>) item.get("relationships");
+            Map<String, List<RelationshipRecord>> relationships = (Map<String, List<RelationshipRecord>>) item.get("relationships");
+            boolean hasRelationships = relationships != null && !relationships.isEmpty();
+
+            if (!csvChannels.isEmpty()) {
+                csvWriterService.printLeiRecord(leiData, leiPrinter);
+                if (hasRelationships && relatedEntityIndex != null) {
+                    printNormalized(leiData.getData().getAttributes().getLei(), relationships, newEntities, edgeRows, entityRows);
+                } else if (hasRelationships) {
+                    csvWriterService.printRelationships(relationships, relationshipRows);
+                }
+            }
+            if (parquetWriter != null) {
+                leiParquetRows.add(parquetWriterService.toLeiRecordRow(leiData));
+                if (hasRelationships) {
+                    relationshipParquetRows.addAll(parquetWriterService.toRelationshipRows(leiData.getData().getAttributes().getLei(), relationships));
+                }
+            }
+        }
 
-            System.out.println("Writing complete LEI record and its relationships to CSVs.");
+        log.debug("Writing {} LEI records and their relationships to {}.", chunk.size(), String.join(",", outputFormats));
+        if (!csvChannels.isEmpty()) {
+            Map<String, ByteBuffer> rows = new LinkedHashMap<>();
+            rows.put(LEI_OFFSET_KEY, StandardCharsets.UTF_8.encode(leiRows.toString()));
+            rows.put(RELATIONSHIP_OFFSET_KEY, ByteBuffer.wrap(relationshipRows.toByteArray()));
+            rows.put(EDGE_OFFSET_KEY, ByteBuffer.wrap(edgeRows.toByteArray()));
+            rows.put(ENTITY_OFFSET_KEY, ByteBuffer.wrap(entityRows.toByteArray()));
+            long start = System.nanoTime();
+            writeCsv(rows);
+            pipelineMetrics.recordOutputWrite(PipelineMetrics.FORMAT_CSV, System.nanoTime() - start);
+            if (relatedEntityIndex != null) {
+                relatedEntityIndex.addAll(newEntities); // Only once the rows are in the file
+                uncommittedEntities.addAll(newEntities);
+            }
+        }
+        if (parquetWriter != null) {
+            parquetWriter.add(leiParquetRows, relationshipParquetRows);
+        }
+        pipelineMetrics.recordRecordsWritten(chunk.size());
+        uncommittedItems.addAll(chunk.getItems());
+    }
+
+    /**
+     * Prints the relationships of one LEI as edges, and each related entity not yet written in this run.
+     */
+    private void printNormalized(String lei, Map<String, List<RelationshipRecord>> relationships, Set<HashCode> newEntities,
+                                 ByteArrayOutputStream edgeRows, ByteArrayOutputStream entityRows) throws IOException {
+        for (Map.Entry<String, List<RelationshipRecord>> entry : relationships.entrySet()) {
+            for (RelationshipRecord record : entry.getValue()) {
+                HashCode entityHash = RelatedEntityIndex.hash(record);
+                String entityKey = entityHash.toString();
+                csvWriterService.printRelationshipEdge(lei, entry.getKey(), record, entityKey, edgeRows);
+                if (!relatedEntityIndex.contains(entityHash) && newEntities.add(entityHash)) {
+                    csvWriterService.printRelatedEntity(entityKey, record, entityRows);
+                }
+            }
+        }
+    }
+
+    private void writeCsv(Map<String, ByteBuffer> rows) throws IOException {
+        try {
+            for (Map.Entry<String, FileChannel> output : csvChannels.entrySet()) {
+                writeFully(output.getValue(), rows.get(output.getKey()));
+            }
+        } catch (IOException e) {
+            // Leave no partial rows behind: the chunk is rolled back, so its bytes go too
+            discardUncommitted();
+            throw e;
+        }
+    }
+
+    /**
+     * Passes the records of the committed chunk on to the listeners. Spring Batch calls this after the commit.
+     */
+    @Override
+    public void afterChunk(ChunkContext context) {
+        for (Map<String, Object> item : uncommittedItems) {
+            GleifResponse leiData = (GleifResponse) item.get("leiData");
+            Map<String, List<RelationshipRecord>> relationships = (Map<String, List<RelationshipRecord>>) item.get("relationships");
+            for (CommittedRecordListener listener : committedRecordListeners) {
+                listener.recordCommitted(leiData, relationships);
+            }
+        }
+        uncommittedItems.clear();
+    }
+
+    /**
+     * Cuts the rows of a failed chunk off the CSV files and drops its queued Parquet rows; the chunk is rolled back
+     * and its items are written again. If a file cannot be cut back here, the next write tries again and fails the step.
+     */
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        try {
+            discardUncommitted();
+        } catch (ItemStreamException e) {
+            // Already logged; the transaction manager that calls this listener would only log it again
+        }
+    }
+
+    /**
+     * Truncates every CSV file back to its end as of the last commit, and forgets the Parquet rows, related
+     * entities and records queued since. A file that cannot be cut back fails the step: committing on top of the failed
+     * chunk's rows would leave them in the file for good, while a restart cuts the file back to the last commit.
+     *
+     * @throws ItemStreamException if a CSV file could not be cut back.
+     */
+    private void discardUncommitted() {
+        for (Map.Entry<String, FileChannel> output : csvChannels.entrySet()) {
+            long committedOffset = committedOffsets.get(output.getKey());
+            try {
+                if (output.getValue().position() != committedOffset || output.getValue().size() != committedOffset) {
+                    rewind(output.getValue(), committedOffset);
+                }
+            } catch (IOException e) {
+                log.error("Could not cut CSV output {} back to offset {}", output.getKey(), committedOffset, e);
+                throw new ItemStreamException("Could not cut CSV output " + output.getKey() + " back to the last commit", e);
+            }
+        }
+        if (parquetWriter != null) {
+            parquetWriter.discard();
+        }
+        if (relatedEntityIndex != null && !uncommittedEntities.isEmpty()) {
+            relatedEntityIndex.removeAll(uncommittedEntities);
+        }
+        uncommittedEntities.clear();
+        uncommittedItems.clear();
+    }
+
+    /**
+     * Records the current end of the CSV files and passes the chunk's rows on to the Parquet files;
+     * called by Spring Batch just before each chunk commits.
+     */
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            for (Map.Entry<String, FileChannel> output : csvChannels.entrySet()) {
+                long position = output.getValue().position();
+                executionContext.putLong(output.getKey(), position);
+                committedOffsets.put(output.getKey(), position);
+            }
+            uncommittedEntities.clear();
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not read CSV output positions", e);
+        }
+        try {
+            if (parquetWriter != null) {
+                long start = System.nanoTime();
+                parquetWriter.commit();
+                pipelineMetrics.recordOutputWrite(PipelineMetrics.FORMAT_PARQUET, System.nanoTime() - start);
+                List<Path> openFiles = parquetWriter.openFiles();
+                if (openFiles.isEmpty()) {
+                    executionContext.remove(PARQUET_OPEN_FILES_KEY);
+                } else {
+                    executionContext.putString(PARQUET_OPEN_FILES_KEY,
+                            openFiles.stream().map(Path::toString).collect(Collectors.joining(",")));
+                }
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not write Parquet output", e);
+        }
+    }
+
+    /**
+     * Refuses to resume a step whose last checkpoint counted rows that only ever reached an unfinished Parquet file:
+     * the file is unreadable without its footer, and the resumed step would not write the rows again.
+     */
+    private void checkParquetRestartable(ExecutionContext executionContext) {
+        String openFiles = executionContext.getString(PARQUET_OPEN_FILES_KEY, "");
+        for (String openFile : openFiles.split(",")) {
+            if (!openFile.isEmpty() && Files.exists(Path.of(openFile))) {
+                throw new ItemStreamException("Cannot resume: committed rows were lost with the unfinished Parquet file "
+                        + openFile + "; start a new run, or set gleif.output.parquet.commits-per-file=1 to make runs resumable");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            if (parquetWriter != null) {
+                parquetWriter.close();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not close Parquet output files", e);
+        } finally {
+            parquetWriter = null;
+            relatedEntityIndex = null;
+            uncommittedEntities.clear();
+            uncommittedItems.clear();
+            closeCsv();
+        }
+    }
+
+    private void closeCsv() {
+        IOException failure = null;
+        for (FileChannel channel : csvChannels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        csvChannels.clear();
+        committedOffsets.clear();
+        if (failure != null) {
+            throw new ItemStreamException("Could not close CSV output files", failure);
+        }
+    }
+
+    private Path pathOf(String partitionPath, String configuredPath) {
+        return Paths.get(partitionPath != null ? partitionPath : configuredPath);
+    }
+
+    /**
+     * Opens an output file for the step. On a restart the file is cut back to the offset of the
+     * last committed chunk; otherwise new rows are appended and the header is written if the file is empty.
+     */
+    private void openChannel(String offsetKey, Path path, String[] headers, ExecutionContext executionContext) {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            csvChannels.put(offsetKey, channel);
+            if (executionContext.containsKey(offsetKey)) {
+                long committedOffset = executionContext.getLong(offsetKey);
+                channel.truncate(committedOffset);
+                channel.position(committedOffset);
+            } else {
+                channel.position(channel.size());
+                if (channel.size() == 0) {
+                    writeFully(channel, StandardCharsets.UTF_8.encode(csvWriterService.headerLine(headers)));
+                }
+            }
+            committedOffsets.put(offsetKey, channel.position());
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not open CSV output file " + path, e);
+        }
+    }
+
+    /**
+     * Creates the index of related entities written in this run. A restarted run re-reads the keys of
+     * the entities it committed before it stopped.
+     */
+    private RelatedEntityIndex openRelatedEntityIndex(Path relatedEntitiesPath, ExecutionContext executionContext) {
+        RelatedEntityIndex index = new RelatedEntityIndex();
+        try {
+            long committedOffset = csvChannels.get(ENTITY_OFFSET_KEY).position();
+            if (executionContext.containsKey(ENTITY_RUN_START_KEY)) {
+                index.load(relatedEntitiesPath, executionContext.getLong(ENTITY_RUN_START_KEY), committedOffset);
+            } else {
+                executionContext.putLong(ENTITY_RUN_START_KEY, committedOffset);
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not read related entities from " + relatedEntitiesPath, e);
+        }
+        return index;
+    }
+
+    private boolean isEnabled(String format) {
+        return Arrays.stream(outputFormats).anyMatch(enabled -> enabled.trim().equalsIgnoreCase(format));
+    }
+
+    private void rewind(FileChannel channel, long offset) throws IOException {
+        channel.truncate(offset);
+        channel.position(offset);
+    }
 
-            // Correctly call the write methods, passing only the data.
-            // The file paths are managed internally by CsvWriterService.
-            csvWriterService.writeLeiRecordToCsv(leiData);
-            csvWriterService.writeRelationshipToCsv(relationships);
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
         }
     }
 }
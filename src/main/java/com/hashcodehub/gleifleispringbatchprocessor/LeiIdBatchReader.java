@@ -0,0 +1,63 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ItemReader that groups the LEI IDs of a delegate reader into batches,
+ * so that a whole batch can be resolved with one bulk API lookup.
+ * Stream callbacks are passed through to the delegate so its restart state is kept.
+ */
+public class LeiIdBatchReader implements ItemStreamReader<List<String>> {
+
+    private final ItemReader<String> delegate;
+    private final int batchSize;
+
+    public LeiIdBatchReader(ItemReader<String> delegate, int batchSize) {
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reads up to batchSize IDs from the delegate.
+     *
+     * @return the next batch of LEI IDs, or null once the delegate is exhausted.
+     * @throws Exception
+     */
+    @Override
+    public List<String> read() throws Exception {
+        List<String> batch = new ArrayList<>(batchSize);
+        String leiId;
+        while (batch.size() < batchSize && (leiId = delegate.read()) != null) {
+            batch.add(leiId);
+        }
+        return batch.isEmpty() ? null : batch;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (delegate instanceof ItemStream stream) {
+            stream.open(executionContext);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (delegate instanceof ItemStream stream) {
+            stream.update(executionContext);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (delegate instanceof ItemStream stream) {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits the LEI input file into contiguous line ranges, one per partition.
+ * Each partition's ExecutionContext carries its range and the paths of its own output files,
+ * which the partition reader and LeiDataWriter pick up through step scope.
+ */
+public class LeiIdRangePartitioner implements Partitioner {
+
+    public static final String PARTITION_INDEX = "partition.index";
+    public static final String FIRST_LINE = "partition.first-line";
+    public static final String LINE_COUNT = "partition.line-count";
+    public static final String LEI_RECORDS_OUTPUT = "partition.output.lei-records";
+    public static final String RELATIONSHIP_RECORDS_OUTPUT = "partition.output.relationship-records";
+    public static final String RELATIONSHIP_EDGES_OUTPUT = "partition.output.relationship-edges";
+    public static final String RELATED_ENTITIES_OUTPUT = "partition.output.related-entities";
+
+    public static final String LEI_RECORDS_FILE_PREFIX = "lei_records.part-";
+    public static final String RELATIONSHIP_RECORDS_FILE_PREFIX = "relationship_records.part-";
+    public static final String RELATIONSHIP_EDGES_FILE_PREFIX = "relationship_edges.part-";
+    public static final String RELATED_ENTITIES_FILE_PREFIX = "related_entities.part-";
+
+    private final Resource inputResource;
+    private final Path outputDirectory;
+
+    /**
+     * @param inputResource   The LEI input file, with a "lei_id" header row.
+     * @param outputDirectory The directory the partitions write their output files to.
+     */
+    public LeiIdRangePartitioner(Resource inputResource, Path outputDirectory) {
+        this.inputResource = inputResource;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Creates up to gridSize partitions of nearly equal line counts. Fewer partitions are
+     * created when the file has fewer data lines than gridSize.
+     *
+     * @param gridSize The number of partitions wanted.
+     * @return the partition ExecutionContexts by partition name.
+     */
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        long lines = countDataLines();
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        long firstLine = 0;
+        for (int index = 0; index < gridSize && firstLine < lines; index++) {
+            // Spread the remainder over the first partitions, so sizes differ by at most one line
+            long lineCount = lines / gridSize + (index < lines % gridSize ? 1 : 0);
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(PARTITION_INDEX, index);
+            context.putLong(FIRST_LINE, firstLine);
+            context.putLong(LINE_COUNT, lineCount);
+            context.putString(LEI_RECORDS_OUTPUT, outputDirectory.resolve(LEI_RECORDS_FILE_PREFIX + index + ".csv").toString());
+            context.putString(RELATIONSHIP_RECORDS_OUTPUT, outputDirectory.resolve(RELATIONSHIP_RECORDS_FILE_PREFIX + index + ".csv").toString());
+            context.putString(RELATIONSHIP_EDGES_OUTPUT, outputDirectory.resolve(RELATIONSHIP_EDGES_FILE_PREFIX + index + ".csv").toString());
+            context.putString(RELATED_ENTITIES_OUTPUT, outputDirectory.resolve(RELATED_ENTITIES_FILE_PREFIX + index + ".csv").toString());
+            partitions.put("partition" + index, context);
+            firstLine += lineCount;
+        }
+        return partitions;
+    }
+
+    private long countDataLines() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputResource.getInputStream(), StandardCharsets.UTF_8))) {
+            long lines = reader.lines().count();
+            return Math.max(0, lines - 1); // Minus the "lei_id" header row
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the LEI input file", e);
+        }
+    }
+}
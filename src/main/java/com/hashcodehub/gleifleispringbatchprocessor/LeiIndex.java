@@ -0,0 +1,159 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import java.util.Arrays;
+
+/**
+ * Maps LEIs to dense int ids 0..size-1, in the order they were first added.
+ * The packed keys are stored by id in two long arrays (16 bytes per LEI), and an open-addressing
+ * table of ids, kept at most half full, finds them (8 bytes per LEI). There are no per-entry objects,
+ * so a multi-million-LEI index is a handful of arrays to the garbage collector.
+ * Ids can index caller-owned primitive arrays, as OwnershipGraph does. Not thread-safe.
+ */
+public class LeiIndex {
+
+    public static final int ABSENT = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] highs;
+    private long[] lows;
+    private int size;
+    // id + 1 per slot, 0 marking an empty slot
+    private int[] slots;
+
+    public LeiIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of LEIs the index is sized for before it has to grow.
+     */
+    public LeiIndex(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, expectedSize);
+        highs = new long[capacity];
+        lows = new long[capacity];
+        slots = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * Returns the id of an LEI, adding it if it is not in the index yet.
+     *
+     * @return the id of the LEI.
+     */
+    public int add(long high, long low) {
+        int slot = slotOf(high, low);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        if (size == highs.length) {
+            highs = Arrays.copyOf(highs, size * 2);
+            lows = Arrays.copyOf(lows, size * 2);
+        }
+        int id = size++;
+        highs[id] = high;
+        lows[id] = low;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            slots[slot] = id + 1;
+        }
+        return id;
+    }
+
+    public int add(Lei lei) {
+        return add(lei.high(), lei.low());
+    }
+
+    /**
+     * @param lei A well-formed LEI, see {@link Lei#isValid(CharSequence)}.
+     * @return the id of the LEI.
+     * @throws IllegalArgumentException if the value is not a well-formed LEI.
+     */
+    public int add(CharSequence lei) {
+        if (!Lei.isValid(lei)) {
+            throw new IllegalArgumentException("Not a well-formed LEI: " + lei);
+        }
+        return add(Lei.packHigh(lei), Lei.packLow(lei));
+    }
+
+    /**
+     * @return the id of the LEI, or ABSENT.
+     */
+    public int indexOf(long high, long low) {
+        return slots[slotOf(high, low)] - 1;
+    }
+
+    public int indexOf(Lei lei) {
+        return indexOf(lei.high(), lei.low());
+    }
+
+    /**
+     * Looks an LEI up without creating any objects.
+     *
+     * @return the id of the LEI, or ABSENT if it is not in the index or not a well-formed LEI.
+     */
+    public int indexOf(CharSequence lei) {
+        return Lei.isValid(lei) ? indexOf(Lei.packHigh(lei), Lei.packLow(lei)) : ABSENT;
+    }
+
+    public long high(int id) {
+        return highs[id];
+    }
+
+    public long low(int id) {
+        return lows[id];
+    }
+
+    public Lei get(int id) {
+        return new Lei(highs[id], lows[id]);
+    }
+
+    /**
+     * @return the LEI with the given id as text.
+     */
+    public String format(int id) {
+        return Lei.format(highs[id], lows[id]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replaces the contents with the given keys, id i being (highs[i], lows[i]); used to reload snapshots.
+     * The keys must be distinct.
+     */
+    public void load(long[] newHighs, long[] newLows, int count) {
+        int capacity = Math.max(MIN_CAPACITY, count);
+        highs = Arrays.copyOf(newHighs, capacity);
+        lows = Arrays.copyOf(newLows, capacity);
+        size = count;
+        rehash(tableSizeFor(capacity));
+    }
+
+    private int slotOf(long high, long low) {
+        int mask = slots.length - 1;
+        for (int slot = Lei.hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0 || (highs[entry - 1] == high && lows[entry - 1] == low)) {
+                return slot;
+            }
+        }
+    }
+
+    private void rehash(int tableSize) {
+        slots = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = Lei.hash(highs[id], lows[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity - 1) << 2; // The next power of two at or above twice the capacity
+    }
+}
@@ -0,0 +1,218 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pre-flight checks on input LEI IDs, run before any API call is spent on them.
+ * {@link #filter(ItemReader)} wraps an LEI ID reader so that malformed IDs, IDs with wrong
+ * ISO 17442 check digits and repeated IDs are dropped and reported to the rejected records file.
+ * Duplicates are found exactly (LeiIndex) until gleif.input.dedup.exact-limit distinct LEIs have been
+ * read; beyond that the LEIs move into a scalable Bloom filter, which keeps memory flat at the cost of
+ * rarely dropping a unique LEI as a probable duplicate.
+ * A reader that starts past the beginning of its input, on a restart or as a partition, first reads the lines it
+ * would have skipped into the duplicate state, so duplicates of those lines are still dropped.
+ */
+@Component
+@Slf4j
+public class LeiInputPreflight {
+
+    public static final String MALFORMED = "Malformed LEI: expected 20 characters of 0-9 and A-Z";
+    public static final String INVALID_CHECK_DIGITS = "Invalid ISO 17442 check digits";
+    public static final String DUPLICATE = "Duplicate of an earlier input line";
+    public static final String PROBABLE_DUPLICATE = "Probable duplicate of an earlier input line (Bloom filter)";
+
+    private final FailedLeiTrackerService failedLeiTrackerService;
+
+    @Value("${gleif.input.dedup.enabled:true}")
+    private boolean deduplicate;
+
+    @Value("${gleif.input.dedup.exact-limit:2000000}")
+    private int exactLimit;
+
+    @Value("${gleif.input.dedup.false-positive-rate:0.0001}")
+    private double falsePositiveRate;
+
+    public LeiInputPreflight(FailedLeiTrackerService failedLeiTrackerService) {
+        this.failedLeiTrackerService = failedLeiTrackerService;
+    }
+
+    /**
+     * Wraps an LEI ID reader with the pre-flight checks. The duplicate state is per wrapper and is rebuilt each time
+     * the wrapper is opened, i.e. once per step run. If the delegate counts its items and is opened at a later item,
+     * from the read count of a restart or its configured current item count, the items before it are read into the
+     * duplicate state first; other delegates start with an empty state.
+     *
+     * @param delegate The reader of raw LEI IDs.
+     * @return a reader of well-formed, first-seen LEI IDs.
+     */
+    public ItemStreamReader<String> filter(ItemReader<String> delegate) {
+        return filter(delegate, true);
+    }
+
+    /**
+     * Wraps an LEI ID reader with the pre-flight checks, optionally dropping duplicates without reporting them,
+     * for inputs where repeated IDs are expected.
+     *
+     * @param delegate The reader of raw LEI IDs.
+     * @param reportDuplicates Whether duplicates are written to the rejected records file.
+     * @return a reader of well-formed, first-seen LEI IDs.
+     */
+    public ItemStreamReader<String> filter(ItemReader<String> delegate, boolean reportDuplicates) {
+        return new PreflightReader(delegate, reportDuplicates);
+    }
+
+    /**
+     * Returns the reason an ID is not a valid LEI, or null if it is one.
+     *
+     * @param leiId The ID to check.
+     * @return the reject reason, or null.
+     */
+    public static String validate(String leiId) {
+        if (!Lei.isValid(leiId)) {
+            return MALFORMED;
+        }
+        if (!Lei.hasValidCheckDigits(leiId)) {
+            return INVALID_CHECK_DIGITS;
+        }
+        return null;
+    }
+
+    private class PreflightReader implements ItemStreamReader<String> {
+
+        private final ItemReader<String> delegate;
+        private final boolean reportDuplicates;
+
+        private LeiIndex seen;
+        private LeiBloomFilter probablySeen;
+        private long read;
+        private long rejected;
+
+        PreflightReader(ItemReader<String> delegate, boolean reportDuplicates) {
+            this.delegate = delegate;
+            this.reportDuplicates = reportDuplicates;
+        }
+
+        @Override
+        public String read() throws Exception {
+            String leiId;
+            while ((leiId = delegate.read()) != null) {
+                read++;
+                String reason = validate(leiId);
+                boolean duplicate = false;
+                if (reason == null && deduplicate) {
+                    reason = firstSeen(Lei.packHigh(leiId), Lei.packLow(leiId));
+                    duplicate = reason != null;
+                }
+                if (reason == null) {
+                    return leiId;
+                }
+                rejected++;
+                if (reportDuplicates || !duplicate) {
+                    failedLeiTrackerService.logRejectedLei(leiId, reason);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return null if the LEI was not read before, otherwise the duplicate reason.
+         */
+        private String firstSeen(long high, long low) {
+            if (probablySeen != null) {
+                return probablySeen.add(high, low) ? null : PROBABLE_DUPLICATE;
+            }
+            int before = seen.size();
+            seen.add(high, low);
+            if (seen.size() == before) {
+                return DUPLICATE;
+            }
+            if (seen.size() > exactLimit) {
+                switchToBloomFilter();
+            }
+            return null;
+        }
+
+        private void switchToBloomFilter() {
+            probablySeen = new LeiBloomFilter(seen.size() * 2, falsePositiveRate);
+            for (int id = 0; id < seen.size(); id++) {
+                probablySeen.add(seen.high(id), seen.low(id));
+            }
+            log.info("Input de-duplication moved from exact to Bloom filter after {} distinct LEIs ({} KB)",
+                    seen.size(), probablySeen.sizeInBytes() / 1024);
+            seen = null;
+        }
+
+        @Override
+        public void open(ExecutionContext executionContext) throws ItemStreamException {
+            seen = new LeiIndex();
+            probablySeen = null;
+            read = 0;
+            rejected = 0;
+            if (deduplicate && delegate instanceof AbstractItemCountingItemStreamItemReader<String> counting) {
+                openFromStart(counting, executionContext);
+            } else if (delegate instanceof ItemStream stream) {
+                stream.open(executionContext);
+            }
+        }
+
+        /**
+         * Opens the delegate at its first item and reads up to the item it would have started at into the
+         * duplicate state, leaving it where its own open would have: a restart or a partition never returns a
+         * duplicate of a line before its start.
+         */
+        private void openFromStart(AbstractItemCountingItemStreamItemReader<String> counting, ExecutionContext executionContext) {
+            String readCountKey = counting.getExecutionContextKey("read.count");
+            int startItem = executionContext.containsKey(readCountKey) ? executionContext.getInt(readCountKey) : counting.getCurrentItemCount();
+            if (startItem == 0) {
+                counting.open(executionContext);
+                return;
+            }
+            ExecutionContext fromStart = new ExecutionContext(executionContext);
+            fromStart.remove(readCountKey);
+            counting.setCurrentItemCount(0);
+            counting.open(fromStart);
+            for (int item = 0; item < startItem; item++) {
+                String leiId;
+                try {
+                    leiId = counting.read();
+                } catch (Exception e) {
+                    continue; // A line that cannot be read was skipped or reported when it was first read
+                }
+                if (leiId == null) {
+                    break;
+                }
+                if (validate(leiId) == null) {
+                    firstSeen(Lei.packHigh(leiId), Lei.packLow(leiId));
+                }
+            }
+            log.info("Input de-duplication resumed at item {}, after reading the items before it", startItem);
+        }
+
+        @Override
+        public void update(ExecutionContext executionContext) throws ItemStreamException {
+            if (delegate instanceof ItemStream stream) {
+                stream.update(executionContext);
+            }
+        }
+
+        @Override
+        public void close() throws ItemStreamException {
+            if (read > 0) {
+                log.info("Input pre-flight: {} LEI IDs read, {} rejected", read, rejected);
+            }
+            seen = null;
+            probablySeen = null;
+            if (delegate instanceof ItemStream stream) {
+                stream.close();
+            }
+        }
+    }
+}
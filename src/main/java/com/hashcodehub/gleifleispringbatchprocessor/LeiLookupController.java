@@ -0,0 +1,112 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * REST controller for synchronous LEI lookups, for a handful of LEIs without running the job (see LeiLookupService).
+ * The handlers return before the lookups finish and the results are written as they complete, so a waiting caller
+ * holds no request thread.
+ */
+@RestController
+@RequestMapping("/api/v1/lei/lookup")
+@Slf4j
+public class LeiLookupController {
+
+    private final LeiLookupService leiLookupService;
+    private final ObjectMapper objectMapper;
+
+    // Most LEIs one batch request may look up
+    @Value("${gleif.lookup.max-batch-size:1000}")
+    private int maxBatchSize;
+
+    // How long a batch response may stay open; uncached LEIs are fetched at the shared request rate
+    @Value("${gleif.lookup.batch-timeout:10m}")
+    private Duration batchTimeout;
+
+    public LeiLookupController(LeiLookupService leiLookupService, ObjectMapper objectMapper) {
+        this.leiLookupService = leiLookupService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Endpoint looking up one LEI with its resolved relationships.
+     * @param lei The LEI.
+     * @return the record, 404 if GLEIF has none, 400 if the LEI is malformed, or 502 if a relationship could not be fetched.
+     */
+    @GetMapping("/{lei}")
+    public CompletableFuture<ResponseEntity<LeiLookupService.LookupResult>> lookup(@PathVariable("lei") String lei) {
+        return leiLookupService.lookup(lei).thenApply(result -> ResponseEntity.status(httpStatus(result)).body(result));
+    }
+
+    /**
+     * Endpoint looking up a batch of LEIs. The results are streamed as NDJSON, one line per distinct LEI in the order
+     * they complete, so cached records arrive at once and the rest as they are fetched.
+     * @param leis The LEIs, as a JSON array.
+     * @return the NDJSON stream of LeiLookupService.LookupResult lines, or 400 if the batch is too large.
+     */
+    @PostMapping
+    public ResponseEntity<ResponseBodyEmitter> lookupBatch(@RequestBody List<String> leis) {
+        if (leis.size() > maxBatchSize) {
+            ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+            sendLine(emitter, Map.of("error", "At most " + maxBatchSize + " LEIs per request, got " + leis.size()));
+            emitter.complete();
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+        }
+        log.info("Endpoint triggered: Looking up {} LEIs.", leis.size());
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeout.toMillis());
+        CompletableFuture<?>[] sent = leiLookupService.lookupAll(leis.stream().distinct().toList()).stream()
+                .map(result -> result.thenAccept(line -> sendLine(emitter, line)))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(sent).whenComplete((done, e) -> emitter.complete());
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    /**
+     * Endpoint exposing the lookup cache counters and the fetches in flight, for sizing the cache and pool.
+     * @return hit, miss, eviction, size and fetch counters.
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(leiLookupService.statsSummary());
+    }
+
+    private void sendLine(ResponseBodyEmitter emitter, Object line) {
+        try {
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            objectMapper.writeValue(json, line);
+            json.write('\n');
+            emitter.send(json.toByteArray(), MediaType.APPLICATION_NDJSON);
+        } catch (IOException | IllegalStateException e) {
+            // The caller has gone or the response timed out; the lookups still finish and fill the cache
+            log.debug("Could not send lookup result: {}", e.getMessage());
+        }
+    }
+
+    private static HttpStatus httpStatus(LeiLookupService.LookupResult result) {
+        return switch (result.status()) {
+            case LeiLookupService.FOUND -> HttpStatus.OK;
+            case LeiLookupService.NOT_FOUND -> HttpStatus.NOT_FOUND;
+            case LeiLookupService.INVALID -> HttpStatus.BAD_REQUEST;
+            default -> HttpStatus.BAD_GATEWAY;
+        };
+    }
+}
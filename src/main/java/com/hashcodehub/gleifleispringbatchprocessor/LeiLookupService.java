@@ -0,0 +1,215 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Synchronous lookups of single LEIs, enriched with their resolved relationships, outside the batch job.
+ * Lookups read through three tiers:
+ * <ol>
+ *   <li>a bounded in-memory cache of lookup results, which is also filled with every record the job commits</li>
+ *   <li>the HttpResponseStore, which holds the GLEIF responses of earlier runs on disk and serves fresh ones without
+ *       a request, through the same RestTemplate as the job</li>
+ *   <li>GLEIF itself, under the job's shared rate limit and retries</li>
+ * </ol>
+ * The cache holds futures, so concurrent lookups of the same LEI wait on one fetch instead of each starting their own.
+ * Fetches run on a bounded pool and callers get a CompletableFuture, so waiting callers hold no thread: the pool
+ * size caps the fetches in flight, which the rate limit keeps low anyway, not the number of callers.
+ * <p>
+ * Lookups share the job's rate limit, retries and caches, but not its failure log: a failed lookup is reported to the
+ * caller only, so the failed record replay never fetches an LEI that was merely looked up.
+ */
+@Service
+@Slf4j
+public class LeiLookupService implements CommittedRecordListener {
+
+    public static final String FOUND = "FOUND";
+    public static final String NOT_FOUND = "NOT_FOUND";
+    public static final String FAILED = "FAILED";
+    public static final String INVALID = "INVALID";
+
+    /**
+     * The result of one lookup; one line of an NDJSON batch response.
+     *
+     * @param lei           The LEI as requested.
+     * @param status        FOUND; NOT_FOUND when GLEIF answers 404 for the LEI; FAILED when the record or one of its
+     *                      relationships could not be fetched; INVALID when not a well-formed LEI with valid check digits.
+     * @param source        CACHE when served from memory, GLEIF otherwise (possibly from the HttpResponseStore).
+     * @param record        The LEI record, when found.
+     * @param relationships The related records by relationship type, when found.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record LookupResult(String lei, String status, String source, GleifResponse.Data record,
+                               Map<String, List<RelatedRecord>> relationships) {
+
+        LookupResult fromCache() {
+            return new LookupResult(lei, status, "CACHE", record, relationships);
+        }
+    }
+
+    /**
+     * A related record, with its attributes passed through as the raw JSON GLEIF returned.
+     */
+    public record RelatedRecord(String id, String type, @JsonRawValue String attributes) {
+    }
+
+    private final GleifApiService gleifApiService;
+    private final RelationshipFetchService relationshipFetchService;
+    private final Cache<String, CompletableFuture<LookupResult>> cache;
+    private final ThreadPoolTaskExecutor lookupExecutor;
+
+    public LeiLookupService(GleifApiService gleifApiService, RelationshipFetchService relationshipFetchService,
+                            @Value("${gleif.lookup.cache.max-size:10000}") long maxSize,
+                            @Value("${gleif.lookup.cache.ttl:1h}") Duration ttl,
+                            @Value("${gleif.lookup.threads:16}") int threads) {
+        this.gleifApiService = gleifApiService;
+        this.relationshipFetchService = relationshipFetchService;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // Not exposed as a bean, so Boot's default application task executor is left in place
+        this.lookupExecutor = new ThreadPoolTaskExecutor();
+        this.lookupExecutor.setCorePoolSize(threads);
+        this.lookupExecutor.setAllowCoreThreadTimeOut(true);
+        this.lookupExecutor.setThreadNamePrefix("lei-lookup-");
+        this.lookupExecutor.initialize();
+    }
+
+    /**
+     * Looks up one LEI. The future completes once the record and all its relationships are resolved; it never
+     * completes exceptionally, failures are reported in the result's status. Failed lookups are not cached.
+     *
+     * @param lei The LEI to look up.
+     * @return the pending result.
+     */
+    public CompletableFuture<LookupResult> lookup(String lei) {
+        String leiId = lei.trim().toUpperCase();
+        if (!Lei.isValid(leiId) || !Lei.hasValidCheckDigits(leiId)) { // Never spend a request on a typo
+            return CompletableFuture.completedFuture(new LookupResult(lei, INVALID, null, null, null));
+        }
+        try {
+            CompletableFuture<LookupResult> started = new CompletableFuture<>();
+            CompletableFuture<LookupResult> result = cache.get(leiId, () -> started);
+            if (result != started) {
+                return result.isDone() ? result.thenApply(LookupResult::fromCache) : result;
+            }
+            lookupExecutor.execute(() -> load(leiId, started));
+            return started;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Lookup cache failed for " + leiId, e.getCause()); // The loader cannot throw
+        }
+    }
+
+    /**
+     * Looks up a batch of LEIs, each as in {@link #lookup(String)}; duplicates share one lookup.
+     *
+     * @param leis The LEIs to look up.
+     * @return the pending results, in request order.
+     */
+    public List<CompletableFuture<LookupResult>> lookupAll(List<String> leis) {
+        List<CompletableFuture<LookupResult>> results = new ArrayList<>(leis.size());
+        for (String lei : leis) {
+            results.add(lookup(lei));
+        }
+        return results;
+    }
+
+    @Override
+    public void recordCommitted(GleifResponse leiData, Map<String, List<RelationshipRecord>> relationships) {
+        recordProcessed(leiData, relationships);
+    }
+
+    /**
+     * Caches a record the job has just committed, so lookups of it need no fetch at all.
+     * Records without relationships (from a golden-copy import) are left out: their relationships were never resolved.
+     *
+     * @param leiData       The written LEI record.
+     * @param relationships Its resolved relationships.
+     */
+    public void recordProcessed(GleifResponse leiData, Map<String, List<RelationshipRecord>> relationships) {
+        if (relationships == null || relationships.isEmpty() || leiData.getData() == null) {
+            return;
+        }
+        String leiId = leiData.getData().getAttributes().getLei();
+        cache.put(leiId, CompletableFuture.completedFuture(found(leiId, leiData, relationships)));
+    }
+
+    /**
+     * Summarises the cache counters for sizing the cache.
+     *
+     * @return hit, miss, eviction and size counters by name.
+     */
+    public Map<String, Object> statsSummary() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("size", cache.size());
+        summary.put("hits", stats.hitCount());
+        summary.put("misses", stats.missCount());
+        summary.put("evictions", stats.evictionCount());
+        summary.put("hitRate", stats.hitRate());
+        summary.put("activeFetches", lookupExecutor.getActiveCount());
+        summary.put("queuedFetches", lookupExecutor.getQueueSize());
+        return summary;
+    }
+
+    private void load(String leiId, CompletableFuture<LookupResult> result) {
+        try {
+            GleifResponse leiData = gleifApiService.lookupLeiRecord(leiId);
+            if (leiData == null || leiData.getData() == null) {
+                fail(leiId, result, NOT_FOUND);
+                return;
+            }
+            Map<String, List<RelationshipRecord>> relationships = relationshipFetchService.lookupAllRelationships(leiId, leiData.getData());
+            if (relationships == null) {
+                fail(leiId, result, FAILED);
+                return;
+            }
+            result.complete(found(leiId, leiData, relationships));
+        } catch (RuntimeException e) {
+            log.warn("Lookup of LEI {} failed: {}", leiId, e.getMessage());
+            fail(leiId, result, FAILED);
+        }
+    }
+
+    private void fail(String leiId, CompletableFuture<LookupResult> result, String status) {
+        cache.asMap().remove(leiId, result); // So the next lookup tries again
+        result.complete(new LookupResult(leiId, status, "GLEIF", null, null));
+    }
+
+    private static LookupResult found(String leiId, GleifResponse leiData, Map<String, List<RelationshipRecord>> relationships) {
+        Map<String, List<RelatedRecord>> related = new LinkedHashMap<>();
+        for (Map.Entry<String, List<RelationshipRecord>> entry : relationships.entrySet()) {
+            List<RelatedRecord> records = new ArrayList<>(entry.getValue().size());
+            for (RelationshipRecord record : entry.getValue()) {
+                String attributes = record.attributes().length > 0 ? new String(record.attributes(), StandardCharsets.UTF_8) : null;
+                records.add(new RelatedRecord(record.id(), record.type(), attributes));
+            }
+            related.put(entry.getKey(), records);
+        }
+        return new LookupResult(leiId, FOUND, "GLEIF", leiData.getData(), related);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lookupExecutor.shutdown();
+    }
+}
@@ -0,0 +1,159 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * The Parquet files of one step execution: part-&lt;stepExecutionId&gt;-&lt;sequence&gt;.parquet in the LEI record
+ * and relationship dataset directories. Rows are held back until the chunk commits, so a rolled back
+ * chunk never reaches the files, and a file holds one row group of a fixed number of commits, however
+ * many rows each of them brings (the SINGLE step adapts its commit interval as it runs).
+ * The files are written under an ".inprogress" name and only get their final name once closed,
+ * because a Parquet file is unreadable until its footer is written. A file is closed after every
+ * gleif.output.parquet.commits-per-file commits, from within the commit, so a crash loses the rows of
+ * at most one open file; {@link #openFiles()} names the files whose committed rows such a crash would lose.
+ */
+@Slf4j
+public class LeiParquetWriter {
+
+    private static final String IN_PROGRESS_SUFFIX = ".inprogress";
+
+    private final ParquetWriterService parquetWriterService;
+    private final long stepExecutionId;
+    private final int commitsPerFile;
+    private final Part leiRecords;
+    private final Part relationshipRecords;
+
+    public LeiParquetWriter(ParquetWriterService parquetWriterService, long stepExecutionId, int commitsPerFile) {
+        this.parquetWriterService = parquetWriterService;
+        this.stepExecutionId = stepExecutionId;
+        this.commitsPerFile = Math.max(1, commitsPerFile);
+        this.leiRecords = new Part(parquetWriterService.getLeiRecordsDirectory(), ParquetWriterService.LEI_RECORD_SCHEMA);
+        this.relationshipRecords = new Part(parquetWriterService.getRelationshipRecordsDirectory(), ParquetWriterService.RELATIONSHIP_SCHEMA);
+    }
+
+    /**
+     * Queues the rows of one written chunk until the next commit.
+     *
+     * @param leiRows          The LEI record rows.
+     * @param relationshipRows The relationship rows.
+     */
+    public void add(List<Group> leiRows, List<Group> relationshipRows) {
+        leiRecords.pending.addAll(leiRows);
+        relationshipRecords.pending.addAll(relationshipRows);
+    }
+
+    /**
+     * Drops the queued rows of a chunk that failed.
+     */
+    public void discard() {
+        leiRecords.pending.clear();
+        relationshipRecords.pending.clear();
+    }
+
+    /**
+     * Hands the queued rows to the Parquet writers, closing any file that is full; called when the chunk commits.
+     */
+    public void commit() throws IOException {
+        leiRecords.flush();
+        relationshipRecords.flush();
+    }
+
+    /**
+     * Returns the in-progress files that hold committed rows, which are lost if the process dies before close.
+     *
+     * @return the in-progress file paths, empty if every committed row is in a closed file.
+     */
+    public List<Path> openFiles() {
+        return Stream.of(leiRecords, relationshipRecords)
+                .filter(part -> part.writer != null)
+                .map(Part::inProgressFile)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Returns the in-progress name of a Parquet file.
+     *
+     * @param file The final file path.
+     * @return the path the file is written to until it is closed.
+     */
+    public static Path inProgressFile(Path file) {
+        return file.resolveSibling(file.getFileName() + IN_PROGRESS_SUFFIX);
+    }
+
+    /**
+     * Drops any uncommitted rows, writes the footers and gives the files their final names.
+     */
+    public void close() throws IOException {
+        try {
+            leiRecords.close();
+        } finally {
+            relationshipRecords.close();
+        }
+    }
+
+    private class Part {
+
+        private final Path directory;
+        private final MessageType schema;
+        private final List<Group> pending = new ArrayList<>();
+        private int sequence;
+        private Path file;
+        private ParquetWriter<Group> writer;
+        private int commits;
+
+        Part(Path directory, MessageType schema) {
+            this.directory = directory;
+            this.schema = schema;
+        }
+
+        void flush() throws IOException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            if (writer == null) {
+                Files.createDirectories(directory);
+                file = directory.resolve("part-" + stepExecutionId + "-" + sequence++ + ".parquet");
+                writer = parquetWriterService.openWriter(inProgressFile(), schema);
+                commits = 0;
+            }
+            for (Group row : pending) {
+                writer.write(row);
+            }
+            pending.clear();
+            if (++commits >= commitsPerFile) {
+                close();
+            }
+        }
+
+        void close() throws IOException {
+            pending.clear();
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } finally {
+                writer = null;
+            }
+            Files.move(inProgressFile(), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote Parquet file {}", file);
+        }
+
+        Path inProgressFile() {
+            return file != null ? LeiParquetWriter.inProgressFile(file) : null;
+        }
+    }
+}
@@ -2,51 +2,217 @@ package com.hashcodehub.gleifleispringbatchprocessor;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
-import org.springframework.batch.core.JobParametersInvalidException;
-import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
-import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
-import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
 
 /**
- * REST controller to manually trigger the LEI data processing.
+ * REST controller to manually trigger the LEI data processing. Jobs are launched through JobLaunchService: with the
+ * default ASYNC launch mode a trigger returns the execution id at once, to follow under /jobs/{executionId}.
  */
 @RestController
 @RequestMapping("/api/v1/lei")
 @Slf4j
 public class LeiProcessorController {
 
-    private final JobLauncher jobLauncher;
+    private final JobLaunchService jobLaunchService;
+    private final JobProgressService jobProgressService;
     private final Job leiProcessorJob;
+    private final Job goldenCopyJob;
+    private final Job failedLeiReplayJob;
+    private final RelationshipCache relationshipCache;
+    private final RateController rateController;
+    private final JobResumeService jobResumeService;
 
-    public LeiProcessorController(JobLauncher jobLauncher, Job leiProcessorJob) {
-        this.jobLauncher = jobLauncher;
+    public LeiProcessorController(JobLaunchService jobLaunchService, JobProgressService jobProgressService,
+                                  Job leiProcessorJob, Job goldenCopyJob, Job failedLeiReplayJob,
+                                  RelationshipCache relationshipCache, RateController rateController, JobResumeService jobResumeService) {
+        this.jobLaunchService = jobLaunchService;
+        this.jobProgressService = jobProgressService;
         this.leiProcessorJob = leiProcessorJob;
+        this.goldenCopyJob = goldenCopyJob;
+        this.failedLeiReplayJob = failedLeiReplayJob;
+        this.relationshipCache = relationshipCache;
+        this.rateController = rateController;
+        this.jobResumeService = jobResumeService;
     }
 
     /**
      * Endpoint to manually trigger the LEI data extraction process.
+     * @param fetchMode Optional fetch mode (SINGLE, BULK, CONCURRENT, INCREMENTAL or PARTITIONED); defaults to gleif.job.fetch-mode.
+     * @param concurrency Optional number of records in flight for CONCURRENT mode.
+     * @param partitions Optional number of partitions for PARTITIONED mode.
+     * @param requestsPerSecond Optional global request budget for this run.
      * @return A response entity with a status message.
      */
     @PostMapping("/process")
-    public ResponseEntity<String> processLeiRecords() {
+    public ResponseEntity<String> processLeiRecords(@RequestParam(name = "fetchMode", required = false) String fetchMode,
+                                                    @RequestParam(name = "concurrency", required = false) Long concurrency,
+                                                    @RequestParam(name = "partitions", required = false) Long partitions,
+                                                    @RequestParam(name = "requestsPerSecond", required = false) Double requestsPerSecond) {
         log.info("Endpoint triggered: Starting LEI processing job manually.");
+        JobParametersBuilder parametersBuilder = new JobParametersBuilder()
+                .addLong("run.id", System.currentTimeMillis());
+        if (fetchMode != null) {
+            parametersBuilder.addString(FetchModeDecider.FETCH_MODE_PARAMETER, fetchMode);
+        }
+        if (concurrency != null) {
+            parametersBuilder.addLong("concurrency", concurrency);
+        }
+        if (partitions != null) {
+            parametersBuilder.addLong(PartitionedBatchConfig.PARTITIONS_PARAMETER, partitions);
+        }
+        if (requestsPerSecond != null) {
+            parametersBuilder.addDouble(RequestBudgetListener.REQUESTS_PER_SECOND_PARAMETER, requestsPerSecond);
+        }
+        JobParameters jobParameters = parametersBuilder.toJobParameters();
+        try {
+            JobExecution execution = jobLaunchService.launch(leiProcessorJob, jobParameters);
+            return ResponseEntity.ok("LEI records processing initiated as execution " + execution.getId() + ": " + execution.getStatus());
+        } catch (JobExecutionAlreadyRunningException e) {
+            return ResponseEntity.status(409).body("Job not started: " + e.getMessage());
+        } catch (JobExecutionException e) {
+            log.error("Error starting manual job", e);
+            return ResponseEntity.status(500).body("Error starting job: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint to ingest a locally downloaded GLEIF golden-copy file instead of calling the API.
+     * @param file Path of the golden-copy file (.xml, .csv, or either inside a .zip).
+     * @param filter INPUT to keep only the LEIs of the input file (default), ALL to keep every record.
+     * @return A response entity with a status message.
+     */
+    @PostMapping("/golden-copy")
+    public ResponseEntity<String> ingestGoldenCopy(@RequestParam("file") String file,
+                                                   @RequestParam(name = "filter", defaultValue = "INPUT") String filter) {
+        log.info("Endpoint triggered: Starting golden-copy ingestion of {}", file);
         JobParameters jobParameters = new JobParametersBuilder()
                 .addLong("run.id", System.currentTimeMillis())
+                .addString(GoldenCopyBatchConfig.FILE_PARAMETER, file)
+                .addString(GoldenCopyBatchConfig.FILTER_PARAMETER, filter)
                 .toJobParameters();
         try {
-            jobLauncher.run(leiProcessorJob, jobParameters);
-            return ResponseEntity.ok("LEI records processing initiated.");
-        } catch (JobExecutionAlreadyRunningException | JobRestartException |
-                 JobInstanceAlreadyCompleteException | JobParametersInvalidException e) {
-            System.err.println("Error starting manual job: " + e.getMessage());
+            JobExecution execution = jobLaunchService.launch(goldenCopyJob, jobParameters);
+            return ResponseEntity.ok("Golden-copy ingestion initiated as execution " + execution.getId() + ": " + execution.getStatus());
+        } catch (JobExecutionAlreadyRunningException e) {
+            return ResponseEntity.status(409).body("Job not started: " + e.getMessage());
+        } catch (JobExecutionException e) {
+            log.error("Error starting golden-copy job", e);
+            return ResponseEntity.status(500).body("Error starting job: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint to retry the IDs of the failed records file, e.g. after a GLEIF outage, without another full run.
+     * Afterwards the failed records file only holds the IDs that failed again.
+     * @param fetchMode Optional fetch path, BULK (default) or CONCURRENT.
+     * @param concurrency Optional number of records in flight for CONCURRENT mode.
+     * @param requestsPerSecond Optional global request budget for this run.
+     * @return A response entity with a status message.
+     */
+    @PostMapping("/replay-failed")
+    public ResponseEntity<String> replayFailedRecords(@RequestParam(name = "fetchMode", defaultValue = "BULK") String fetchMode,
+                                                      @RequestParam(name = "concurrency", required = false) Long concurrency,
+                                                      @RequestParam(name = "requestsPerSecond", required = false) Double requestsPerSecond) {
+        log.info("Endpoint triggered: Starting replay of failed records.");
+        JobParametersBuilder parametersBuilder = new JobParametersBuilder()
+                .addLong("run.id", System.currentTimeMillis())
+                .addString(FetchModeDecider.FETCH_MODE_PARAMETER, fetchMode);
+        if (concurrency != null) {
+            parametersBuilder.addLong("concurrency", concurrency);
+        }
+        if (requestsPerSecond != null) {
+            parametersBuilder.addDouble(RequestBudgetListener.REQUESTS_PER_SECOND_PARAMETER, requestsPerSecond);
+        }
+        try {
+            JobExecution execution = jobLaunchService.launch(failedLeiReplayJob, parametersBuilder.toJobParameters());
+            return ResponseEntity.ok("Failed record replay initiated as execution " + execution.getId() + ": " + execution.getStatus());
+        } catch (JobExecutionAlreadyRunningException e) {
+            return ResponseEntity.status(409).body("Job not started: " + e.getMessage());
+        } catch (JobExecutionException e) {
+            log.error("Error starting replay job", e);
             return ResponseEntity.status(500).body("Error starting job: " + e.getMessage());
         }
     }
+
+    /**
+     * Endpoint to resume the last run of the LEI processing job if it failed or was stopped. The run continues
+     * after its last committed chunk with the original parameters, so already written LEIs are not fetched again.
+     * @return A response entity with a status message; 409 if a job is running.
+     */
+    @PostMapping("/resume")
+    public ResponseEntity<String> resumeFailedRun() {
+        log.info("Endpoint triggered: Resuming the last failed LEI processing job.");
+        try {
+            JobExecution execution = jobResumeService.resumeLastFailed(leiProcessorJob);
+            if (execution == null) {
+                return ResponseEntity.ok("No failed run to resume.");
+            }
+            return ResponseEntity.ok("Resumed job instance " + execution.getJobInstance().getInstanceId()
+                    + " as execution " + execution.getId() + ": " + execution.getStatus());
+        } catch (JobExecutionAlreadyRunningException e) {
+            return ResponseEntity.status(409).body("Job not resumed: " + e.getMessage());
+        } catch (JobExecutionException e) {
+            log.error("Error resuming job", e);
+            return ResponseEntity.status(500).body("Error resuming job: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint reporting the progress of a job execution: its counts, average throughput and, for the processing and
+     * replay jobs, the estimated completion time.
+     * @param executionId The execution id returned when the job was launched.
+     * @return the progress, or 404 if there is no such execution.
+     */
+    @GetMapping("/jobs/{executionId}")
+    public ResponseEntity<Map<String, Object>> jobProgress(@PathVariable("executionId") long executionId) {
+        Map<String, Object> progress = jobProgressService.snapshot(executionId);
+        return progress != null ? ResponseEntity.ok(progress) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Endpoint streaming the progress of a job execution as server-sent "progress" events, each with the throughput
+     * since the previous one, until the execution ends.
+     * @param executionId The execution id returned when the job was launched.
+     * @return the event stream, or 404 if there is no such execution.
+     */
+    @GetMapping(value = "/jobs/{executionId}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJobProgress(@PathVariable("executionId") long executionId) {
+        if (jobProgressService.find(executionId) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(jobProgressService.stream(executionId));
+    }
+
+    /**
+     * Endpoint exposing the relationship cache counters, for sizing the cache.
+     * @return hit, miss, eviction and size counters.
+     */
+    @GetMapping("/cache/relationships")
+    public ResponseEntity<Map<String, Object>> relationshipCacheStats() {
+        return ResponseEntity.ok(relationshipCache.statsSummary());
+    }
+
+    /**
+     * Endpoint exposing the rate controller state: the current rate, throttled responses and wait time per endpoint class.
+     * @return rate-control metrics.
+     */
+    @GetMapping("/rate-control")
+    public ResponseEntity<Map<String, Object>> rateControlMetrics() {
+        return ResponseEntity.ok(rateController.metrics());
+    }
 }
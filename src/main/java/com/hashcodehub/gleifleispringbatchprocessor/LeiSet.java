@@ -0,0 +1,58 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+/**
+ * A set of LEIs stored as packed primitives (see LeiIndex): about 24 bytes per LEI,
+ * against roughly 100 for a HashSet of Strings. Not thread-safe for writes; a set that is
+ * no longer modified can be read from any thread once safely published.
+ */
+public class LeiSet {
+
+    private final LeiIndex index;
+
+    public LeiSet() {
+        this.index = new LeiIndex();
+    }
+
+    /**
+     * @param expectedSize The number of LEIs the set is sized for before it has to grow.
+     */
+    public LeiSet(int expectedSize) {
+        this.index = new LeiIndex(expectedSize);
+    }
+
+    /**
+     * @param lei A well-formed LEI.
+     * @return true if the LEI was not in the set yet.
+     * @throws IllegalArgumentException if the value is not a well-formed LEI.
+     */
+    public boolean add(CharSequence lei) {
+        int before = index.size();
+        index.add(lei);
+        return index.size() > before;
+    }
+
+    public boolean add(Lei lei) {
+        int before = index.size();
+        index.add(lei);
+        return index.size() > before;
+    }
+
+    /**
+     * @return true if the LEI is in the set; false for anything that is not a well-formed LEI.
+     */
+    public boolean contains(CharSequence lei) {
+        return index.indexOf(lei) != LeiIndex.ABSENT;
+    }
+
+    public boolean contains(Lei lei) {
+        return index.indexOf(lei) != LeiIndex.ABSENT;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public boolean isEmpty() {
+        return index.size() == 0;
+    }
+}
@@ -0,0 +1,475 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntToLongFunction;
+
+/**
+ * In-memory corporate ownership graph built from the direct-parent and ultimate-parent
+ * relationships of every record LeiDataWriter writes, added once its chunk has committed.
+ * LEIs are interned to int node ids by a LeiIndex (24 bytes per node), and the parent links are
+ * int arrays indexed by node id. The child lists are derived from the direct parents as a CSR (compressed sparse row)
+ * structure, rebuilt on the first query after the graph changed.
+ * The graph is saved to a binary snapshot after every job and reloaded from it on startup.
+ */
+@Component
+@Slf4j
+public class OwnershipGraph implements JobExecutionListener, CommittedRecordListener {
+
+    public static final String DIRECT_PARENT = "direct-parent";
+    public static final String ULTIMATE_PARENT = "ultimate-parent";
+
+    private static final int NONE = LeiIndex.ABSENT;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int SNAPSHOT_MAGIC = 0x4C454947; // "LEIG"
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Serialises snapshot writers, which share one temporary file and only hold the read lock
+    private final Object snapshotLock = new Object();
+    private final Path snapshotPath;
+
+    // Node data, indexed by node id
+    private LeiIndex leis = new LeiIndex(INITIAL_CAPACITY);
+    private int[] directParents = new int[INITIAL_CAPACITY];
+    private int[] ultimateParents = new int[INITIAL_CAPACITY];
+
+    // Children of node n are children[childOffsets[n] .. childOffsets[n + 1])
+    private int[] childOffsets = new int[1];
+    private int[] children = new int[0];
+    private boolean childrenStale;
+
+    private volatile boolean changedSinceSnapshot;
+
+    public OwnershipGraph(@Value("${gleif.graph.snapshot-path:output/ownership-graph.bin}") Path snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    @PostConstruct
+    public void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        try {
+            load(snapshotPath);
+            log.info("Ownership graph loaded from {}: {} entities", snapshotPath, leis.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not load the ownership graph snapshot {}, starting empty: {}", snapshotPath, e.getMessage());
+            clear();
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (!changedSinceSnapshot) {
+            return;
+        }
+        try {
+            saveSnapshot();
+        } catch (IOException e) {
+            log.warn("Could not save the ownership graph snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    @Override
+    public void recordCommitted(GleifResponse leiData, Map<String, List<RelationshipRecord>> relationships) {
+        record(leiData.getData().getAttributes().getLei(), relationships);
+    }
+
+    /**
+     * Records a written LEI and, when its relationships were fetched, its parents.
+     * Records without fetched relationships (e.g. golden-copy loads) only add the node and leave known links alone.
+     *
+     * @param lei           The LEI of the written record.
+     * @param relationships The fetched relationships by type; may be null or empty.
+     */
+    public void record(String lei, Map<String, List<RelationshipRecord>> relationships) {
+        if (!Lei.isValid(lei)) {
+            return;
+        }
+        boolean withLinks = relationships != null && !relationships.isEmpty();
+        String directParent = withLinks ? parentOf(relationships.get(DIRECT_PARENT)) : null;
+        String ultimateParent = withLinks ? parentOf(relationships.get(ULTIMATE_PARENT)) : null;
+
+        lock.writeLock().lock();
+        try {
+            int node = intern(lei);
+            if (withLinks) {
+                int directParentNode = directParent != null ? intern(directParent) : NONE;
+                if (directParents[node] != directParentNode) {
+                    directParents[node] = directParentNode;
+                    childrenStale = true;
+                }
+                ultimateParents[node] = ultimateParent != null ? intern(ultimateParent) : NONE;
+            }
+            changedSinceSnapshot = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String lei) {
+        lock.readLock().lock();
+        try {
+            return find(lei) != NONE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return leis.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists the direct-parent chain of an LEI, nearest parent first.
+     *
+     * @param lei The LEI.
+     * @return the ancestors, or null if the LEI is not in the graph.
+     */
+    public List<String> ancestors(String lei) {
+        lock.readLock().lock();
+        try {
+            int node = find(lei);
+            if (node == NONE) {
+                return null;
+            }
+            List<String> ancestors = new ArrayList<>();
+            BitSet visited = new BitSet(leis.size());
+            visited.set(node);
+            // Stop at a cycle; reported data is not guaranteed to be acyclic
+            for (int parent = directParents[node]; parent != NONE && !visited.get(parent); parent = directParents[parent]) {
+                visited.set(parent);
+                ancestors.add(leiOf(parent));
+            }
+            return ancestors;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists the direct and indirect subsidiaries of an LEI, breadth first.
+     *
+     * @param lei      The LEI.
+     * @param maxDepth The number of levels to descend; 1 gives the direct children only.
+     * @param limit    The most descendants to list; the walk stops once it has found them.
+     * @return the descendants, or null if the LEI is not in the graph.
+     */
+    public List<String> descendants(String lei, int maxDepth, int limit) {
+        lockWithChildren();
+        try {
+            int node = find(lei);
+            if (node == NONE) {
+                return null;
+            }
+            return toLeis(collectDescendants(node, maxDepth, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Resolves the group an LEI belongs to: its ultimate parent (the reported one, or else the top of
+     * its direct-parent chain) and every entity below that parent.
+     *
+     * @param lei   The LEI.
+     * @param limit The most members to list, the ultimate parent included; the walk stops once it has found them.
+     * @return the group, or null if the LEI is not in the graph.
+     */
+    public OwnershipGroup group(String lei, int limit) {
+        lockWithChildren();
+        try {
+            int node = find(lei);
+            if (node == NONE) {
+                return null;
+            }
+            int root = ultimateParents[node] != NONE ? ultimateParents[node] : topOf(node);
+            List<String> members = new ArrayList<>();
+            members.add(leiOf(root));
+            if (limit > 1) {
+                members.addAll(toLeis(collectDescendants(root, Integer.MAX_VALUE, limit - 1)));
+            }
+            return new OwnershipGroup(leiOf(root), members);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the graph to the snapshot file, replacing the previous snapshot atomically.
+     */
+    public void saveSnapshot() throws IOException {
+        synchronized (snapshotLock) {
+            lock.readLock().lock();
+            try {
+                writeSnapshot();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        if (snapshotPath.getParent() != null) {
+            Files.createDirectories(snapshotPath.getParent());
+        }
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int size = leis.size();
+            writeFully(channel, ByteBuffer.allocate(12).putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(size).flip());
+            writeLongs(channel, leis::high, size);
+            writeLongs(channel, leis::low, size);
+            writeInts(channel, directParents, size);
+            writeInts(channel, ultimateParents, size);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changedSinceSnapshot = false;
+        log.info("Ownership graph snapshot saved to {}: {} entities", snapshotPath, leis.size());
+    }
+
+    private void load(Path file) throws IOException {
+        lock.writeLock().lock();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 12);
+            if (header.getInt() != SNAPSHOT_MAGIC || header.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not an ownership graph snapshot of version " + SNAPSHOT_VERSION);
+            }
+            int nodes = header.getInt();
+            int capacity = Math.max(INITIAL_CAPACITY, nodes);
+            LeiIndex loaded = new LeiIndex();
+            loaded.load(readLongs(channel, nodes), readLongs(channel, nodes), nodes);
+            leis = loaded;
+            directParents = Arrays.copyOf(readInts(channel, nodes), capacity);
+            ultimateParents = Arrays.copyOf(readInts(channel, nodes), capacity);
+            childrenStale = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clear() {
+        lock.writeLock().lock();
+        try {
+            leis = new LeiIndex(INITIAL_CAPACITY);
+            directParents = new int[INITIAL_CAPACITY];
+            ultimateParents = new int[INITIAL_CAPACITY];
+            childrenStale = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes the read lock, rebuilding the child lists first if the graph changed since the last query.
+     */
+    private void lockWithChildren() {
+        lock.readLock().lock();
+        if (!childrenStale) {
+            return;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            if (childrenStale) {
+                rebuildChildren();
+            }
+            lock.readLock().lock(); // Downgrade to the read lock
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuildChildren() {
+        int size = leis.size();
+        int[] offsets = new int[size + 1];
+        for (int node = 0; node < size; node++) {
+            if (directParents[node] != NONE) {
+                offsets[directParents[node] + 1]++;
+            }
+        }
+        for (int node = 0; node < size; node++) {
+            offsets[node + 1] += offsets[node];
+        }
+        int[] next = Arrays.copyOf(offsets, size);
+        int[] edges = new int[offsets[size]];
+        for (int node = 0; node < size; node++) {
+            if (directParents[node] != NONE) {
+                edges[next[directParents[node]]++] = node;
+            }
+        }
+        childOffsets = offsets;
+        children = edges;
+        childrenStale = false;
+    }
+
+    private int[] collectDescendants(int root, int maxDepth, int limit) {
+        BitSet visited = new BitSet(leis.size());
+        visited.set(root);
+        int[] queue = new int[16];
+        queue[0] = root;
+        int head = 0;
+        int tail = 1;
+        // Stop once the queue holds the root and limit descendants
+        long maxTail = (long) limit + 1;
+        for (int depth = 0; depth < maxDepth && head < tail && tail < maxTail; depth++) {
+            // Expand one level: the nodes queued while expanding the previous one
+            for (int levelEnd = tail; head < levelEnd && tail < maxTail; head++) {
+                int node = queue[head];
+                for (int edge = childOffsets[node]; edge < childOffsets[node + 1] && tail < maxTail; edge++) {
+                    int child = children[edge];
+                    if (!visited.get(child)) {
+                        visited.set(child);
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, queue.length * 2);
+                        }
+                        queue[tail++] = child;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOfRange(queue, 1, tail);
+    }
+
+    private int topOf(int node) {
+        BitSet visited = new BitSet(leis.size());
+        int top = node;
+        visited.set(top);
+        while (directParents[top] != NONE && !visited.get(directParents[top])) {
+            top = directParents[top];
+            visited.set(top);
+        }
+        return top;
+    }
+
+    private List<String> toLeis(int[] nodes) {
+        List<String> result = new ArrayList<>(nodes.length);
+        for (int node : nodes) {
+            result.add(leiOf(node));
+        }
+        return result;
+    }
+
+    private String parentOf(List<RelationshipRecord> records) {
+        if (records == null) {
+            return null;
+        }
+        for (RelationshipRecord record : records) {
+            if ("lei-records".equals(record.type()) && Lei.isValid(record.id())) {
+                return record.id();
+            }
+        }
+        return null;
+    }
+
+    private int intern(String lei) {
+        int before = leis.size();
+        int node = leis.add(lei);
+        if (leis.size() > before) {
+            if (node == directParents.length) {
+                directParents = Arrays.copyOf(directParents, node * 2);
+                ultimateParents = Arrays.copyOf(ultimateParents, node * 2);
+            }
+            directParents[node] = NONE;
+            ultimateParents[node] = NONE;
+            childrenStale = true;
+        }
+        return node;
+    }
+
+    private int find(String lei) {
+        return leis.indexOf(lei);
+    }
+
+    private String leiOf(int node) {
+        return leis.format(node);
+    }
+
+    private static void writeInts(FileChannel channel, int[] values, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int written = 0; written < count; ) {
+            int batch = Math.min(ints.capacity(), count - written);
+            ints.clear();
+            ints.put(values, written, batch);
+            buffer.clear().limit(batch * Integer.BYTES);
+            writeFully(channel, buffer);
+            written += batch;
+        }
+    }
+
+    private static void writeLongs(FileChannel channel, IntToLongFunction values, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        LongBuffer longs = buffer.asLongBuffer();
+        for (int written = 0; written < count; ) {
+            int batch = Math.min(longs.capacity(), count - written);
+            longs.clear();
+            for (int i = 0; i < batch; i++) {
+                longs.put(values.applyAsLong(written + i));
+            }
+            buffer.clear().limit(batch * Long.BYTES);
+            writeFully(channel, buffer);
+            written += batch;
+        }
+    }
+
+    private static long[] readLongs(FileChannel channel, int count) throws IOException {
+        long[] values = new long[count];
+        readFully(channel, count * Long.BYTES).asLongBuffer().get(values);
+        return values;
+    }
+
+    private static int[] readInts(FileChannel channel, int count) throws IOException {
+        int[] values = new int[count];
+        readFully(channel, count * Integer.BYTES).asIntBuffer().get(values);
+        return values;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Snapshot is truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * An ownership group: its ultimate parent and all members, the parent included.
+     */
+    public record OwnershipGroup(String ultimateParent, List<String> members) {
+    }
+}
@@ -0,0 +1,118 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST controller for ownership queries against the OwnershipGraph built from processed records.
+ * Lists stop at "limit" entries without walking the rest of the graph; "count" is the number listed and
+ * "truncated" tells whether there were more.
+ */
+@RestController
+@RequestMapping("/api/v1/lei/graph")
+@Slf4j
+public class OwnershipGraphController {
+
+    private final OwnershipGraph ownershipGraph;
+
+    public OwnershipGraphController(OwnershipGraph ownershipGraph) {
+        this.ownershipGraph = ownershipGraph;
+    }
+
+    /**
+     * Endpoint listing the direct-parent chain of an LEI, nearest parent first.
+     * @param lei The LEI.
+     * @return the ancestors, or 404 if the LEI is not in the graph.
+     */
+    @GetMapping("/{lei}/ancestors")
+    public ResponseEntity<Map<String, Object>> ancestors(@PathVariable("lei") String lei) {
+        List<String> ancestors = ownershipGraph.ancestors(lei);
+        if (ancestors == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(result(lei, ancestors, false));
+    }
+
+    /**
+     * Endpoint listing the subsidiaries of an LEI, breadth first.
+     * @param lei The LEI.
+     * @param maxDepth Optional number of levels to descend; unlimited by default.
+     * @param limit Maximum number of LEIs returned.
+     * @return the descendants, or 404 if the LEI is not in the graph.
+     */
+    @GetMapping("/{lei}/descendants")
+    public ResponseEntity<Map<String, Object>> descendants(@PathVariable("lei") String lei,
+                                                           @RequestParam(name = "maxDepth", defaultValue = "" + Integer.MAX_VALUE) int maxDepth,
+                                                           @RequestParam(name = "limit", defaultValue = "10000") int limit) {
+        List<String> descendants = ownershipGraph.descendants(lei, maxDepth, oneMore(limit));
+        if (descendants == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(limited(lei, descendants, limit));
+    }
+
+    /**
+     * Endpoint resolving the group of an LEI: its ultimate parent and every entity below it.
+     * @param lei The LEI.
+     * @param limit Maximum number of members returned.
+     * @return the group, or 404 if the LEI is not in the graph.
+     */
+    @GetMapping("/{lei}/group")
+    public ResponseEntity<Map<String, Object>> group(@PathVariable("lei") String lei,
+                                                     @RequestParam(name = "limit", defaultValue = "10000") int limit) {
+        OwnershipGraph.OwnershipGroup group = ownershipGraph.group(lei, oneMore(limit));
+        if (group == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> result = limited(lei, group.members(), limit);
+        result.put("ultimateParent", group.ultimateParent());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Endpoint writing the graph snapshot now instead of waiting for the end of the next job.
+     * @return the number of entities saved.
+     */
+    @PostMapping("/snapshot")
+    public ResponseEntity<String> snapshot() {
+        try {
+            ownershipGraph.saveSnapshot();
+            return ResponseEntity.ok("Ownership graph snapshot saved: " + ownershipGraph.size() + " entities.");
+        } catch (IOException e) {
+            log.warn("Could not save the ownership graph snapshot: {}", e.getMessage());
+            return ResponseEntity.status(500).body("Error saving snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The graph is asked for one entry more than the limit, which tells whether the list was cut.
+     */
+    private static int oneMore(int limit) {
+        return limit == Integer.MAX_VALUE ? limit : Math.max(0, limit) + 1;
+    }
+
+    private Map<String, Object> limited(String lei, List<String> leis, int limit) {
+        boolean truncated = leis.size() > limit;
+        return result(lei, truncated ? leis.subList(0, Math.max(0, limit)) : leis, truncated);
+    }
+
+    private Map<String, Object> result(String lei, List<String> leis, boolean truncated) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("lei", lei);
+        result.put("count", leis.size());
+        result.put("truncated", truncated);
+        result.put("leis", leis);
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Types;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName.BINARY;
+import static org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName.INT64;
+
+/**
+ * Service to handle the Parquet output format: the typed schemas of the LEI and relationship records,
+ * the conversion of records into rows, and the writer settings. It is the columnar counterpart of
+ * CsvWriterService; LeiParquetWriter manages the files themselves.
+ */
+@Service
+public class ParquetWriterService {
+
+    public static final MessageType LEI_RECORD_SCHEMA = Types.buildMessage()
+            .required(BINARY).as(LogicalTypeAnnotation.stringType()).named("id")
+            .required(BINARY).as(LogicalTypeAnnotation.stringType()).named("lei")
+            .optional(BINARY).as(LogicalTypeAnnotation.stringType()).named("legalName")
+            .optional(BINARY).as(LogicalTypeAnnotation.stringType()).named("registeredAs")
+            .optional(BINARY).as(LogicalTypeAnnotation.stringType()).named("jurisdiction")
+            .optional(BINARY).as(LogicalTypeAnnotation.stringType()).named("status")
+            .optional(INT64).as(timestamp()).named("initialRegistrationDate")
+            .optional(INT64).as(timestamp()).named("lastUpdateDate")
+            .optional(INT64).as(timestamp()).named("nextRenewalDate")
+            .optional(BINARY).as(LogicalTypeAnnotation.stringType()).named("managingLou")
+            .optionalList().optionalElement(BINARY).as(LogicalTypeAnnotation.stringType()).named("bic")
+            .named("lei_record");
+
+    public static final MessageType RELATIONSHIP_SCHEMA = Types.buildMessage()
+            .required(BINARY).as(LogicalTypeAnnotation.stringType()).named("lei")
+            .required(BINARY).as(LogicalTypeAnnotation.stringType()).named("relationshipType")
+            .optional(BINARY).as(LogicalTypeAnnotation.stringType()).named("id")
+            .optional(BINARY).as(LogicalTypeAnnotation.stringType()).named("type")
+            .optional(BINARY).as(LogicalTypeAnnotation.jsonType()).named("attributes")
+            .named("relationship_record");
+
+    // Low-cardinality columns, plus the relationship attributes, which mostly repeat the same few LOU documents
+    private static final List<String> DICTIONARY_COLUMNS = List.of(
+            "jurisdiction", "status", "managingLou", "relationshipType", "type", "attributes");
+
+    private final SimpleGroupFactory leiRecordGroups = new SimpleGroupFactory(LEI_RECORD_SCHEMA);
+    private final SimpleGroupFactory relationshipGroups = new SimpleGroupFactory(RELATIONSHIP_SCHEMA);
+
+    @Value("${gleif.output.parquet.dir:output/parquet}")
+    private String parquetDirectory;
+
+    @Value("${gleif.output.parquet.compression:SNAPPY}")
+    private CompressionCodecName compression;
+
+    public Path getLeiRecordsDirectory() {
+        return Path.of(parquetDirectory, "lei_records");
+    }
+
+    public Path getRelationshipRecordsDirectory() {
+        return Path.of(parquetDirectory, "relationship_records");
+    }
+
+    /**
+     * Opens a Parquet file for writing. There is no row count limit on its row groups, so the file is a single
+     * row group ending wherever LeiParquetWriter closes it, unless it outgrows the 128 MB row group size.
+     *
+     * @param file   The file to create; an existing file is overwritten.
+     * @param schema LEI_RECORD_SCHEMA or RELATIONSHIP_SCHEMA.
+     * @return the writer.
+     */
+    public ParquetWriter<Group> openWriter(Path file, MessageType schema) throws IOException {
+        ExampleParquetWriter.Builder builder = ExampleParquetWriter.builder(new LocalOutputFile(file))
+                .withConf(new PlainParquetConfiguration())
+                .withType(schema)
+                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                .withCompressionCodec(compression)
+                .withRowGroupRowCountLimit(Integer.MAX_VALUE) // The commit count closes the file, and so the row group
+                .withDictionaryEncoding(false);
+        for (String column : DICTIONARY_COLUMNS) {
+            if (schema.containsField(column)) {
+                builder.withDictionaryEncoding(column, true);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Converts the main LEI record data into a row of LEI_RECORD_SCHEMA.
+     *
+     * @param data The GleifResponse object to convert.
+     * @return the row.
+     */
+    public Group toLeiRecordRow(GleifResponse data) {
+        GleifResponse.Attributes attributes = data.getData().getAttributes();
+        GleifResponse.Entity entity = attributes.getEntity();
+        GleifResponse.Registration registration = attributes.getRegistration();
+
+        Group row = leiRecordGroups.newGroup();
+        row.append("id", data.getData().getId());
+        row.append("lei", attributes.getLei());
+        appendString(row, "legalName", entity.getLegalName() != null ? entity.getLegalName().getName() : null);
+        appendString(row, "registeredAs", entity.getRegisteredAs());
+        appendString(row, "jurisdiction", entity.getJurisdiction());
+        appendString(row, "status", entity.getStatus());
+        appendTimestamp(row, "initialRegistrationDate", registration.getInitialRegistrationDate());
+        appendTimestamp(row, "lastUpdateDate", registration.getLastUpdateDate());
+        appendTimestamp(row, "nextRenewalDate", registration.getNextRenewalDate());
+        appendString(row, "managingLou", registration.getManagingLou());
+        if (attributes.getBic() != null) {
+            Group bic = row.addGroup("bic");
+            for (String code : attributes.getBic()) {
+                Group element = bic.addGroup("list");
+                if (code != null) {
+                    element.append("element", code);
+                }
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Converts relationship data into rows of RELATIONSHIP_SCHEMA, one per related record.
+     * Unlike the CSV output, each row carries the LEI the relationship belongs to.
+     *
+     * @param lei               The LEI the relationships belong to.
+     * @param relationshipsData The Map of relationship type to its records.
+     * @return the rows.
+     */
+    public List<Group> toRelationshipRows(String lei, Map<String, List<RelationshipRecord>> relationshipsData) {
+        List<Group> rows = new ArrayList<>();
+        for (Map.Entry<String, List<RelationshipRecord>> entry : relationshipsData.entrySet()) {
+            for (RelationshipRecord record : entry.getValue()) {
+                Group row = relationshipGroups.newGroup();
+                row.append("lei", lei);
+                row.append("relationshipType", entry.getKey());
+                appendString(row, "id", record.id());
+                appendString(row, "type", record.type());
+                if (record.attributes().length > 0) {
+                    // The raw JSON bytes of the response go in as they are
+                    row.append("attributes", Binary.fromConstantByteArray(record.attributes()));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private void appendString(Group row, String field, String value) {
+        if (value != null && !value.isEmpty()) {
+            row.append(field, value);
+        }
+    }
+
+    private void appendTimestamp(Group row, String field, String value) {
+        if (value == null || value.isBlank()) {
+            return;
+        }
+        try {
+            row.append(field, OffsetDateTime.parse(value).toInstant().toEpochMilli());
+        } catch (DateTimeParseException e) {
+            // Leave the column null rather than failing the record on an unexpected date format
+        }
+    }
+
+    private static LogicalTypeAnnotation timestamp() {
+        return LogicalTypeAnnotation.timestampType(true, LogicalTypeAnnotation.TimeUnit.MILLIS);
+    }
+}
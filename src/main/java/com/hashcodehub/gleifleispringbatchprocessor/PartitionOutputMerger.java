@@ -0,0 +1,188 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Appends the per-partition output files to the configured CSV outputs, in partition order,
+ * and removes the partition directory afterwards.
+ * The first call only records the current size of both outputs and commits it; the merge itself
+ * runs on the second call. A restarted merge truncates the outputs back to those sizes first,
+ * so a merge that failed halfway is never appended twice.
+ * Related entity files (NORMALIZED relationship layout) are merged by entity key, so an entity that
+ * several partitions wrote still appears once in the run's output.
+ */
+@Slf4j
+public class PartitionOutputMerger implements Tasklet {
+
+    private static final String LEI_RECORDS_OFFSET = "merge.lei-records-offset";
+    private static final String RELATIONSHIP_RECORDS_OFFSET = "merge.relationship-records-offset";
+    private static final String RELATIONSHIP_EDGES_OFFSET = "merge.relationship-edges-offset";
+    private static final String RELATED_ENTITIES_OFFSET = "merge.related-entities-offset";
+
+    private final CsvWriterService csvWriterService;
+    private final Path partitionDirectory;
+
+    public PartitionOutputMerger(CsvWriterService csvWriterService, Path partitionDirectory) {
+        this.csvWriterService = csvWriterService;
+        this.partitionDirectory = partitionDirectory;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+        Path leiRecords = Paths.get(csvWriterService.getLeiRecordsPath());
+        Path relationshipRecords = Paths.get(csvWriterService.getRelationshipRecordsPath());
+        Path relationshipEdges = Paths.get(csvWriterService.getRelationshipEdgesPath());
+        Path relatedEntities = Paths.get(csvWriterService.getRelatedEntitiesPath());
+
+        if (!executionContext.containsKey(LEI_RECORDS_OFFSET)) {
+            executionContext.putLong(LEI_RECORDS_OFFSET, sizeOf(leiRecords));
+            executionContext.putLong(RELATIONSHIP_RECORDS_OFFSET, sizeOf(relationshipRecords));
+            executionContext.putLong(RELATIONSHIP_EDGES_OFFSET, sizeOf(relationshipEdges));
+            executionContext.putLong(RELATED_ENTITIES_OFFSET, sizeOf(relatedEntities));
+            return RepeatStatus.CONTINUABLE; // Commit the offsets before the outputs are touched
+        }
+
+        if (Files.isDirectory(partitionDirectory)) {
+            merge(leiRecords, LeiIdRangePartitioner.LEI_RECORDS_FILE_PREFIX, CsvWriterService.LEI_RECORD_HEADERS,
+                    executionContext.getLong(LEI_RECORDS_OFFSET), false);
+            merge(relationshipRecords, LeiIdRangePartitioner.RELATIONSHIP_RECORDS_FILE_PREFIX, CsvWriterService.RELATIONSHIP_HEADERS,
+                    executionContext.getLong(RELATIONSHIP_RECORDS_OFFSET), false);
+            merge(relationshipEdges, LeiIdRangePartitioner.RELATIONSHIP_EDGES_FILE_PREFIX, CsvWriterService.RELATIONSHIP_EDGE_HEADERS,
+                    executionContext.getLong(RELATIONSHIP_EDGES_OFFSET), false);
+            merge(relatedEntities, LeiIdRangePartitioner.RELATED_ENTITIES_FILE_PREFIX, CsvWriterService.RELATED_ENTITY_HEADERS,
+                    executionContext.getLong(RELATED_ENTITIES_OFFSET), true);
+            deletePartitionDirectory();
+        }
+        return RepeatStatus.FINISHED;
+    }
+
+    private long sizeOf(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    /**
+     * Appends the part files with the given prefix to the target, after cutting it back to the offset.
+     * With distinctKeys only the first row per key (the first column) is kept.
+     */
+    private void merge(Path target, String prefix, String[] headers, long offset, boolean distinctKeys) throws IOException {
+        byte[] header = csvWriterService.headerLine(headers).getBytes(StandardCharsets.UTF_8);
+        List<Path> parts = partFiles(prefix);
+        if (parts.isEmpty()) {
+            return; // CSV output is disabled; Parquet files are written straight to their dataset directories
+        }
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.truncate(offset);
+            out.position(offset);
+            if (offset == 0) {
+                writeFully(out, ByteBuffer.wrap(header));
+            }
+            if (distinctKeys) {
+                appendDistinct(parts, headers, out);
+                log.info("Merged {} partition files into {}", parts.size(), target);
+                return;
+            }
+            for (Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long position = startsWith(in, header) ? header.length : 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+        log.info("Merged {} partition files into {}", parts.size(), target);
+    }
+
+    /**
+     * Appends the first row per key of the part files. Rows are parsed and printed as CSV records, since quoted
+     * attributes may span several lines.
+     */
+    private void appendDistinct(List<Path> parts, String[] headers, FileChannel out) throws IOException {
+        Set<String> keys = new HashSet<>();
+        Writer writer = new BufferedWriter(Channels.newWriter(out, StandardCharsets.UTF_8));
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
+        for (Path part : parts) {
+            try (BufferedReader reader = Files.newBufferedReader(part, StandardCharsets.UTF_8);
+                 CSVParser parser = CSVFormat.DEFAULT.parse(reader)) {
+                for (CSVRecord record : parser) {
+                    if (!Arrays.equals(record.values(), headers) && keys.add(record.get(0))) {
+                        printer.printRecord(record);
+                    }
+                }
+            }
+        }
+        printer.flush(); // Not closed: that would close the output channel, which the caller owns
+    }
+
+    private List<Path> partFiles(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(partitionDirectory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix))
+                    .sorted(Comparator.comparingInt(file -> partIndex(file, prefix)))
+                    .toList();
+        }
+    }
+
+    private int partIndex(Path file, String prefix) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(prefix.length(), name.length() - ".csv".length()));
+    }
+
+    private boolean startsWith(FileChannel in, byte[] header) throws IOException {
+        if (in.size() < header.length) {
+            return false;
+        }
+        ByteBuffer start = ByteBuffer.allocate(header.length);
+        while (start.hasRemaining() && in.read(start, start.position()) > 0) {
+            // Read until the buffer is full
+        }
+        return Arrays.equals(start.array(), header);
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void deletePartitionDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(partitionDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(partitionDirectory);
+    }
+}
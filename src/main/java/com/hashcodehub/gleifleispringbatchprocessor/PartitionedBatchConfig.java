@@ -0,0 +1,253 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.integration.partition.BeanFactoryStepLocator;
+import org.springframework.batch.integration.partition.MessageChannelPartitionHandler;
+import org.springframework.batch.integration.partition.StepExecutionRequest;
+import org.springframework.batch.integration.partition.StepExecutionRequestHandler;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Spring Batch configuration for the PARTITIONED fetch mode.
+ * The input file is split into line ranges by LeiIdRangePartitioner, each range is processed by
+ * its own execution of the worker step into its own output files, and a final step merges those
+ * files into the regular CSV outputs.
+ * With gleif.partition.handler=LOCAL the partitions run on a local thread pool. With REMOTE they are
+ * sent as StepExecutionRequests over the "partitionRequests" channel, and the manager polls the job
+ * repository for their results. In this application that channel is a local stand-in that runs the
+ * requests in-process. A multi-node setup replaces it with a broker-backed channel, with workers that
+ * share the job repository and run a StepExecutionRequestHandler on the receiving end.
+ */
+@Configuration
+public class PartitionedBatchConfig {
+
+    public static final String PARTITIONS_PARAMETER = "partitions";
+    public static final String WORKER_STEP_NAME = "processLeiRecordsWorkerStep";
+
+    private final JobRepository jobRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadPoolTaskExecutor remoteWorkerExecutor;
+
+    @Value("${gleif.input.file-path}")
+    private Resource inputResource;
+
+    // Each job instance gets its own sub-directory, so a restart finds the files of its earlier attempt
+    @Value("${gleif.partition.output-dir:output/partitions}")
+    private String partitionOutputDir;
+
+    @Value("${gleif.partition.handler:LOCAL}")
+    private String partitionHandler;
+
+    @Value("${gleif.partition.workers:4}")
+    private int workers;
+
+    @Value("${gleif.partition.chunk-size:10}")
+    private int chunkSize;
+
+    public PartitionedBatchConfig(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                  @Value("${gleif.partition.workers:4}") int workers) {
+        this.jobRepository = jobRepository;
+        this.transactionManager = transactionManager;
+        // Worker threads of the local stand-in for remote workers; not exposed as a bean
+        this.remoteWorkerExecutor = new ThreadPoolTaskExecutor();
+        this.remoteWorkerExecutor.setCorePoolSize(workers);
+        this.remoteWorkerExecutor.setAllowCoreThreadTimeOut(true);
+        this.remoteWorkerExecutor.setThreadNamePrefix("lei-partition-worker-");
+        this.remoteWorkerExecutor.initialize();
+    }
+
+    /**
+     * Defines the partitioner, writing the partition output files below gleif.partition.output-dir/{job instance id}.
+     *
+     * @param jobInstanceId The id of the running job instance.
+     * @return the step-scoped partitioner.
+     */
+    @Bean
+    @StepScope
+    public LeiIdRangePartitioner leiIdRangePartitioner(@Value("#{stepExecution.jobExecution.jobInstance.instanceId}") Long jobInstanceId) {
+        return new LeiIdRangePartitioner(inputResource, partitionDirectory(jobInstanceId));
+    }
+
+    /**
+     * Defines the reader of one partition: it starts at the first line of the range and stops after its last line.
+     * Its IDs pass the input pre-flight checks, which read the lines of the earlier partitions first, so an LEI
+     * already in an earlier partition is dropped as a duplicate.
+     *
+     * @param firstLine The first data line of the partition, counted from zero after the header.
+     * @param lineCount The number of lines in the partition.
+     * @return the step-scoped reader.
+     */
+    @Bean
+    @StepScope
+    public ItemStreamReader<String> partitionLeiIdReader(LeiInputPreflight leiInputPreflight,
+                                                         @Value("#{stepExecutionContext['partition.first-line']}") Long firstLine,
+                                                           @Value("#{stepExecutionContext['partition.line-count']}") Long lineCount) {
+        return leiInputPreflight.filter(new FlatFileItemReaderBuilder<String>()
+                .name("partitionLeiIdReader")
+                .resource(inputResource)
+                .delimited().names("lei_id")
+                .linesToSkip(1) // The header row
+                .currentItemCount(firstLine.intValue()) // Item counts, and so restarts, are over the whole file
+                .maxItemCount(firstLine.intValue() + lineCount.intValue())
+                .fieldSetMapper(fieldSet -> fieldSet.readString("lei_id"))
+                .build());
+    }
+
+    /**
+     * Defines the worker step run once per partition. It is the per-record step over the partition's
+     * line range; LeiDataWriter writes to the partition's own output files.
+     *
+     * @return the Step bean.
+     */
+    @Bean
+    public Step processLeiRecordsWorkerStep(ItemStreamReader<String> partitionLeiIdReader, LeiDataProcessor leiDataProcessor,
+                                            ItemStreamWriter<Map<String, Object>> leiDataWriter, StepMetricsListener stepMetricsListener,
+                                            FailedLeiTrackerService failedLeiTrackerService) {
+        return new StepBuilder(WORKER_STEP_NAME, jobRepository)
+                .<String, Map<String, Object>>chunk(chunkSize, transactionManager)
+                .reader(partitionLeiIdReader)
+                .processor(leiDataProcessor)
+                .writer(leiDataWriter)
+                .stream(failedLeiTrackerService) // Flushes the failure log before each commit
+                .listener(stepMetricsListener)
+                .faultTolerant()
+                .skipLimit(100)
+                .skip(Exception.class)
+                .noSkip(ItemStreamException.class)
+                .build();
+    }
+
+    /**
+     * Defines the manager step, which splits the input into "partitions" partitions
+     * (job parameter, falling back to gleif.partition.grid-size) and hands them to the configured handler.
+     *
+     * @param gridSize The number of partitions.
+     * @return the Step bean.
+     */
+    @Bean
+    @JobScope
+    public Step processLeiRecordsPartitionedStep(LeiIdRangePartitioner leiIdRangePartitioner, Step processLeiRecordsWorkerStep,
+                                                 JobExplorer jobExplorer, SubscribableChannel partitionRequests,
+                                                 @Value("#{jobParameters['partitions'] ?: ${gleif.partition.grid-size:4}}") Integer gridSize) {
+        PartitionHandler handler = "REMOTE".equalsIgnoreCase(partitionHandler)
+                ? remotePartitionHandler(jobExplorer, partitionRequests, gridSize)
+                : localPartitionHandler(processLeiRecordsWorkerStep, gridSize);
+        return new StepBuilder("processLeiRecordsPartitionedStep", jobRepository)
+                .partitioner(WORKER_STEP_NAME, leiIdRangePartitioner)
+                .partitionHandler(handler)
+                .build();
+    }
+
+    /**
+     * Defines the channel partition requests are sent over in REMOTE mode. This local stand-in
+     * delivers each request on a worker thread of this JVM.
+     *
+     * @return the request channel.
+     */
+    @Bean
+    public SubscribableChannel partitionRequests() {
+        return new ExecutorChannel(remoteWorkerExecutor);
+    }
+
+    /**
+     * Defines the worker end of the partitionRequests channel: each StepExecutionRequest runs the
+     * worker step for its partition. Results are not replied; the manager polls the job repository for them.
+     *
+     * @return the MessageHandler subscribed to the request channel.
+     */
+    @Bean
+    @ServiceActivator(inputChannel = "partitionRequests")
+    public MessageHandler partitionRequestHandler(JobExplorer jobExplorer, BeanFactory beanFactory) {
+        BeanFactoryStepLocator stepLocator = new BeanFactoryStepLocator();
+        stepLocator.setBeanFactory(beanFactory);
+        StepExecutionRequestHandler requestHandler = new StepExecutionRequestHandler();
+        requestHandler.setJobExplorer(jobExplorer);
+        requestHandler.setStepLocator(stepLocator);
+        return message -> requestHandler.handle((StepExecutionRequest) message.getPayload());
+    }
+
+    /**
+     * Defines the step that merges the partition output files into the configured CSV outputs.
+     *
+     * @return the Step bean.
+     */
+    @Bean
+    public Step mergePartitionOutputsStep(PartitionOutputMerger partitionOutputMerger) {
+        return new StepBuilder("mergePartitionOutputsStep", jobRepository)
+                .tasklet(partitionOutputMerger, transactionManager)
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public PartitionOutputMerger partitionOutputMerger(CsvWriterService csvWriterService,
+                                                       @Value("#{stepExecution.jobExecution.jobInstance.instanceId}") Long jobInstanceId) {
+        return new PartitionOutputMerger(csvWriterService, partitionDirectory(jobInstanceId));
+    }
+
+    private PartitionHandler localPartitionHandler(Step workerStep, int gridSize) {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("lei-partition-");
+        taskExecutor.setConcurrencyLimit(workers);
+
+        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+        handler.setStep(workerStep);
+        handler.setTaskExecutor(taskExecutor);
+        handler.setGridSize(gridSize);
+        return handler;
+    }
+
+    private PartitionHandler remotePartitionHandler(JobExplorer jobExplorer, SubscribableChannel partitionRequests, int gridSize) {
+        MessagingTemplate messagingTemplate = new MessagingTemplate();
+        messagingTemplate.setDefaultChannel(partitionRequests);
+
+        MessageChannelPartitionHandler handler = new MessageChannelPartitionHandler();
+        handler.setStepName(WORKER_STEP_NAME);
+        handler.setGridSize(gridSize);
+        handler.setMessagingOperations(messagingTemplate);
+        handler.setJobExplorer(jobExplorer); // With a JobExplorer and no reply channel, results are polled from the job repository
+        handler.setPollInterval(1000);
+        try {
+            handler.afterPropertiesSet();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not configure the remote partition handler", e);
+        }
+        return handler;
+    }
+
+    private Path partitionDirectory(Long jobInstanceId) {
+        return Paths.get(partitionOutputDir, String.valueOf(jobInstanceId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        remoteWorkerExecutor.shutdown();
+    }
+}
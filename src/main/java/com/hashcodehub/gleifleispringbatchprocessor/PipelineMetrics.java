@@ -0,0 +1,156 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Micrometer meters of the fetch, parse and write stages, exported at /actuator/prometheus.
+ * <ul>
+ *   <li>gleif.http.requests: time from sending a GLEIF request until its response headers arrive, by endpoint class and status</li>
+ *   <li>gleif.rate.wait: time a request waited for the rate controller, by endpoint class, with a histogram</li>
+ *   <li>gleif.json.bind: time to read and bind a response body, by document type. Streamed bodies are read off the
+ *       connection while they are parsed, so for "record" and "collection" this includes the body transfer</li>
+ *   <li>gleif.output.write: time to write a chunk's rows, by output format</li>
+ *   <li>gleif.output.records: LEI records written; its rate is the records-per-second of the run</li>
+ *   <li>gleif.record.latency: time from starting to fetch a record until it is complete with its relationships,
+ *       or has failed, by outcome. In the bulk paths the time starts with the collection lookup of its batch</li>
+ * </ul>
+ * Retries and recoveries are counted by RetryMetricsListener, chunk and step throughput by StepMetricsListener.
+ * Timers with fixed tags are created once, so recording on the hot path is a map lookup and an atomic update.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String JSON_RECORD = "record";
+    public static final String JSON_COLLECTION = "collection";
+    public static final String JSON_RELATIONSHIPS = "relationships";
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_PARQUET = "parquet";
+    public static final String RECORD_COMPLETE = "COMPLETE";
+    public static final String RECORD_FAILED = "FAILED";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<GleifEndpoint, Timer> rateWaitTimers = new EnumMap<>(GleifEndpoint.class);
+    private final Map<String, Timer> bindTimers;
+    private final Map<String, Timer> writeTimers;
+    private final Counter recordsWritten;
+    private final Map<String, Timer> recordLatencyTimers;
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (GleifEndpoint endpoint : GleifEndpoint.values()) {
+            rateWaitTimers.put(endpoint, Timer.builder("gleif.rate.wait")
+                    .description("Time a GLEIF request waited for the rate controller")
+                    .tag("endpoint", endpoint.name())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        this.bindTimers = Map.of(
+                JSON_RECORD, bindTimer(JSON_RECORD),
+                JSON_COLLECTION, bindTimer(JSON_COLLECTION),
+                JSON_RELATIONSHIPS, bindTimer(JSON_RELATIONSHIPS));
+        this.writeTimers = Map.of(
+                FORMAT_CSV, writeTimer(FORMAT_CSV),
+                FORMAT_PARQUET, writeTimer(FORMAT_PARQUET));
+        this.recordsWritten = Counter.builder("gleif.output.records")
+                .description("LEI records written to the outputs")
+                .register(meterRegistry);
+        this.recordLatencyTimers = Map.of(
+                RECORD_COMPLETE, recordLatencyTimer(RECORD_COMPLETE),
+                RECORD_FAILED, recordLatencyTimer(RECORD_FAILED));
+    }
+
+    /**
+     * Records the latency of a GLEIF request.
+     *
+     * @param endpoint The endpoint class of the request.
+     * @param status The HTTP status, or 0 if no response was received.
+     * @param nanos The time from sending the request until its response headers arrived, or it failed.
+     */
+    public void recordHttpRequest(GleifEndpoint endpoint, int status, long nanos) {
+        // Status values are few, and the registry returns the existing Timer for a known tag combination
+        Timer.builder("gleif.http.requests")
+                .description("Latency of GLEIF requests until the response headers arrive")
+                .tag("endpoint", endpoint.name())
+                .tag("status", status > 0 ? String.valueOf(status) : "IO_ERROR")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time a request waited for a rate-controller permit.
+     *
+     * @param endpoint The endpoint class of the request.
+     * @param nanos The wait.
+     */
+    public void recordRateLimitWait(GleifEndpoint endpoint, long nanos) {
+        rateWaitTimers.get(endpoint).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time to read and bind a response body.
+     *
+     * @param document One of JSON_RECORD, JSON_COLLECTION or JSON_RELATIONSHIPS.
+     * @param nanos The bind time.
+     */
+    public void recordJsonBind(String document, long nanos) {
+        bindTimers.get(document).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time to write one chunk's rows to an output.
+     *
+     * @param format FORMAT_CSV or FORMAT_PARQUET.
+     * @param nanos The write time.
+     */
+    public void recordOutputWrite(String format, long nanos) {
+        writeTimers.get(format).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts written LEI records.
+     *
+     * @param count The number of records in the written chunk.
+     */
+    public void recordRecordsWritten(int count) {
+        recordsWritten.increment(count);
+    }
+
+    /**
+     * Records the time it took to fetch one LEI record and its relationships.
+     *
+     * @param outcome RECORD_COMPLETE or RECORD_FAILED.
+     * @param nanos The time from the start of the fetch until the record was complete or had failed.
+     */
+    public void recordRecordLatency(String outcome, long nanos) {
+        recordLatencyTimers.get(outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer bindTimer(String document) {
+        return Timer.builder("gleif.json.bind")
+                .description("Time to read and bind a GLEIF response body")
+                .tag("document", document)
+                .register(meterRegistry);
+    }
+
+    private Timer recordLatencyTimer(String outcome) {
+        return Timer.builder("gleif.record.latency")
+                .description("Time to fetch an LEI record and its relationships")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Timer writeTimer(String format) {
+        return Timer.builder("gleif.output.write")
+                .description("Time to write one chunk's rows to an output")
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+}
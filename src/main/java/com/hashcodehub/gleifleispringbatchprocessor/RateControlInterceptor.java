@@ -0,0 +1,46 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Applies the RateController to every GLEIF request. It is registered after ConditionalGetInterceptor,
+ * so responses served from the HTTP cache never take a permit.
+ * It also times the permit wait and the request itself, see PipelineMetrics.
+ */
+@Component
+public class RateControlInterceptor implements ClientHttpRequestInterceptor {
+
+    private final RateController rateController;
+    private final PipelineMetrics pipelineMetrics;
+
+    public RateControlInterceptor(RateController rateController, PipelineMetrics pipelineMetrics) {
+        this.rateController = rateController;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        GleifEndpoint endpoint = GleifEndpoint.of(request.getURI());
+        long start = System.nanoTime();
+        rateController.acquire(endpoint);
+        long sent = System.nanoTime();
+        pipelineMetrics.recordRateLimitWait(endpoint, sent - start);
+        ClientHttpResponse response;
+        try {
+            response = execution.execute(request, body);
+        } catch (IOException e) {
+            pipelineMetrics.recordHttpRequest(endpoint, 0, System.nanoTime() - sent);
+            throw e;
+        }
+        int status = response.getStatusCode().value();
+        pipelineMetrics.recordHttpRequest(endpoint, status, System.nanoTime() - sent);
+        rateController.onResponse(endpoint, status, response.getHeaders());
+        return response;
+    }
+}
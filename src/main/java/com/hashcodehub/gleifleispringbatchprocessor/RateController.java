@@ -0,0 +1,48 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.Map;
+
+/**
+ * Decides how fast requests may be sent to GLEIF. RateControlInterceptor calls acquire before
+ * every request that reaches the network and reports the outcome with onResponse, so an
+ * implementation can adapt its rate to what the server answers.
+ */
+public interface RateController {
+
+    /**
+     * Blocks until a request to the given endpoint class may be sent.
+     *
+     * @param endpoint The endpoint class of the request.
+     */
+    void acquire(GleifEndpoint endpoint);
+
+    /**
+     * Reports the response to a request that was sent after acquire.
+     *
+     * @param endpoint   The endpoint class of the request.
+     * @param statusCode The HTTP status code of the response.
+     * @param headers    The response headers.
+     */
+    void onResponse(GleifEndpoint endpoint, int statusCode, HttpHeaders headers);
+
+    /**
+     * Changes the global request ceiling shared by all endpoint classes.
+     *
+     * @param requestsPerSecond The number of requests allowed per second.
+     */
+    void setMaxRate(double requestsPerSecond);
+
+    /**
+     * @return the global request ceiling in requests per second.
+     */
+    double getMaxRate();
+
+    /**
+     * Summarises the current rates and wait times.
+     *
+     * @return metric values by name.
+     */
+    Map<String, Object> metrics();
+}
@@ -0,0 +1,90 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The content hashes of the related entities already written to the related entities file in this run.
+ * An entity is identified by a 128-bit murmur3 hash of its type, id and raw attribute bytes, so the
+ * same managing LOU referenced by many LEIs is written once, while a record whose content changed
+ * gets a new row. Not thread-safe; each LeiDataWriter holds its own index.
+ */
+public class RelatedEntityIndex {
+
+    private static final HashFunction CONTENT_HASH = Hashing.murmur3_128();
+
+    private final Set<HashCode> written = new HashSet<>();
+
+    /**
+     * Hashes a related record's content.
+     *
+     * @param record The related record.
+     * @return the hash; its hex form is the entity key in both normalized files.
+     */
+    public static HashCode hash(RelationshipRecord record) {
+        Hasher hasher = CONTENT_HASH.newHasher();
+        hasher.putString(record.type() != null ? record.type() : "", StandardCharsets.UTF_8).putByte((byte) 0);
+        hasher.putString(record.id() != null ? record.id() : "", StandardCharsets.UTF_8).putByte((byte) 0);
+        hasher.putBytes(record.attributes());
+        return hasher.hash();
+    }
+
+    public boolean contains(HashCode entityHash) {
+        return written.contains(entityHash);
+    }
+
+    public void addAll(Collection<HashCode> entityHashes) {
+        written.addAll(entityHashes);
+    }
+
+    /**
+     * Forgets entities whose rows were rolled back.
+     */
+    public void removeAll(Collection<HashCode> entityHashes) {
+        written.removeAll(entityHashes);
+    }
+
+    public int size() {
+        return written.size();
+    }
+
+    /**
+     * Re-reads the entity keys of a restarted run from the rows it already committed. The rows are parsed as CSV,
+     * since quoted attributes may span several lines.
+     *
+     * @param file The related entities CSV file.
+     * @param from The offset the run started writing at.
+     * @param to   The offset of the last committed chunk.
+     */
+    public void load(Path file, long from, long to) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(
+                     ByteStreams.limit(Channels.newInputStream(channel.position(from)), to - from), StandardCharsets.UTF_8));
+             CSVParser parser = CSVFormat.DEFAULT.parse(reader)) {
+            for (CSVRecord record : parser) {
+                String key = record.get(0);
+                if (!key.isEmpty() && !key.equals(CsvWriterService.RELATED_ENTITY_HEADERS[0])) {
+                    written.add(HashCode.fromString(key));
+                }
+            }
+        }
+    }
+}
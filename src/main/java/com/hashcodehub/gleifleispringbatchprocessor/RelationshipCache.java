@@ -0,0 +1,95 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * A bounded cache in front of GleifApiService.fetchRelationshipData, keyed by the related URL.
+ * Most LEIs share the same managing-lou and lei-issuer documents, so those are fetched once
+ * per TTL instead of once per record. Concurrent misses for the same URL wait on a single
+ * in-flight request, and failed fetches are never cached.
+ */
+@Component
+@Slf4j
+public class RelationshipCache {
+
+    private final GleifApiService gleifApiService;
+    private final Cache<String, List<RelationshipRecord>> cache;
+
+    public RelationshipCache(GleifApiService gleifApiService,
+                             @Value("${gleif.cache.relationships.max-size:10000}") long maxSize,
+                             @Value("${gleif.cache.relationships.ttl:6h}") Duration ttl) {
+        this.gleifApiService = gleifApiService;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the relationship data for a URL, fetching it on a miss.
+     *
+     * @param url The URL of the relationship endpoint.
+     * @return The records of the relationship document, or null if the fetch failed.
+     */
+    public List<RelationshipRecord> fetch(String url) {
+        return load(url, gleifApiService::fetchRelationshipData);
+    }
+
+    /**
+     * Returns the relationship data for a URL for a lookup outside the batch job, fetching it on a miss
+     * without recording a failure in the failure log.
+     *
+     * @param url The URL of the relationship endpoint.
+     * @return The records of the relationship document, or null if the fetch failed.
+     */
+    public List<RelationshipRecord> lookup(String url) {
+        return load(url, gleifApiService::lookupRelationshipData);
+    }
+
+    private List<RelationshipRecord> load(String url, Function<String, List<RelationshipRecord>> fetcher) {
+        try {
+            return cache.get(url, () -> {
+                List<RelationshipRecord> relationshipData = fetcher.apply(url);
+                if (relationshipData == null) {
+                    // Guava does not cache exceptions, so the next caller retries the URL
+                    throw new IllegalStateException("Relationship fetch failed for URL: " + url);
+                }
+                return relationshipData;
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            log.debug("Relationship cache load failed for {}: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Summarises the cache counters for sizing the cache.
+     *
+     * @return hit, miss, eviction and size counters by name.
+     */
+    public Map<String, Object> statsSummary() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("size", cache.size());
+        summary.put("hits", stats.hitCount());
+        summary.put("misses", stats.missCount());
+        summary.put("loadFailures", stats.loadExceptionCount());
+        summary.put("evictions", stats.evictionCount());
+        summary.put("hitRate", stats.hitRate());
+        return summary;
+    }
+}
@@ -0,0 +1,176 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Service that fetches all relationship links of an LEI record as one composed operation.
+ * The links are fetched in parallel, so a record costs the slowest call rather than the sum of all calls.
+ * Every call goes through the RelationshipCache and then GleifApiService, so shared documents are
+ * only fetched once and retries and the shared rate limiter apply as before.
+ */
+@Service
+@Slf4j
+public class RelationshipFetchService {
+
+    private final RelationshipCache relationshipCache;
+    private final HttpResponseStore httpResponseStore;
+    private final ExecutorService executor;
+
+    @Value("${gleif.api.base-url}")
+    private String baseUrl;
+
+    public RelationshipFetchService(RelationshipCache relationshipCache, HttpResponseStore httpResponseStore,
+                                    @Value("${gleif.api.relationship-fetch-threads:10}") int fetchThreads) {
+        this.relationshipCache = relationshipCache;
+        this.httpResponseStore = httpResponseStore;
+        this.executor = Executors.newFixedThreadPool(fetchThreads, new CustomizableThreadFactory("relationship-fetch-"));
+    }
+
+    /**
+     * Fetches all relationship data for a given LEI.
+     * As soon as one link fails, the links still queued or in flight are cancelled
+     * and the whole record is reported as failed.
+     *
+     * @param leiId The LEI ID the relationships belong to, used for logging.
+     * @param data  The data object of the LEI record.
+     * @return A map of relationship types to their records, or null if any fetch fails.
+     */
+    public Map<String, List<RelationshipRecord>> fetchAllRelationships(String leiId, GleifResponse.Data data) {
+        return fetchAll(leiId, data, relationshipCache::fetch);
+    }
+
+    /**
+     * Fetches all relationship data for a given LEI for a lookup outside the batch job, as
+     * {@link #fetchAllRelationships(String, GleifResponse.Data)} but without recording failures in the failure log.
+     *
+     * @param leiId The LEI ID the relationships belong to, used for logging.
+     * @param data  The data object of the LEI record.
+     * @return A map of relationship types to their records, or null if any fetch fails.
+     */
+    public Map<String, List<RelationshipRecord>> lookupAllRelationships(String leiId, GleifResponse.Data data) {
+        return fetchAll(leiId, data, relationshipCache::lookup);
+    }
+
+    private Map<String, List<RelationshipRecord>> fetchAll(String leiId, GleifResponse.Data data,
+                                                           Function<String, List<RelationshipRecord>> fetcher) {
+        Map<String, String> relatedUrls = relatedUrls(data);
+        Map<String, List<RelationshipRecord>> fetchedRelationships = new HashMap<>();
+        if (relatedUrls.isEmpty()) {
+            return fetchedRelationships;
+        }
+
+        CompletionService<Map.Entry<String, List<RelationshipRecord>>> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Map.Entry<String, List<RelationshipRecord>>>> futures = new ArrayList<>();
+        for (Map.Entry<String, String> entry : relatedUrls.entrySet()) {
+            String type = entry.getKey();
+            String relatedUrl = entry.getValue();
+            futures.add(completionService.submit(() ->
+                    new AbstractMap.SimpleImmutableEntry<>(type, fetcher.apply(relatedUrl))));
+        }
+
+        try {
+            // Take results in completion order so the first failure is seen as early as possible
+            for (int i = 0; i < futures.size(); i++) {
+                Map.Entry<String, List<RelationshipRecord>> result = completionService.take().get();
+                if (result.getValue() == null) {
+                    // If any relationship call fails, the entire record is invalid.
+                    log.warn("Relationship '{}' failed for LEI {}, cancelling the remaining calls", result.getKey(), leiId);
+                    cancelAll(futures);
+                    return null;
+                }
+                fetchedRelationships.put(result.getKey(), result.getValue());
+            }
+            return fetchedRelationships;
+        } catch (ExecutionException e) {
+            log.warn("Relationship fetch failed for LEI {}: {}", leiId, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            cancelAll(futures);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll(futures);
+            return null;
+        }
+    }
+
+    /**
+     * Collects the related URL of every relationship link that is present on the record.
+     * The managing-lou and lei-issuer links are per-LEI URLs that all return the document of the
+     * record's managing LOU, so they are replaced by the canonical URL of that LOU. That way every
+     * record managed by the same LOU shares one cache entry, and they are marked as reference documents in the
+     * HttpResponseStore, so later runs reuse them without a request while they are fresh.
+     *
+     * @param data The data object of the LEI record.
+     * @return A map of relationship type to related URL.
+     */
+    private Map<String, String> relatedUrls(GleifResponse.Data data) {
+        Map<String, String> relatedUrls = new LinkedHashMap<>();
+        GleifResponse.Relationships relationships = data.getRelationships();
+        if (relationships != null) {
+            Map<String, GleifResponse.RelationshipLink> relationshipLinks = new LinkedHashMap<>();
+            relationshipLinks.put("managing-lou", relationships.getManagingLou());
+            relationshipLinks.put("lei-issuer", relationships.getLeiIssuer());
+            relationshipLinks.put("direct-parent", relationships.getDirectParent());
+            relationshipLinks.put("ultimate-parent", relationships.getUltimateParent());
+            relationshipLinks.put("field-modifications", relationships.getFieldModifications());
+
+            for (Map.Entry<String, GleifResponse.RelationshipLink> entry : relationshipLinks.entrySet()) {
+                GleifResponse.RelationshipLink link = entry.getValue();
+                if (link != null && link.getLinks() != null && link.getLinks().getRelated() != null) {
+                    relatedUrls.put(entry.getKey(), link.getLinks().getRelated());
+                }
+            }
+
+            String managingLou = managingLou(data);
+            if (managingLou != null) {
+                relatedUrls.computeIfPresent("managing-lou", (type, url) -> baseUrl + "/lei-records/" + managingLou);
+                relatedUrls.computeIfPresent("lei-issuer", (type, url) -> baseUrl + "/lei-issuers/" + managingLou);
+                markReference(relatedUrls.get("managing-lou"));
+                markReference(relatedUrls.get("lei-issuer"));
+            }
+        }
+        return relatedUrls;
+    }
+
+    private void markReference(String url) {
+        if (url != null) {
+            httpResponseStore.markReference(url);
+        }
+    }
+
+    private String managingLou(GleifResponse.Data data) {
+        if (data.getAttributes() == null || data.getAttributes().getRegistration() == null) {
+            return null;
+        }
+        String managingLou = data.getAttributes().getRegistration().getManagingLou();
+        return managingLou == null || managingLou.isBlank() ? null : managingLou;
+    }
+
+    private void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,13 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+/**
+ * One record of a relationship document (managing-lou, lei-issuer, direct-parent, ...).
+ * Only the id and type are bound; the attributes object is kept as the raw JSON bytes of the
+ * response, so it can be written to the output without being parsed into a tree and re-serialized.
+ *
+ * @param id         The id of the related record.
+ * @param type       The JSON:API type of the related record.
+ * @param attributes The UTF-8 bytes of the record's attributes object, or an empty array if it has none.
+ */
+public record RelationshipRecord(String id, String type, byte[] attributes) {
+}
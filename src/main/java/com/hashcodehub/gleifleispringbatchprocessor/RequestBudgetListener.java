@@ -0,0 +1,41 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies the "requests.per.second" job parameter as the request ceiling of the RateController
+ * for the duration of a job, and restores the configured ceiling afterwards.
+ */
+@Component
+@Slf4j
+public class RequestBudgetListener implements JobExecutionListener {
+
+    public static final String REQUESTS_PER_SECOND_PARAMETER = "requests.per.second";
+
+    private final RateController rateController;
+    private double previousRequestsPerSecond;
+
+    public RequestBudgetListener(RateController rateController) {
+        this.rateController = rateController;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        previousRequestsPerSecond = rateController.getMaxRate();
+        Double budget = jobExecution.getJobParameters().getDouble(REQUESTS_PER_SECOND_PARAMETER);
+        if (budget != null && budget > 0) {
+            rateController.setMaxRate(budget);
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (rateController.getMaxRate() != previousRequestsPerSecond) {
+            log.info("Restoring GLEIF request budget after job {}", jobExecution.getId());
+            rateController.setMaxRate(previousRequestsPerSecond);
+        }
+    }
+}
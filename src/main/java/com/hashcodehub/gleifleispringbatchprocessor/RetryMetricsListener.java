@@ -0,0 +1,46 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+import org.springframework.retry.interceptor.MethodInvocationRetryCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the retries and recoveries of every @Retryable fetch method. Spring Retry applies RetryListener
+ * beans to all @Retryable methods that do not name their own listeners.
+ * <ul>
+ *   <li>gleif.fetch.retries: attempts that failed and were tried again, by method</li>
+ *   <li>gleif.fetch.recoveries: calls that ran out of attempts and went to their @Recover method, by method</li>
+ * </ul>
+ */
+@Component
+public class RetryMetricsListener implements RetryListener {
+
+    private final MeterRegistry meterRegistry;
+
+    public RetryMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+        String method = methodName(callback);
+        // Every failed attempt but a final one was retried
+        int retries = throwable == null ? context.getRetryCount() : context.getRetryCount() - 1;
+        if (retries > 0) {
+            meterRegistry.counter("gleif.fetch.retries", "method", method).increment(retries);
+        }
+        if (Boolean.TRUE.equals(context.getAttribute(RetryContext.RECOVERED))) {
+            meterRegistry.counter("gleif.fetch.recoveries", "method", method).increment();
+        }
+    }
+
+    private String methodName(RetryCallback<?, ?> callback) {
+        if (callback instanceof MethodInvocationRetryCallback<?, ?> invocationCallback) {
+            return invocationCallback.getInvocation().getMethod().getName();
+        }
+        return callback.getLabel() != null ? callback.getLabel() : "unknown";
+    }
+}
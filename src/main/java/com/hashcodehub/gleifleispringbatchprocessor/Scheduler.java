@@ -1,49 +1,82 @@
 package com.hashcodehub.gleifleispringbatchprocessor;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecutionException;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
-import org.springframework.batch.core.JobParametersInvalidException;
-import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
-import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
-import org.springframework.batch.core.repository.JobRestartException;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 /**
- * A scheduler to automatically trigger the batch job at regular intervals.
+ * A scheduler to automatically trigger the batch job at regular intervals, and once at startup when
+ * gleif.job.run-on-startup is set. Spring Boot's own startup launch is disabled (spring.batch.job.enabled=false),
+ * so every automatic run is launched through JobLaunchService, and a run that is still going when the next one is
+ * due is left alone.
  */
 @Component
-public class Scheduler {
+@Slf4j
+@Order(Ordered.LOWEST_PRECEDENCE) // After JobResumeService has dealt with interrupted runs
+public class Scheduler implements ApplicationRunner {
 
-    private final JobLauncher jobLauncher;
+    private final JobLaunchService jobLaunchService;
     private final Job leiProcessorJob;
+    private final JobResumeService jobResumeService;
 
     // Inject the cron expression from application.properties
     @Value("${gleif.job.cron}")
     private String jobCronExpression;
 
-    public Scheduler(JobLauncher jobLauncher, Job leiProcessorJob) {
-        this.jobLauncher = jobLauncher;
+    // Run the job once when the application starts, as Spring Boot's startup launch did
+    @Value("${gleif.job.run-on-startup:false}")
+    private boolean runOnStartup;
+
+    public Scheduler(JobLaunchService jobLaunchService, Job leiProcessorJob, JobResumeService jobResumeService) {
+        this.jobLaunchService = jobLaunchService;
         this.leiProcessorJob = leiProcessorJob;
+        this.jobResumeService = jobResumeService;
+    }
+
+    /**
+     * Runs the job at startup if gleif.job.run-on-startup is set. A run JobResumeService has just resumed
+     * is still going in ASYNC mode, so the startup run is then skipped.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (runOnStartup) {
+            launch("Startup");
+        }
     }
 
     /**
      * Triggers the batch job to run automatically based on a cron expression from configuration.
+     * With gleif.job.resume-failed set, a failed last run is resumed instead of starting a new one.
      */
     @Scheduled(cron = "${gleif.job.cron}")
     public void runJobAutomatically() {
-        System.out.println("Scheduler triggered: Starting LEI processing job.");
-        JobParameters jobParameters = new JobParametersBuilder()
-                .addLong("run.id", System.currentTimeMillis())
-                .toJobParameters();
+        launch("Scheduled");
+    }
+
+    private void launch(String trigger) {
+        log.info("{} run triggered: Starting LEI processing job.", trigger);
         try {
-            jobLauncher.run(leiProcessorJob, jobParameters);
-        } catch (JobExecutionAlreadyRunningException | JobRestartException |
-                 JobInstanceAlreadyCompleteException | JobParametersInvalidException e) {
-            System.err.println("Error running scheduled job: " + e.getMessage());
+            if (jobResumeService.isResumeFailed() && jobResumeService.resumeLastFailed(leiProcessorJob) != null) {
+                return;
+            }
+            JobParameters jobParameters = new JobParametersBuilder()
+                    .addLong("run.id", System.currentTimeMillis())
+                    .toJobParameters();
+            jobLaunchService.launch(leiProcessorJob, jobParameters);
+        } catch (JobExecutionAlreadyRunningException e) {
+            log.info("{} run skipped: {}", trigger, e.getMessage());
+        } catch (JobExecutionException e) {
+            log.error("Error running {} job: {}", trigger.toLowerCase(), e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
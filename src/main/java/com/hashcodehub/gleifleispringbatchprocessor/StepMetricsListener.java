@@ -0,0 +1,111 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterChunk;
+import org.springframework.batch.core.annotation.AfterChunkError;
+import org.springframework.batch.core.annotation.AfterStep;
+import org.springframework.batch.core.annotation.BeforeChunk;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Step and chunk listener (by annotation, so one instance serves both through StepBuilder.listener(Object))
+ * that measures where a step spends its time:
+ * <ul>
+ *   <li>gleif.batch.chunk: duration of each chunk, by step and outcome (COMMITTED or FAILED)</li>
+ *   <li>gleif.batch.step.items.per.second: live throughput of each running step execution, removed when it ends</li>
+ *   <li>gleif.batch.step.throughput: the final items per second of each finished step execution, by step</li>
+ * </ul>
+ * Items are what the step reads: single LEI IDs, or whole batches of IDs in the bulk steps.
+ * Records written per second, whatever the step, are the rate of gleif.output.records.
+ */
+@Component
+@Slf4j
+public class StepMetricsListener {
+
+    private static final String CHUNK_START = StepMetricsListener.class.getName() + ".start";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Long, Gauge> runningSteps = new ConcurrentHashMap<>();
+
+    public StepMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        Gauge gauge = Gauge.builder("gleif.batch.step.items.per.second", stepExecution, StepMetricsListener::itemsPerSecond)
+                .description("Items written per second by a running step execution")
+                .tag("step", stepExecution.getStepName())
+                .tag("execution", String.valueOf(stepExecution.getId()))
+                .register(meterRegistry);
+        runningSteps.put(stepExecution.getId(), gauge);
+    }
+
+    @AfterStep
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        Gauge gauge = runningSteps.remove(stepExecution.getId());
+        if (gauge != null) {
+            meterRegistry.remove(gauge); // One series per execution would otherwise pile up
+        }
+        double itemsPerSecond = itemsPerSecond(stepExecution);
+        DistributionSummary.builder("gleif.batch.step.throughput")
+                .description("Items written per second by a finished step execution")
+                .baseUnit("items/s")
+                .tag("step", stepExecution.getStepName())
+                .register(meterRegistry)
+                .record(itemsPerSecond);
+        log.info("Step {} wrote {} items at {} items/second", stepExecution.getStepName(), stepExecution.getWriteCount(),
+                String.format("%.1f", itemsPerSecond));
+        return null; // Leaves the exit status as it is
+    }
+
+    @BeforeChunk
+    public void beforeChunk(ChunkContext context) {
+        context.setAttribute(CHUNK_START, System.nanoTime());
+    }
+
+    @AfterChunk
+    public void afterChunk(ChunkContext context) {
+        recordChunk(context, "COMMITTED");
+    }
+
+    @AfterChunkError
+    public void afterChunkError(ChunkContext context) {
+        recordChunk(context, "FAILED");
+    }
+
+    private void recordChunk(ChunkContext context, String outcome) {
+        if (context.removeAttribute(CHUNK_START) instanceof Long start) {
+            Timer.builder("gleif.batch.chunk")
+                    .description("Duration of a chunk, from the first read to the commit or rollback")
+                    .tag("step", context.getStepContext().getStepName())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static double itemsPerSecond(StepExecution stepExecution) {
+        LocalDateTime start = stepExecution.getStartTime();
+        if (start == null) {
+            return 0;
+        }
+        LocalDateTime end = stepExecution.getEndTime() != null ? stepExecution.getEndTime() : LocalDateTime.now();
+        double seconds = Duration.between(start, end).toNanos() / 1e9;
+        return seconds > 0 ? stepExecution.getWriteCount() / seconds : 0;
+    }
+}
@@ -0,0 +1,115 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Moves the high-water mark for the next incremental sync once a job completes successfully.
+ * The mark is the lastUpdateDate up to which every record is known to be synced:
+ * <ul>
+ *   <li>after an API run, its start time less gleif.sync.publication-lag, since GLEIF publishes an update some time
+ *       after its lastUpdateDate and a record published after the run may carry an earlier date</li>
+ *   <li>after a golden-copy load, at most the newest lastUpdateDate in the file, which is a snapshot of its own
+ *       publication time; every committed record is reported through {@link #observe(GleifResponse)}</li>
+ * </ul>
+ * A run that logged failed LEIs or skipped items keeps the previous mark, so the next incremental sync fetches the
+ * missed records again if they changed, and the failed record replay fetches them in any case. So does a restarted
+ * run, whose earlier attempts' failures are not counted here.
+ */
+@Component
+@Slf4j
+public class SyncWatermarkListener implements JobExecutionListener, CommittedRecordListener {
+
+    private final SyncWatermarkRepository syncWatermarkRepository;
+    private final FailedLeiTrackerService failedLeiTrackerService;
+    private final JobExplorer jobExplorer;
+    private final AtomicReference<OffsetDateTime> maxLastUpdateDate = new AtomicReference<>();
+    private volatile long failedLeisAtStart;
+
+    // How long GLEIF may take to publish an update after its lastUpdateDate
+    @Value("${gleif.sync.publication-lag:8h}")
+    private Duration publicationLag;
+
+    public SyncWatermarkListener(SyncWatermarkRepository syncWatermarkRepository, FailedLeiTrackerService failedLeiTrackerService,
+                                 JobExplorer jobExplorer) {
+        this.syncWatermarkRepository = syncWatermarkRepository;
+        this.failedLeiTrackerService = failedLeiTrackerService;
+        this.jobExplorer = jobExplorer;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        maxLastUpdateDate.set(null);
+        failedLeisAtStart = failedLeiTrackerService.getFailedLeiCount();
+    }
+
+    @Override
+    public void recordCommitted(GleifResponse leiData, Map<String, List<RelationshipRecord>> relationships) {
+        observe(leiData);
+    }
+
+    /**
+     * Records the lastUpdateDate of a committed record.
+     *
+     * @param leiData The record that was written.
+     */
+    public void observe(GleifResponse leiData) {
+        if (leiData.getData() == null || leiData.getData().getAttributes() == null
+                || leiData.getData().getAttributes().getRegistration() == null) {
+            return;
+        }
+        String lastUpdateDate = leiData.getData().getAttributes().getRegistration().getLastUpdateDate();
+        if (lastUpdateDate == null) {
+            return;
+        }
+        try {
+            OffsetDateTime updated = OffsetDateTime.parse(lastUpdateDate);
+            maxLastUpdateDate.accumulateAndGet(updated, (current, next) -> current == null || next.isAfter(current) ? next : current);
+        } catch (DateTimeParseException e) {
+            log.debug("Ignoring unparseable lastUpdateDate {}", lastUpdateDate);
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            return;
+        }
+        OffsetDateTime runTime = jobExecution.getStartTime() != null
+                ? jobExecution.getStartTime().atZone(ZoneId.systemDefault()).toOffsetDateTime()
+                : OffsetDateTime.now(ZoneOffset.UTC);
+
+        long failed = failedLeiTrackerService.getFailedLeiCount() - failedLeisAtStart;
+        long skipped = jobExecution.getStepExecutions().stream().mapToLong(StepExecution::getSkipCount).sum();
+        boolean restarted = jobExplorer.getJobExecutions(jobExecution.getJobInstance()).size() > 1;
+        if (failed > 0 || skipped > 0 || restarted) {
+            syncWatermarkRepository.save(SyncWatermarkRepository.LEI_RECORDS, null, runTime); // Keeps the current mark
+            log.warn("Sync watermark kept: run at {} logged {} failed LEIs and skipped {} items{}", runTime, failed, skipped,
+                    restarted ? " over several attempts" : "");
+            return;
+        }
+
+        OffsetDateTime syncedUpTo = runTime.minus(publicationLag);
+        if (jobExecution.getJobParameters().getString(GoldenCopyBatchConfig.FILE_PARAMETER) != null) {
+            OffsetDateTime newest = maxLastUpdateDate.get();
+            syncedUpTo = newest != null && newest.isBefore(syncedUpTo) ? newest : syncedUpTo;
+        }
+        syncWatermarkRepository.save(SyncWatermarkRepository.LEI_RECORDS, syncedUpTo, runTime);
+        log.info("Sync watermark saved: run at {} synced records up to lastUpdateDate {}", runTime, syncedUpTo);
+    }
+}
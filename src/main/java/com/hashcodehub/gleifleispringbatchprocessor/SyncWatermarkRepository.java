@@ -0,0 +1,58 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Stores the sync high-water mark in the LEI_SYNC_WATERMARK side table, next to the
+ * Spring Batch metadata: the Registration.lastUpdateDate up to which every record is known to be synced
+ * (see SyncWatermarkListener) and the time of the last successful run.
+ */
+@Repository
+public class SyncWatermarkRepository {
+
+    /** The single watermark shared by every job that writes LEI records. */
+    public static final String LEI_RECORDS = "lei-records";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SyncWatermarkRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param syncName The watermark name.
+     * @return the lastUpdateDate up to which records are synced, if a successful run recorded one.
+     */
+    public Optional<OffsetDateTime> findMaxLastUpdateDate(String syncName) {
+        List<OffsetDateTime> values = jdbcTemplate.query(
+                "SELECT MAX_LAST_UPDATE_DATE FROM LEI_SYNC_WATERMARK WHERE SYNC_NAME = ?",
+                (rs, rowNum) -> rs.getObject(1, OffsetDateTime.class), syncName);
+        return values.stream().filter(value -> value != null).findFirst();
+    }
+
+    /**
+     * Records a successful run. The stored lastUpdateDate never moves backwards.
+     *
+     * @param syncName          The watermark name.
+     * @param maxLastUpdateDate The lastUpdateDate up to which the run synced every record, or null to keep the current one.
+     * @param runTime           The start time of the run.
+     */
+    public void save(String syncName, OffsetDateTime maxLastUpdateDate, OffsetDateTime runTime) {
+        OffsetDateTime current = findMaxLastUpdateDate(syncName).orElse(null);
+        OffsetDateTime newMax = current == null || (maxLastUpdateDate != null && maxLastUpdateDate.isAfter(current))
+                ? maxLastUpdateDate : current;
+        int updated = jdbcTemplate.update(
+                "UPDATE LEI_SYNC_WATERMARK SET MAX_LAST_UPDATE_DATE = ?, LAST_RUN_TIME = ? WHERE SYNC_NAME = ?",
+                newMax, runTime, syncName);
+        if (updated == 0) {
+            jdbcTemplate.update(
+                    "INSERT INTO LEI_SYNC_WATERMARK (SYNC_NAME, MAX_LAST_UPDATE_DATE, LAST_RUN_TIME) VALUES (?, ?, ?)",
+                    syncName, newMax, runTime);
+        }
+    }
+}
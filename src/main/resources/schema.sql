@@ -0,0 +1,7 @@
+-- High-water mark of the last successful sync, used by the INCREMENTAL fetch mode: MAX_LAST_UPDATE_DATE is the
+-- lastUpdateDate up to which every record is known to be synced
+CREATE TABLE IF NOT EXISTS LEI_SYNC_WATERMARK (
+    SYNC_NAME VARCHAR(100) NOT NULL PRIMARY KEY,
+    MAX_LAST_UPDATE_DATE TIMESTAMP WITH TIME ZONE,
+    LAST_RUN_TIME TIMESTAMP WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,88 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CsvWriterService row formatting, one LEI per operation, so the scores are LEIs per second: the LEI record row,
+ * its relationship rows in the EMBEDDED layout, and its edge and related entity rows in the NORMALIZED layout.
+ * Rows go to in-memory buffers, the way LeiDataWriter formats a chunk before its single write per file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvWriterBenchmark {
+
+    private final CsvWriterService csvWriterService = new CsvWriterService();
+    private final StringBuilder leiRows = new StringBuilder();
+    private final ByteArrayOutputStream relationshipRows = new ByteArrayOutputStream();
+    private CSVPrinter leiPrinter;
+    private GleifResponse leiRecord;
+    private Map<String, List<RelationshipRecord>> relationships;
+
+    @Setup
+    public void setUp() throws IOException {
+        GleifPayloads payloads = new GleifPayloads();
+        GleifResponseParser parser = new GleifResponseParser(new ObjectMapper(), new PipelineMetrics(new SimpleMeterRegistry()));
+        String lei = GleifPayloads.syntheticLei(1);
+        leiRecord = parser.parseRecord(new ByteArrayInputStream(payloads.leiRecord(lei)));
+        relationships = new LinkedHashMap<>();
+        relationships.put("managing-lou", parser.parseRelationships(payloads.leiRecord(GleifPayloads.MANAGING_LOU)));
+        relationships.put("lei-issuer", parser.parseRelationships(payloads.leiIssuer()));
+        relationships.put("direct-parent", parser.parseRelationships(payloads.leiRecord(GleifPayloads.PARENT)));
+        relationships.put("ultimate-parent", parser.parseRelationships(payloads.leiRecord(GleifPayloads.PARENT)));
+        relationships.put("field-modifications", parser.parseRelationships(payloads.fieldModifications(lei)));
+        leiPrinter = new CSVPrinter(leiRows, CSVFormat.DEFAULT);
+    }
+
+    @Benchmark
+    public int leiRecordRow() throws IOException {
+        leiRows.setLength(0);
+        csvWriterService.printLeiRecord(leiRecord, leiPrinter);
+        return leiRows.length();
+    }
+
+    @Benchmark
+    public int embeddedRelationshipRows() throws IOException {
+        relationshipRows.reset();
+        csvWriterService.printRelationships(relationships, relationshipRows);
+        return relationshipRows.size();
+    }
+
+    @Benchmark
+    public int normalizedRelationshipRows() throws IOException {
+        relationshipRows.reset();
+        String lei = leiRecord.getData().getAttributes().getLei();
+        for (Map.Entry<String, List<RelationshipRecord>> entry : relationships.entrySet()) {
+            for (RelationshipRecord record : entry.getValue()) {
+                String entityKey = RelatedEntityIndex.hash(record).toString();
+                csvWriterService.printRelationshipEdge(lei, entry.getKey(), record, entityKey, relationshipRows);
+                csvWriterService.printRelatedEntity(entityKey, record, relationshipRows);
+            }
+        }
+        return relationshipRows.size();
+    }
+}
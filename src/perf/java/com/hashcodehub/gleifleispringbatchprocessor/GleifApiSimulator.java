@@ -0,0 +1,235 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * An embeddable GLEIF API on the JDK HTTP server, for measuring the pipeline without the real service.
+ * It serves /lei-records/{lei}, filtered /lei-records collection queries, the relationship URLs and /lei-issuers/{id}
+ * from a GleifCorpus, on http://127.0.0.1:{port}/api/v1. Each request in turn:
+ * <ol>
+ *   <li>waits for a latency drawn from the configured distribution</li>
+ *   <li>is answered 429 with Retry-After when the rate limit of the current window is used up; every response carries
+ *       X-RateLimit-Limit, X-RateLimit-Remaining and X-RateLimit-Reset while a limit is set</li>
+ *   <li>is answered 429, with probability throttleRate, or 503, with probability serverErrorRate</li>
+ *   <li>gets its document, or a JSON:API 404</li>
+ * </ol>
+ * Every request is counted by endpoint and status, so the client's request efficiency can be read off afterwards.
+ */
+final class GleifApiSimulator implements AutoCloseable {
+
+    private static final String JSON_API = "application/vnd.api+json";
+    private static final byte[] NOT_FOUND = error(404, "Not Found");
+    private static final byte[] TOO_MANY_REQUESTS = error(429, "Too Many Requests");
+    private static final byte[] SERVICE_UNAVAILABLE = error(503, "Service Unavailable");
+
+    /**
+     * How the simulator behaves.
+     *
+     * @param latency         The response latency distribution.
+     * @param throttleRate    Probability of answering a request 429 regardless of the rate limit.
+     * @param serverErrorRate Probability of answering a request 503.
+     * @param rateLimit       Requests allowed per rate-limit window, or 0 for no limit. GLEIF allows 60 per minute.
+     * @param rateLimitWindow The length of a rate-limit window.
+     */
+    record Settings(Latency latency, double throttleRate, double serverErrorRate, int rateLimit, Duration rateLimitWindow) {
+    }
+
+    /**
+     * A response latency distribution, parsed from a spec:
+     * "none", "fixed:{ms}", "uniform:{min ms}-{max ms}" or "lognormal:{median ms}:{p99 ms}".
+     */
+    interface Latency {
+
+        long sampleMillis();
+
+        static Latency parse(String spec) {
+            String[] parts = spec.trim().toLowerCase().split(":");
+            switch (parts[0]) {
+                case "none" -> {
+                    return () -> 0;
+                }
+                case "fixed" -> {
+                    long millis = Long.parseLong(parts[1]);
+                    return () -> millis;
+                }
+                case "uniform" -> {
+                    String[] bounds = parts[1].split("-");
+                    long min = Long.parseLong(bounds[0]);
+                    long max = Long.parseLong(bounds[1]);
+                    return () -> ThreadLocalRandom.current().nextLong(min, max + 1);
+                }
+                case "lognormal" -> {
+                    // The median is e^mu, and the 99th percentile lies 2.326 standard deviations above it
+                    double mu = Math.log(Double.parseDouble(parts[1]));
+                    double sigma = (Math.log(Double.parseDouble(parts[2])) - mu) / 2.326;
+                    return () -> Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+                }
+                default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            }
+        }
+    }
+
+    private final Settings settings;
+    private final GleifCorpus corpus;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    private long windowStart;
+    private int windowRequests;
+
+    /**
+     * Starts a simulator on a free local port.
+     *
+     * @param settings The latency, fault and rate-limit behaviour.
+     * @param corpus   Builds the corpus from the simulator's base URL, so links in the documents point back to it.
+     */
+    GleifApiSimulator(Settings settings, Function<String, GleifCorpus> corpus) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.corpus = corpus.apply(getBaseUrl());
+        // Responses sleep through their latency, so every request in flight needs its own thread
+        this.executor = Executors.newCachedThreadPool(new CustomizableThreadFactory("gleif-simulator-"));
+        server.setExecutor(executor);
+        server.createContext("/api/v1", this::handle);
+        windowStart = System.nanoTime();
+        server.start();
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1";
+    }
+
+    GleifCorpus getCorpus() {
+        return corpus;
+    }
+
+    /**
+     * Returns the requests received so far, by "{endpoint} {status}", e.g. "lei-records 200" or "relationships 429".
+     */
+    Map<String, Long> requestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((key, count) -> counts.put(key, count.sum()));
+        return counts;
+    }
+
+    long totalRequests() {
+        return requests.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getRawPath().substring("/api/v1".length());
+            String endpoint = endpoint(path);
+            long latency = settings.latency().sampleMillis();
+            if (latency > 0) {
+                TimeUnit.MILLISECONDS.sleep(latency);
+            }
+
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", JSON_API);
+            if (!withinRateLimit(headers)) {
+                respond(exchange, endpoint, 429, TOO_MANY_REQUESTS);
+                return;
+            }
+            double fault = ThreadLocalRandom.current().nextDouble();
+            if (fault < settings.throttleRate()) {
+                headers.set("Retry-After", "1");
+                respond(exchange, endpoint, 429, TOO_MANY_REQUESTS);
+                return;
+            }
+            if (fault < settings.throttleRate() + settings.serverErrorRate()) {
+                respond(exchange, endpoint, 503, SERVICE_UNAVAILABLE);
+                return;
+            }
+            byte[] body = corpus.respond(path, exchange.getRequestURI().getRawQuery());
+            respond(exchange, endpoint, body != null ? 200 : 404, body != null ? body : NOT_FOUND);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Counts the request against the current window and sets the rate-limit headers.
+     * When the window is used up, also sets Retry-After to the seconds until it resets.
+     *
+     * @return false if the request is over the limit.
+     */
+    private boolean withinRateLimit(Headers headers) {
+        if (settings.rateLimit() <= 0) {
+            return true;
+        }
+        long windowNanos = settings.rateLimitWindow().toNanos();
+        int remaining;
+        long resetNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - windowStart >= windowNanos) {
+                windowStart = now;
+                windowRequests = 0;
+            }
+            remaining = settings.rateLimit() - ++windowRequests;
+            resetNanos = windowStart + windowNanos - now;
+        }
+        long resetSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(resetNanos + 999_999_999L));
+        headers.set("X-RateLimit-Limit", String.valueOf(settings.rateLimit()));
+        headers.set("X-RateLimit-Remaining", String.valueOf(Math.max(0, remaining)));
+        headers.set("X-RateLimit-Reset", String.valueOf(resetSeconds));
+        if (remaining < 0) {
+            headers.set("Retry-After", String.valueOf(resetSeconds));
+            return false;
+        }
+        return true;
+    }
+
+    private void respond(HttpExchange exchange, String endpoint, int status, byte[] body) throws IOException {
+        requests.computeIfAbsent(endpoint + " " + status, key -> new LongAdder()).increment();
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Classifies a path as "lei-records" (single records), "collection" (filtered queries), "lei-issuers" or
+     * "relationships" (everything below a record).
+     */
+    private static String endpoint(String path) {
+        if (path.equals("/lei-records")) {
+            return "collection";
+        }
+        if (path.startsWith("/lei-issuers/")) {
+            return "lei-issuers";
+        }
+        return path.indexOf('/', "/lei-records/".length()) > 0 ? "relationships" : "lei-records";
+    }
+
+    private static byte[] error(int status, String title) {
+        return ("{\"errors\":[{\"status\":\"" + status + "\",\"title\":\"" + title + "\"}]}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The documents behind a simulated GLEIF API: GleifPayloads generates them, RecordedCorpus reads saved responses.
+ */
+interface GleifCorpus {
+
+    String GLEIF_BASE_URL = "https://api.gleif.org/api/v1";
+
+    /**
+     * Returns the response body for a request.
+     *
+     * @param path     The request path below /api/v1, e.g. "/lei-records/5299.../direct-parent".
+     * @param rawQuery The still-encoded query string, or null.
+     * @return the JSON document, or null if the API would answer 404.
+     */
+    byte[] respond(String path, String rawQuery);
+
+    /**
+     * LEIs that the corpus can serve, for building an input file.
+     *
+     * @param count The number of LEIs wanted.
+     * @return up to count LEIs.
+     */
+    List<String> leis(int count);
+
+    /**
+     * Reads the IDs of a filter[lei]=A,B,... query, in either encoding of the brackets and the comma.
+     *
+     * @param rawQuery The still-encoded query string, or null.
+     * @return the IDs, or null if the query has no LEI filter.
+     */
+    static List<String> leiFilter(String rawQuery) {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            if (name.equals("filter[lei]") || name.equalsIgnoreCase("filter%5Blei%5D")) {
+                List<String> leis = new ArrayList<>();
+                for (String lei : parameter.substring(separator + 1).split("%2C|%2c|,")) {
+                    if (!lei.isEmpty()) {
+                        leis.add(lei);
+                    }
+                }
+                return leis;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs leiProcessorJob end to end against a GleifApiSimulator, through the real HTTP client, rate controller and
+ * retries, and reports records written per second, the p50 and p99 of gleif.record.latency, and request efficiency:
+ * GLEIF calls per written record, including the calls that were throttled, failed or retried.
+ * <p>
+ * Options, as --name=value; any other --name=value is passed on to the application:
+ * <ul>
+ *   <li>records: LEIs in the input file (default 10000)</li>
+ *   <li>fetch-mode: SINGLE, BULK, CONCURRENT or PARTITIONED (default SINGLE); concurrency for CONCURRENT mode</li>
+ *   <li>requests-per-second: the client's request ceiling for the run (default 50)</li>
+ *   <li>corpus: a directory of recorded responses (see RecordedCorpus); synthetic records when absent</li>
+ *   <li>latency: none, fixed:{ms}, uniform:{min}-{max} or lognormal:{median}:{p99} (default lognormal:50:250)</li>
+ *   <li>throttle-rate, error-rate: share of requests answered 429 and 503 (default 0)</li>
+ *   <li>rate-limit, rate-limit-window: requests the simulator allows per window (default 0, no limit; window 60s)</li>
+ * </ul>
+ * The default latency is a starting point, not a measured profile of the GLEIF API; runs are only comparable
+ * with each other under the same options.
+ */
+public final class GleifLoadTest {
+
+    private GleifLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(Map.of(
+                "records", "10000",
+                "fetch-mode", "SINGLE",
+                "requests-per-second", "50",
+                "latency", "lognormal:50:250",
+                "throttle-rate", "0",
+                "error-rate", "0",
+                "rate-limit", "0",
+                "rate-limit-window", "60s"));
+        List<String> applicationArguments = new ArrayList<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = arg.startsWith("--") && separator > 0 ? arg.substring(2, separator) : null;
+            if (name != null && (options.containsKey(name) || name.equals("corpus") || name.equals("concurrency"))) {
+                options.put(name, arg.substring(separator + 1));
+            } else {
+                applicationArguments.add(arg);
+            }
+        }
+
+        GleifApiSimulator.Settings settings = new GleifApiSimulator.Settings(
+                GleifApiSimulator.Latency.parse(options.get("latency")),
+                Double.parseDouble(options.get("throttle-rate")),
+                Double.parseDouble(options.get("error-rate")),
+                Integer.parseInt(options.get("rate-limit")),
+                Duration.parse("PT" + options.get("rate-limit-window")));
+        String corpus = options.get("corpus");
+        Path workDirectory = Files.createTempDirectory("gleif-load-test");
+        try (GleifApiSimulator simulator = new GleifApiSimulator(settings,
+                baseUrl -> corpus != null ? new RecordedCorpus(Path.of(corpus), baseUrl) : new GleifPayloads(baseUrl))) {
+            Path input = workDirectory.resolve("lei_records_input.csv");
+            List<String> leis = simulator.getCorpus().leis(Integer.parseInt(options.get("records")));
+            PerfApplication.writeInput(input, leis);
+
+            List<String> arguments = new ArrayList<>(List.of(
+                    "--gleif.api.base-url=" + simulator.getBaseUrl(),
+                    "--gleif.api.requests-per-second=" + options.get("requests-per-second"),
+                    // Client-side percentiles over the whole run, for the report
+                    "--management.metrics.distribution.percentiles.gleif.record.latency=0.5,0.99",
+                    "--management.metrics.distribution.expiry.gleif.record.latency=1d",
+                    "--management.metrics.distribution.buffer-length.gleif.record.latency=1"));
+            arguments.addAll(applicationArguments);
+            try (ConfigurableApplicationContext context = PerfApplication.start(workDirectory, input, List.of(),
+                    arguments.toArray(String[]::new))) {
+                JobParametersBuilder parameters = new JobParametersBuilder()
+                        .addLong("run.id", System.currentTimeMillis())
+                        .addString(FetchModeDecider.FETCH_MODE_PARAMETER, options.get("fetch-mode"));
+                if (options.containsKey("concurrency")) {
+                    parameters.addLong("concurrency", Long.parseLong(options.get("concurrency")));
+                }
+                System.out.printf("Load test: %d LEIs, fetch mode %s, %s requests/second, latency %s, throttle rate %s, "
+                                + "error rate %s, rate limit %s per %s%n", leis.size(), options.get("fetch-mode"),
+                        options.get("requests-per-second"), options.get("latency"), options.get("throttle-rate"),
+                        options.get("error-rate"), options.get("rate-limit"), options.get("rate-limit-window"));
+
+                long start = System.nanoTime();
+                JobExecution execution = context.getBean(JobLauncher.class)
+                        .run(context.getBean("leiProcessorJob", Job.class), parameters.toJobParameters());
+                double seconds = (System.nanoTime() - start) / 1e9;
+                report(execution, seconds, context.getBean(MeterRegistry.class), simulator);
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(workDirectory);
+        }
+    }
+
+    private static void report(JobExecution execution, double seconds, MeterRegistry meterRegistry, GleifApiSimulator simulator) {
+        Counter written = meterRegistry.find("gleif.output.records").counter();
+        long records = written != null ? Math.round(written.count()) : 0;
+        Timer complete = meterRegistry.find("gleif.record.latency").tag("outcome", PipelineMetrics.RECORD_COMPLETE).timer();
+        Timer failed = meterRegistry.find("gleif.record.latency").tag("outcome", PipelineMetrics.RECORD_FAILED).timer();
+        long requests = simulator.totalRequests();
+
+        System.out.printf("Job %s in %.1f s%n", execution.getStatus(), seconds);
+        System.out.printf("Records written      %8d  (%.1f records/s)%n", records, records / seconds);
+        System.out.printf("Records failed       %8d%n", failed != null ? failed.count() : 0);
+        if (complete != null && complete.count() > 0) {
+            ValueAtPercentile[] percentiles = complete.takeSnapshot().percentileValues();
+            System.out.printf("Record latency       p50 %.0f ms, p99 %.0f ms%n",
+                    percentiles[0].value(TimeUnit.MILLISECONDS), percentiles[1].value(TimeUnit.MILLISECONDS));
+        }
+        System.out.printf("GLEIF requests       %8d  (%s per written record)%n", requests,
+                records > 0 ? String.format("%.2f", (double) requests / records) : "-");
+        simulator.requestCounts().forEach((key, count) -> System.out.printf("  %-22s %8d%n", key, count));
+    }
+}
@@ -0,0 +1,162 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * GLEIF API payloads for the benchmarks, and an in-process ClientHttpRequestFactory that serves them.
+ * The files in src/perf/resources/payloads follow the shape of GLEIF API v1 responses: a full lei-record with
+ * addresses, other names, an event group and every relationship link, a field-modifications page and an LEI issuer.
+ * "{LEI}" is replaced by the requested LEI, and the GLEIF base URL in links by the one the documents are served
+ * from. The files are pretty-printed for reading and minified on load, as the API sends them. Rendered documents
+ * are kept, so serving a request costs a map lookup and the response object.
+ */
+final class GleifPayloads implements GleifCorpus {
+
+    static final String BASE_URL = GLEIF_BASE_URL;
+    static final String MANAGING_LOU = "549300O897ZC5H7CY412";
+    static final String PARENT = syntheticLei(0);
+
+    private static final String PLACEHOLDER = "{LEI}";
+    private static final MediaType JSON_API = MediaType.valueOf("application/vnd.api+json");
+
+    private final String meta;
+    private final String recordData;
+    private final String fieldModifications;
+    private final byte[] leiIssuer;
+    private final Map<String, byte[]> rendered = new ConcurrentHashMap<>();
+
+    GleifPayloads() {
+        this(BASE_URL);
+    }
+
+    /**
+     * @param baseUrl The base URL the links in the documents point to.
+     */
+    GleifPayloads(String baseUrl) {
+        this.meta = load("meta.json");
+        this.recordData = load("lei-record-data.json").replace(GLEIF_BASE_URL, baseUrl);
+        this.fieldModifications = load("field-modifications.json").replace(GLEIF_BASE_URL, baseUrl);
+        this.leiIssuer = load("lei-issuer.json").replace(GLEIF_BASE_URL, baseUrl).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a well-formed LEI with valid ISO 17442 check digits, distinct for every n.
+     */
+    static String syntheticLei(long n) {
+        String digits = Long.toString(n, 36).toUpperCase();
+        String base = "529900" + "0".repeat(12 - digits.length()) + digits;
+        int remainder = 0;
+        for (char c : (base + "00").toCharArray()) {
+            int value = Character.digit(c, 36);
+            remainder = (remainder * (value < 10 ? 10 : 100) + value) % 97;
+        }
+        return base + String.format("%02d", 98 - remainder);
+    }
+
+    static List<String> syntheticLeis(int count) {
+        List<String> leis = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            leis.add(syntheticLei(i));
+        }
+        return leis;
+    }
+
+    /**
+     * A single-record document, as returned by /lei-records/{lei}.
+     */
+    byte[] leiRecord(String lei) {
+        return ("{\"meta\":" + meta + ",\"data\":" + recordData.replace(PLACEHOLDER, lei) + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A one-page collection document, as returned by /lei-records?filter[lei]=...
+     */
+    byte[] leiRecords(List<String> leis) {
+        StringBuilder body = new StringBuilder("{\"meta\":{\"pagination\":{\"currentPage\":1,\"perPage\":")
+                .append(leis.size()).append(",\"total\":").append(leis.size()).append(",\"lastPage\":1}},\"data\":[");
+        for (int i = 0; i < leis.size(); i++) {
+            body.append(i > 0 ? "," : "").append(recordData.replace(PLACEHOLDER, leis.get(i)));
+        }
+        return body.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    byte[] fieldModifications(String lei) {
+        return fieldModifications.replace(PLACEHOLDER, lei).getBytes(StandardCharsets.UTF_8);
+    }
+
+    byte[] leiIssuer() {
+        return leiIssuer;
+    }
+
+    @Override
+    public List<String> leis(int count) {
+        return syntheticLeis(count);
+    }
+
+    /**
+     * Serves GLEIF requests from the payloads without any network I/O. Unknown paths get a 404.
+     */
+    ClientHttpRequestFactory requestFactory() {
+        return (uri, httpMethod) -> {
+            MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+            String path = uri.getRawPath().substring(uri.getRawPath().indexOf("/api/v1") + "/api/v1".length());
+            byte[] body = respond(path, uri.getRawQuery());
+            MockClientHttpResponse response = new MockClientHttpResponse(body != null ? body : new byte[0],
+                    body != null ? HttpStatus.OK : HttpStatus.NOT_FOUND);
+            response.getHeaders().setContentType(JSON_API);
+            request.setResponse(response);
+            return request;
+        };
+    }
+
+    @Override
+    public byte[] respond(String path, String rawQuery) {
+        if (path.equals("/lei-records")) {
+            List<String> filter = GleifCorpus.leiFilter(rawQuery);
+            return filter != null ? leiRecords(filter) : null;
+        }
+        String[] segments = path.split("/");
+        if (segments.length == 3 && segments[1].equals("lei-issuers")) {
+            return leiIssuer;
+        }
+        if (segments.length < 3 || !segments[1].equals("lei-records")) {
+            return null;
+        }
+        if (segments.length == 3) {
+            return rendered.computeIfAbsent(path, key -> leiRecord(segments[2]));
+        }
+        return switch (segments[3]) {
+            case "managing-lou" -> rendered.computeIfAbsent(MANAGING_LOU, this::leiRecord);
+            case "lei-issuer" -> leiIssuer;
+            case "direct-parent", "ultimate-parent" -> rendered.computeIfAbsent(PARENT, this::leiRecord);
+            case "field-modifications" -> rendered.computeIfAbsent(path, key -> fieldModifications(segments[2]));
+            default -> null;
+        };
+    }
+
+    private static String load(String name) {
+        try (InputStream in = GleifPayloads.class.getResourceAsStream("/payloads/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing benchmark payload " + name);
+            }
+            ObjectMapper objectMapper = new ObjectMapper();
+            return objectMapper.writeValueAsString(objectMapper.readTree(in)); // Minified, as the API sends it
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
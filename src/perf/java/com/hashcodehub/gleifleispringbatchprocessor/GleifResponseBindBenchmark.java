@@ -0,0 +1,93 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding GLEIF responses into GleifResponse: Jackson data binding and tree binding (readTree, then treeToValue)
+ * against the streaming GleifResponseParser, for a single record, a bulk page of 200 records and a
+ * relationship document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GleifResponseBindBenchmark {
+
+    private ObjectMapper objectMapper;
+    private GleifResponseParser parser;
+    private byte[] record;
+    private byte[] page;
+    private byte[] fieldModifications;
+
+    @Setup
+    public void setUp() {
+        GleifPayloads payloads = new GleifPayloads();
+        // GLEIF sends spglobal as a one-element array, which GleifResponse holds as a String; the streaming
+        // parser skips it, the binding baselines unwrap it
+        objectMapper = new ObjectMapper().enable(DeserializationFeature.UNWRAP_SINGLE_VALUE_ARRAYS);
+        parser = new GleifResponseParser(new ObjectMapper(), new PipelineMetrics(new SimpleMeterRegistry()));
+        String lei = GleifPayloads.syntheticLei(1);
+        record = payloads.leiRecord(lei);
+        page = payloads.leiRecords(GleifPayloads.syntheticLeis(200));
+        fieldModifications = payloads.fieldModifications(lei);
+    }
+
+    @Benchmark
+    public GleifResponse recordDatabind() throws IOException {
+        return objectMapper.readValue(record, GleifResponse.class);
+    }
+
+    @Benchmark
+    public GleifResponse recordTree() throws IOException {
+        return objectMapper.treeToValue(objectMapper.readTree(record), GleifResponse.class);
+    }
+
+    @Benchmark
+    public GleifResponse recordStreaming() throws IOException {
+        return parser.parseRecord(new ByteArrayInputStream(record));
+    }
+
+    @Benchmark
+    public GleifCollectionResponse pageDatabind() throws IOException {
+        return objectMapper.readValue(page, GleifCollectionResponse.class);
+    }
+
+    @Benchmark
+    public GleifCollectionResponse pageTree() throws IOException {
+        return objectMapper.treeToValue(objectMapper.readTree(page), GleifCollectionResponse.class);
+    }
+
+    @Benchmark
+    public GleifCollectionResponse pageStreaming() throws IOException {
+        return parser.parseCollection(new ByteArrayInputStream(page));
+    }
+
+    @Benchmark
+    public Object relationshipsTree() throws IOException {
+        return objectMapper.readTree(fieldModifications).get("data");
+    }
+
+    @Benchmark
+    public List<RelationshipRecord> relationshipsStreaming() throws IOException {
+        return parser.parseRelationships(fieldModifications);
+    }
+}
@@ -0,0 +1,123 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The packed LEI collections (LeiSet, LeiIndex) against a HashSet of Strings, the structure they replace:
+ * building a set of "size" LEIs, and looking up each of them plus as many absent LEIs. Every operation starts
+ * from Strings, the way LEI IDs arrive from the input file and GLEIF.
+ * Run with the GC profiler (the perf profile's default) to compare the bytes allocated per build.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeiCollectionsBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int size;
+
+    private List<String> leis;
+    private List<String> absentLeis;
+    private Set<String> hashSet;
+    private LeiSet leiSet;
+    private LeiIndex leiIndex;
+
+    @Setup
+    public void setUp() {
+        leis = GleifPayloads.syntheticLeis(size);
+        absentLeis = GleifPayloads.syntheticLeis(2 * size).subList(size, 2 * size);
+        hashSet = buildHashSet();
+        leiSet = buildLeiSet();
+        leiIndex = buildLeiIndex();
+    }
+
+    @Benchmark
+    public Set<String> buildHashSet() {
+        Set<String> set = new HashSet<>();
+        for (String lei : leis) {
+            set.add(lei);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public LeiSet buildLeiSet() {
+        LeiSet set = new LeiSet();
+        for (String lei : leis) {
+            set.add(lei);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public LeiIndex buildLeiIndex() {
+        LeiIndex index = new LeiIndex();
+        for (String lei : leis) {
+            index.add(lei);
+        }
+        return index;
+    }
+
+    @Benchmark
+    public int containsHashSet() {
+        int found = 0;
+        for (String lei : leis) {
+            found += hashSet.contains(lei) ? 1 : 0;
+        }
+        for (String lei : absentLeis) {
+            found += hashSet.contains(lei) ? 1 : 0;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int containsLeiSet() {
+        int found = 0;
+        for (String lei : leis) {
+            found += leiSet.contains(lei) ? 1 : 0;
+        }
+        for (String lei : absentLeis) {
+            found += leiSet.contains(lei) ? 1 : 0;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int indexOfLeiIndex() {
+        int found = 0;
+        for (String lei : leis) {
+            found += leiIndex.indexOf(lei) != LeiIndex.ABSENT ? 1 : 0;
+        }
+        for (String lei : absentLeis) {
+            found += leiIndex.indexOf(lei) != LeiIndex.ABSENT ? 1 : 0;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int parseAndFormat() {
+        int length = 0;
+        for (String lei : leis) {
+            length += Lei.parse(lei).toString().length();
+        }
+        return length;
+    }
+}
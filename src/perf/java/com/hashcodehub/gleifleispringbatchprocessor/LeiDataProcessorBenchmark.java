@@ -0,0 +1,107 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LeiDataProcessor with GLEIF served in-process, so the scores are the pipeline's own CPU and allocation cost per
+ * LEI: request building, binding, relationship fan-out and assembly, without network or rate limiting.
+ * "single" is the per-record path of the SINGLE and CONCURRENT modes, "bulk" one 200-LEI collection lookup
+ * of the BULK mode. A cache size of 0 fetches every relationship; a full cache serves the shared managing LOU,
+ * issuer and parents from memory, as in a real run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeiDataProcessorBenchmark {
+
+    private static final int BULK_SIZE = 200;
+
+    @Param({"0", "10000"})
+    public long relationshipCacheSize;
+
+    private Path outputDirectory;
+    private FailedLeiTrackerService failedLeiTrackerService;
+    private RelationshipFetchService relationshipFetchService;
+    private LeiDataProcessor processor;
+    private List<String> leis;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        GleifPayloads payloads = new GleifPayloads();
+        outputDirectory = Files.createTempDirectory("lei-processor-benchmark");
+        failedLeiTrackerService = new FailedLeiTrackerService();
+        ReflectionTestUtils.setField(failedLeiTrackerService, "failedRecordsPath", outputDirectory.resolve("failed.csv").toString());
+        ReflectionTestUtils.setField(failedLeiTrackerService, "rejectedRecordsPath", outputDirectory.resolve("rejected.csv").toString());
+        ReflectionTestUtils.setField(failedLeiTrackerService, "batchSize", 1000);
+        failedLeiTrackerService.start();
+
+        PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry());
+        GleifResponseParser parser = new GleifResponseParser(new ObjectMapper(), pipelineMetrics);
+        GleifApiService gleifApiService = new GleifApiService(new RestTemplate(payloads.requestFactory()), parser, failedLeiTrackerService);
+        ReflectionTestUtils.setField(gleifApiService, "baseUrl", GleifPayloads.BASE_URL);
+        ReflectionTestUtils.setField(gleifApiService, "bulkPageSize", BULK_SIZE);
+        RelationshipCache relationshipCache = new RelationshipCache(gleifApiService, relationshipCacheSize, Duration.ofHours(6));
+        relationshipFetchService = new RelationshipFetchService(relationshipCache, new HttpResponseStore(), 10); // A store that is not initialised is disabled
+        ReflectionTestUtils.setField(relationshipFetchService, "baseUrl", GleifPayloads.BASE_URL);
+        processor = new LeiDataProcessor(gleifApiService, relationshipFetchService, failedLeiTrackerService, pipelineMetrics);
+        leis = GleifPayloads.syntheticLeis(10_000);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        relationshipFetchService.shutdown();
+        failedLeiTrackerService.shutdown();
+        try (var files = Files.list(outputDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(outputDirectory);
+    }
+
+    @Benchmark
+    public Map<String, Object> single(Cursor cursor) throws Exception {
+        String lei = leis.get(cursor.next);
+        cursor.next = (cursor.next + 1) % leis.size();
+        return processor.process(lei);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK_SIZE)
+    public List<Map<String, Object>> bulk(Cursor cursor) {
+        int from = cursor.next;
+        cursor.next = (from + BULK_SIZE) % leis.size();
+        return processor.processChunk(leis.subList(from, from + BULK_SIZE));
+    }
+}
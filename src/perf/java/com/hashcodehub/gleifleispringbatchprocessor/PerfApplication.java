@@ -0,0 +1,73 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the application for a measurement run: no web server, no scheduled or startup job, the persistent HTTP
+ * cache off, and every input, output and snapshot path inside a work directory.
+ */
+final class PerfApplication {
+
+    private PerfApplication() {
+    }
+
+    /**
+     * Writes an input file with its header row, as the job's reader expects.
+     *
+     * @param input The file to write.
+     * @param leis  The LEI IDs, one per line.
+     */
+    static void writeInput(Path input, List<String> leis) throws IOException {
+        List<String> lines = new ArrayList<>(leis.size() + 1);
+        lines.add("lei_id");
+        lines.addAll(leis);
+        Files.write(input, lines);
+    }
+
+    /**
+     * Starts the application context.
+     *
+     * @param workDirectory Holds the input file and receives all outputs, under output/.
+     * @param input         The LEI input file.
+     * @param sources       Extra configuration classes, such as bean overrides.
+     * @param arguments     Further properties as --name=value, overriding the defaults here.
+     * @return the running context.
+     */
+    static ConfigurableApplicationContext start(Path workDirectory, Path input, List<Class<?>> sources, String... arguments) {
+        Path outputDirectory = workDirectory.resolve("output");
+        List<String> args = new ArrayList<>(List.of(
+                "--gleif.job.run-on-startup=false",
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:perf;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "--gleif.job.cron=-",
+                "--gleif.http-cache.enabled=false",
+                "--gleif.input.file-path=file:" + input,
+                "--gleif.output.lei-records=" + outputDirectory.resolve("lei_records.csv"),
+                "--gleif.output.relationship-records=" + outputDirectory.resolve("relationship_records.csv"),
+                "--gleif.output.failed-records=" + outputDirectory.resolve("failed_records.csv"),
+                "--gleif.output.rejected-records=" + outputDirectory.resolve("rejected_records.csv"),
+                "--gleif.output.relationship-edges=" + outputDirectory.resolve("relationship_edges.csv"),
+                "--gleif.output.related-entities=" + outputDirectory.resolve("related_entities.csv"),
+                "--gleif.output.parquet.dir=" + outputDirectory.resolve("parquet"),
+                "--gleif.partition.output-dir=" + outputDirectory.resolve("partitions"),
+                "--gleif.graph.snapshot-path=" + workDirectory.resolve("ownership-graph.bin"),
+                "--gleif.http-cache.dir=" + workDirectory.resolve("http-cache"),
+                "--logging.level.root=WARN",
+                "--logging.level.com.hashcodehub.gleifleispringbatchprocessor=WARN"));
+        args.addAll(List.of(arguments));
+
+        List<Class<?>> allSources = new ArrayList<>(List.of(GleifLeiApplication.class));
+        allSources.addAll(sources);
+        // DevTools would restart a context started from main() in a new thread, with the arguments applied twice
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        // Command-line arguments, so they take precedence over application.properties
+        return new SpringApplicationBuilder(allSources.toArray(Class<?>[]::new)).run(args.toArray(String[]::new));
+    }
+}
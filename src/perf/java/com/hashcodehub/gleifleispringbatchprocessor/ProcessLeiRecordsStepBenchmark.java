@@ -0,0 +1,108 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One whole leiProcessorJob run over a synthetic input file, timed end to end: the application context is started
+ * once, and each iteration launches the job and measures reading, fetching, binding and writing every record,
+ * job repository updates included. GLEIF is served in-process, the rate ceiling is lifted and the persistent
+ * HTTP cache is off, so the time is the pipeline's own. The relationship cache stays warm between iterations,
+ * as in a long-running instance; the outputs are removed before each one.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessLeiRecordsStepBenchmark {
+
+    @Param({"10000"})
+    public int records;
+
+    @Param({"SINGLE", "BULK", "CONCURRENT"})
+    public String fetchMode;
+
+    private Path workDirectory;
+    private Path outputDirectory;
+    private ConfigurableApplicationContext context;
+    private JobLauncher jobLauncher;
+    private Job leiProcessorJob;
+
+    /**
+     * Replaces the pooled HTTP client with the in-process payloads. Not a @Configuration class, so the
+     * application's component scan does not pick it up.
+     */
+    static class InProcessGleif {
+        @Bean
+        @Primary
+        ClientHttpRequestFactory inProcessRequestFactory() {
+            return new GleifPayloads().requestFactory();
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("lei-step-benchmark");
+        outputDirectory = workDirectory.resolve("output");
+        Path input = workDirectory.resolve("lei_records_input.csv");
+        PerfApplication.writeInput(input, GleifPayloads.syntheticLeis(records));
+        context = PerfApplication.start(workDirectory, input, List.of(InProcessGleif.class),
+                "--gleif.api.requests-per-second=1000000",
+                "--gleif.api.base-url=" + GleifPayloads.BASE_URL);
+        jobLauncher = context.getBean(JobLauncher.class);
+        leiProcessorJob = context.getBean("leiProcessorJob", Job.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearOutputs() throws IOException {
+        FileSystemUtils.deleteRecursively(outputDirectory);
+        Files.createDirectories(outputDirectory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public JobExecution run() throws Exception {
+        JobExecution execution = jobLauncher.run(leiProcessorJob, new JobParametersBuilder()
+                .addLong("run.id", System.nanoTime())
+                .addString(FetchModeDecider.FETCH_MODE_PARAMETER, fetchMode)
+                .toJobParameters());
+        if (execution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("leiProcessorJob ended " + execution.getStatus() + ": " + execution.getAllFailureExceptions());
+        }
+        return execution;
+    }
+}
@@ -0,0 +1,94 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Saved GLEIF responses, laid out by request path below /api/v1:
+ * <pre>
+ *   lei-records/{lei}.json                      GET /lei-records/{lei}
+ *   lei-records/{lei}/{relationship}.json       GET /lei-records/{lei}/direct-parent, field-modifications, ...
+ *   lei-issuers/{id}.json                       GET /lei-issuers/{id}
+ * </pre>
+ * so a corpus can be recorded with curl -o. Filtered collection queries are assembled from the record files, leaving
+ * out the LEIs that have none, as GLEIF does. Missing files are answered with 404, and the GLEIF base URL in links is
+ * replaced by the one the documents are served from.
+ */
+final class RecordedCorpus implements GleifCorpus {
+
+    private final Path directory;
+    private final String baseUrl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    RecordedCorpus(Path directory, String baseUrl) {
+        if (!Files.isDirectory(directory.resolve("lei-records"))) {
+            throw new IllegalArgumentException("No lei-records directory in corpus " + directory);
+        }
+        this.directory = directory;
+        this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public byte[] respond(String path, String rawQuery) {
+        try {
+            if (path.equals("/lei-records")) {
+                List<String> filter = GleifCorpus.leiFilter(rawQuery);
+                return filter != null ? leiRecords(filter) : null;
+            }
+            if (path.contains("..")) {
+                return null;
+            }
+            String document = read(directory.resolve(path.substring(1) + ".json"));
+            return document != null ? document.getBytes(StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<String> leis(int count) {
+        try (Stream<Path> files = Files.list(directory.resolve("lei-records"))) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(".json"))
+                    .map(name -> name.substring(0, name.length() - ".json".length()))
+                    .sorted()
+                    .limit(count)
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] leiRecords(List<String> leis) throws IOException {
+        ArrayNode data = objectMapper.createArrayNode();
+        for (String lei : leis) {
+            String document = read(directory.resolve("lei-records").resolve(lei + ".json"));
+            if (document != null) {
+                data.add(objectMapper.readTree(document).get("data"));
+            }
+        }
+        ObjectNode collection = objectMapper.createObjectNode();
+        ObjectNode pagination = collection.putObject("meta").putObject("pagination");
+        pagination.put("currentPage", 1).put("perPage", leis.size()).put("total", data.size()).put("lastPage", 1);
+        collection.set("data", data);
+        return objectMapper.writeValueAsBytes(collection);
+    }
+
+    private String read(Path file) throws IOException {
+        try {
+            return Files.readString(file).replace(GLEIF_BASE_URL, baseUrl);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Drives AdaptiveRateController with responses on a fake clock, which only moves when a test advances it.
+ * Ceiling 10/s, decrease factor 0.5, additive increase 0.5/s per 1 s interval, floor 1/s, pauses capped at 5 minutes.
+ */
+class AdaptiveRateControllerTest {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int OK = 200;
+
+    private FakeTime time;
+    private AdaptiveRateController controller;
+
+    @BeforeEach
+    void setUp() {
+        time = new FakeTime();
+        controller = new AdaptiveRateController(10.0, 1.0, 0.5, Duration.ofSeconds(1), 0.5, Duration.ofMinutes(5),
+                time.clock(), time);
+    }
+
+    @Test
+    void throttledResponsesCutTheRateOfTheirEndpointOnly() {
+        controller.onResponse(GleifEndpoint.RELATIONSHIPS, TOO_MANY_REQUESTS, new HttpHeaders());
+        assertThat(rate(GleifEndpoint.RELATIONSHIPS)).isCloseTo(5.0, within(1e-9));
+
+        controller.onResponse(GleifEndpoint.RELATIONSHIPS, SERVICE_UNAVAILABLE, new HttpHeaders());
+        assertThat(rate(GleifEndpoint.RELATIONSHIPS)).isCloseTo(2.5, within(1e-9));
+        assertThat(rate(GleifEndpoint.LEI_RECORDS)).isCloseTo(10.0, within(1e-9));
+
+        // Never below the floor
+        controller.onResponse(GleifEndpoint.RELATIONSHIPS, TOO_MANY_REQUESTS, new HttpHeaders());
+        controller.onResponse(GleifEndpoint.RELATIONSHIPS, TOO_MANY_REQUESTS, new HttpHeaders());
+        assertThat(rate(GleifEndpoint.RELATIONSHIPS)).isCloseTo(1.0, within(1e-9));
+        assertThat(endpointMetrics(GleifEndpoint.RELATIONSHIPS)).containsEntry("throttled", 4L);
+    }
+
+    @Test
+    void successesRaiseTheRateByOneStepPerInterval() {
+        controller.onResponse(GleifEndpoint.LEI_RECORDS, TOO_MANY_REQUESTS, new HttpHeaders());
+        assertThat(rate(GleifEndpoint.LEI_RECORDS)).isCloseTo(5.0, within(1e-9));
+
+        // Within the interval after the cut, however many successes arrive
+        time.advance(Duration.ofMillis(999));
+        succeed(GleifEndpoint.LEI_RECORDS, 50);
+        assertThat(rate(GleifEndpoint.LEI_RECORDS)).isCloseTo(5.0, within(1e-9));
+
+        time.advance(Duration.ofMillis(1));
+        succeed(GleifEndpoint.LEI_RECORDS, 50);
+        assertThat(rate(GleifEndpoint.LEI_RECORDS)).isCloseTo(5.5, within(1e-9));
+
+        // An interval without a success does not count
+        time.advance(Duration.ofSeconds(5));
+        succeed(GleifEndpoint.LEI_RECORDS, 1);
+        assertThat(rate(GleifEndpoint.LEI_RECORDS)).isCloseTo(6.0, within(1e-9));
+
+        for (int second = 0; second < 20; second++) {
+            time.advance(Duration.ofSeconds(1));
+            succeed(GleifEndpoint.LEI_RECORDS, 1);
+        }
+        assertThat(rate(GleifEndpoint.LEI_RECORDS)).isCloseTo(10.0, within(1e-9)); // Up to the ceiling only
+    }
+
+    @Test
+    void retryAfterSecondsPausesEveryEndpoint() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "30");
+        controller.onResponse(GleifEndpoint.RELATIONSHIPS, TOO_MANY_REQUESTS, headers);
+        assertThat(controller.metrics()).containsEntry("pausedForMillis", 30_000L).containsEntry("pauses", 1L);
+
+        time.advance(Duration.ofSeconds(10));
+        assertThat(controller.metrics()).containsEntry("pausedForMillis", 20_000L);
+
+        // The pause holds back the other endpoint too, until the clock passes it
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            time.advance(Duration.ofSeconds(21));
+            controller.acquire(GleifEndpoint.LEI_RECORDS);
+        });
+        assertThat(controller.metrics()).containsEntry("pausedForMillis", 0L);
+    }
+
+    @Test
+    void retryAfterDateIsReadAgainstTheClock() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(time.clock().instant().plusSeconds(60), ZoneOffset.UTC)));
+        controller.onResponse(GleifEndpoint.LEI_RECORDS, SERVICE_UNAVAILABLE, headers);
+
+        assertThat(controller.metrics()).containsEntry("pausedForMillis", 60_000L);
+    }
+
+    @Test
+    void exhaustedRateLimitPausesUntilTheReset() {
+        HttpHeaders remaining = new HttpHeaders();
+        remaining.set("RateLimit-Remaining", "3");
+        remaining.set("RateLimit-Reset", "15");
+        controller.onResponse(GleifEndpoint.LEI_RECORDS, OK, remaining);
+        assertThat(controller.metrics()).containsEntry("pausedForMillis", 0L);
+
+        HttpHeaders exhausted = new HttpHeaders();
+        exhausted.set("RateLimit-Remaining", "0");
+        exhausted.set("RateLimit-Reset", "15");
+        controller.onResponse(GleifEndpoint.LEI_RECORDS, OK, exhausted);
+        assertThat(controller.metrics()).containsEntry("pausedForMillis", 15_000L);
+
+        // X- headers, with the reset as epoch seconds
+        HttpHeaders epoch = new HttpHeaders();
+        epoch.set("X-RateLimit-Remaining", "0");
+        epoch.set("X-RateLimit-Reset", String.valueOf(time.clock().instant().plusSeconds(45).getEpochSecond()));
+        controller.onResponse(GleifEndpoint.RELATIONSHIPS, OK, epoch);
+        assertThat(controller.metrics()).containsEntry("pausedForMillis", 45_000L).containsEntry("pauses", 2L);
+    }
+
+    @Test
+    void pausesAreCappedAtTheMaximum() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "3600");
+        controller.onResponse(GleifEndpoint.LEI_RECORDS, TOO_MANY_REQUESTS, headers);
+
+        assertThat(controller.metrics()).containsEntry("pausedForMillis", Duration.ofMinutes(5).toMillis());
+    }
+
+    private void succeed(GleifEndpoint endpoint, int responses) {
+        for (int i = 0; i < responses; i++) {
+            controller.onResponse(endpoint, OK, new HttpHeaders());
+        }
+    }
+
+    private double rate(GleifEndpoint endpoint) {
+        return (double) endpointMetrics(endpoint).get("rate");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> endpointMetrics(GleifEndpoint endpoint) {
+        return (Map<String, Object>) controller.metrics().get(endpoint.name());
+    }
+
+    /**
+     * A ticker and a wall clock that move together, and only when advanced.
+     */
+    private static final class FakeTime extends Ticker {
+
+        private static final Instant START = Instant.parse("2026-10-17T08:00:00Z");
+
+        private volatile long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(Duration duration) {
+            nanos += duration.toNanos();
+        }
+
+        Clock clock() {
+            return new Clock() {
+                @Override
+                public ZoneId getZone() {
+                    return ZoneOffset.UTC;
+                }
+
+                @Override
+                public Clock withZone(ZoneId zone) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public Instant instant() {
+                    return START.plusNanos(nanos);
+                }
+            };
+        }
+    }
+}
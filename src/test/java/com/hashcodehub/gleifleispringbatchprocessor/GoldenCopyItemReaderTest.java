@@ -0,0 +1,102 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reads the same three golden-copy records from the CSV and the XML fixture, plain and zipped. The fixtures follow
+ * the GLEIF layouts, with columns and elements the reader does not project, quoting in the CSV and a namespace in
+ * the XML.
+ */
+class GoldenCopyItemReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void csvAndXmlProduceIdenticalItems() throws Exception {
+        List<Map<String, String>> fromCsv = readAll(fixture("lei2-golden-copy.csv"));
+        List<Map<String, String>> fromXml = readAll(fixture("lei2-golden-copy.xml"));
+
+        assertThat(fromCsv).hasSize(3).isEqualTo(fromXml);
+        assertThat(fromXml.get(0)).containsOnly(
+                Map.entry(GoldenCopyItemReader.LEI, "5493001KJTIIGC8Y1R12"),
+                Map.entry(GoldenCopyItemReader.LEGAL_NAME, "Bloomberg Finance L.P."),
+                Map.entry(GoldenCopyItemReader.LEGAL_NAME_LANGUAGE, "en"),
+                Map.entry(GoldenCopyItemReader.REGISTERED_AS, "2236735"),
+                Map.entry(GoldenCopyItemReader.JURISDICTION, "US-DE"),
+                Map.entry(GoldenCopyItemReader.ENTITY_STATUS, "ACTIVE"),
+                Map.entry(GoldenCopyItemReader.INITIAL_REGISTRATION_DATE, "2012-06-06T15:53:00.000Z"),
+                Map.entry(GoldenCopyItemReader.LAST_UPDATE_DATE, "2026-06-10T14:23:07.000Z"),
+                Map.entry(GoldenCopyItemReader.NEXT_RENEWAL_DATE, "2027-06-10T14:23:07.000Z"),
+                Map.entry(GoldenCopyItemReader.MANAGING_LOU, "EVK05KS7XY1DEII3R011"));
+        assertThat(fromXml.get(1)).containsEntry(GoldenCopyItemReader.LEGAL_NAME, "Deutsche Börse Aktiengesellschaft, \"DBAG\"");
+        // Absent in the XML, empty in the CSV
+        assertThat(fromCsv.get(2)).doesNotContainKeys(GoldenCopyItemReader.LEGAL_NAME_LANGUAGE,
+                GoldenCopyItemReader.REGISTERED_AS, GoldenCopyItemReader.NEXT_RENEWAL_DATE);
+    }
+
+    @Test
+    void zippedFilesProduceTheSameItems() throws Exception {
+        List<Map<String, String>> expected = readAll(fixture("lei2-golden-copy.xml"));
+
+        assertThat(readAll(zip(fixture("lei2-golden-copy.csv")))).isEqualTo(expected);
+        assertThat(readAll(zip(fixture("lei2-golden-copy.xml")))).isEqualTo(expected);
+    }
+
+    @Test
+    void restartSkipsTheCommittedRecords() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        GoldenCopyItemReader reader = new GoldenCopyItemReader(fixture("lei2-golden-copy.xml"));
+        reader.open(executionContext);
+        reader.read();
+        reader.read();
+        reader.update(executionContext);
+        reader.close();
+
+        GoldenCopyItemReader restarted = new GoldenCopyItemReader(fixture("lei2-golden-copy.xml"));
+        restarted.open(executionContext);
+        assertThat(restarted.read()).containsEntry(GoldenCopyItemReader.LEI, "HWUPKR0MPOU8FGXBT394");
+        assertThat(restarted.read()).isNull();
+        restarted.close();
+    }
+
+    private static Path fixture(String name) throws IOException {
+        return new ClassPathResource("golden-copy/" + name).getFile().toPath();
+    }
+
+    private Path zip(Path file) throws IOException {
+        Path archive = tempDir.resolve(file.getFileName() + ".zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry(file.getFileName().toString()));
+            Files.copy(file, zip);
+            zip.closeEntry();
+        }
+        return archive;
+    }
+
+    private static List<Map<String, String>> readAll(Path file) throws Exception {
+        GoldenCopyItemReader reader = new GoldenCopyItemReader(file);
+        reader.open(new ExecutionContext());
+        List<Map<String, String>> items = new ArrayList<>();
+        Map<String, String> item;
+        while ((item = reader.read()) != null) {
+            items.add(item);
+        }
+        reader.close();
+        return items;
+    }
+}
@@ -0,0 +1,69 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpResponseStoreTest {
+
+    private static final String LOU_URL = "https://api.gleif.org/api/v1/lei-records/EVK05KS7XY1DEII3R011";
+    private static final String ISSUER_URL = "https://api.gleif.org/api/v1/lei-issuers/EVK05KS7XY1DEII3R011";
+
+    @TempDir
+    Path cacheDir;
+
+    private HttpResponseStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new HttpResponseStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "cacheDir", cacheDir.toString());
+        ReflectionTestUtils.setField(store, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(store, "freshFor", Duration.ZERO);
+        ReflectionTestUtils.setField(store, "referenceFreshFor", Duration.ofHours(24));
+        ReflectionTestUtils.setField(store, "maxIdle", Duration.ofDays(14));
+        store.init();
+    }
+
+    @Test
+    void onlyReferenceDocumentsAreFreshWithoutAFreshnessWindow() {
+        store.put(entry(LOU_URL, System.currentTimeMillis()));
+        store.put(entry(ISSUER_URL, System.currentTimeMillis()));
+        assertThat(store.isFresh(LOU_URL)).isFalse();
+
+        store.markReference(LOU_URL);
+        assertThat(store.isFresh(LOU_URL)).isTrue();
+        assertThat(store.isFresh(ISSUER_URL)).isFalse();
+    }
+
+    @Test
+    void referenceDocumentsExpireAfterTheirWindow() {
+        store.markReference(ISSUER_URL);
+        store.put(entry(ISSUER_URL, System.currentTimeMillis() - Duration.ofHours(25).toMillis()));
+
+        assertThat(store.isFresh(ISSUER_URL)).isFalse();
+    }
+
+    @Test
+    void revalidatedReferenceDocumentIsFreshAgain() {
+        store.markReference(ISSUER_URL);
+        store.put(entry(ISSUER_URL, System.currentTimeMillis() - Duration.ofHours(25).toMillis()));
+
+        store.revalidated(store.get(ISSUER_URL));
+        assertThat(store.isFresh(ISSUER_URL)).isTrue();
+    }
+
+    private static HttpResponseStore.Entry entry(String url, long storedAt) {
+        return new HttpResponseStore.Entry(url, "\"v1\"", null, "application/vnd.api+json", storedAt,
+                "{\"data\":{}}".getBytes(StandardCharsets.UTF_8));
+    }
+}
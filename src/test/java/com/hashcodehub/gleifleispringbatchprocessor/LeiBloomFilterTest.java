@@ -0,0 +1,54 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeiBloomFilterTest {
+
+    @Test
+    void addReportsWhetherTheLeiMightBeNew() {
+        LeiBloomFilter filter = new LeiBloomFilter(1024, 0.0001);
+        String lei = "5493001KJTIIGC8Y1R12";
+        long high = Lei.packHigh(lei);
+        long low = Lei.packLow(lei);
+
+        assertThat(filter.mightContain(high, low)).isFalse();
+        assertThat(filter.add(high, low)).isTrue();
+        assertThat(filter.mightContain(high, low)).isTrue();
+        assertThat(filter.add(high, low)).isFalse();
+    }
+
+    @Test
+    void growsBeyondItsInitialCapacityWithoutFalseNegatives() {
+        LeiBloomFilter filter = new LeiBloomFilter(1024, 0.001);
+        List<String> leis = LeiTest.randomLeis(50_000, 11);
+        long initialSize = filter.sizeInBytes();
+        for (String lei : leis) {
+            filter.add(Lei.packHigh(lei), Lei.packLow(lei));
+        }
+
+        assertThat(filter.sizeInBytes()).isGreaterThan(initialSize);
+        for (String lei : leis) {
+            assertThat(filter.mightContain(Lei.packHigh(lei), Lei.packLow(lei))).as(lei).isTrue();
+        }
+    }
+
+    @Test
+    void keepsTheFalsePositiveRateBounded() {
+        double falsePositiveRate = 0.01;
+        LeiBloomFilter filter = new LeiBloomFilter(1024, falsePositiveRate);
+        for (String lei : LeiTest.randomLeis(50_000, 13)) {
+            filter.add(Lei.packHigh(lei), Lei.packLow(lei));
+        }
+
+        List<String> absent = LeiTest.randomLeis(100_000, 17);
+        long falsePositives = absent.stream()
+                .filter(lei -> filter.mightContain(Lei.packHigh(lei), Lei.packLow(lei)))
+                .count();
+        // Full stages sit at their design rates, so the measured rate comes close to the bound; allow for sampling noise
+        assertThat((double) falsePositives / absent.size()).isLessThan(falsePositiveRate * 1.2);
+    }
+}
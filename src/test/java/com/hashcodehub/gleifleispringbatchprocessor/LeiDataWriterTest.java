@@ -0,0 +1,191 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Drives LeiDataWriter through the calls a chunk-oriented step makes: open, then write and update (just before each
+ * commit) per chunk, afterChunkError on a rollback, and open again with the last committed ExecutionContext on a restart.
+ */
+class LeiDataWriterTest {
+
+    @TempDir
+    Path outputDir;
+
+    private CsvWriterService csvWriterService;
+    private ExecutionContext executionContext;
+
+    @BeforeEach
+    void setUp() {
+        csvWriterService = new CsvWriterService();
+        ReflectionTestUtils.setField(csvWriterService, "leiRecordsPath", outputDir.resolve("lei_records.csv").toString());
+        ReflectionTestUtils.setField(csvWriterService, "relationshipRecordsPath", outputDir.resolve("relationship_records.csv").toString());
+        executionContext = new ExecutionContext();
+    }
+
+    @Test
+    void restartAfterAFailedChunkWritesNoRowTwice() throws Exception {
+        LeiDataWriter writer = newWriter();
+        writer.open(executionContext);
+        writer.write(chunk("A", "B"));
+        writer.update(executionContext);
+        // The second chunk is written, but its commit fails and the step stops
+        writer.write(chunk("C", "D"));
+        writer.afterChunkError(null);
+        writer.close();
+        ExecutionContext committed = new ExecutionContext(executionContext);
+
+        LeiDataWriter restarted = newWriter();
+        restarted.open(committed);
+        restarted.write(chunk("C", "D"));
+        restarted.update(committed);
+        restarted.write(chunk("E"));
+        restarted.update(committed);
+        restarted.close();
+
+        assertThat(leiRecordIds()).containsExactly("A", "B", "C", "D", "E");
+        assertThat(relationshipIds()).containsExactly("parent-A", "parent-B", "parent-C", "parent-D", "parent-E");
+    }
+
+    @Test
+    void restartAfterACrashCutsTheUncommittedRows() throws Exception {
+        LeiDataWriter writer = newWriter();
+        writer.open(executionContext);
+        writer.write(chunk("A"));
+        writer.update(executionContext);
+        // The process dies after writing the second chunk: no rollback callback, no close
+        writer.write(chunk("B"));
+        ExecutionContext committed = new ExecutionContext(executionContext);
+
+        LeiDataWriter restarted = newWriter();
+        restarted.open(committed);
+        restarted.write(chunk("B"));
+        restarted.update(committed);
+        restarted.close();
+        writer.close();
+
+        assertThat(leiRecordIds()).containsExactly("A", "B");
+        assertThat(relationshipIds()).containsExactly("parent-A", "parent-B");
+    }
+
+    @Test
+    void retriedChunkIsWrittenOnce() throws Exception {
+        LeiDataWriter writer = newWriter();
+        writer.open(executionContext);
+        writer.write(chunk("A", "B"));
+        writer.afterChunkError(null);
+        writer.write(chunk("A", "B"));
+        writer.update(executionContext);
+        writer.close();
+
+        assertThat(leiRecordIds()).containsExactly("A", "B");
+    }
+
+    @Test
+    void outputThatCannotBeCutBackFailsTheNextWrite() throws Exception {
+        LeiDataWriter writer = newWriter();
+        writer.open(executionContext);
+        writer.write(chunk("A"));
+        writer.update(executionContext);
+        writer.write(chunk("B"));
+        Map<String, FileChannel> csvChannels = (Map<String, FileChannel>) ReflectionTestUtils.getField(writer, "csvChannels");
+        for (FileChannel channel : csvChannels.values()) {
+            channel.close();
+        }
+
+        writer.afterChunkError(null); // Logged only; the transaction manager would swallow it
+        assertThatThrownBy(() -> writer.write(chunk("B"))).isInstanceOf(ItemStreamException.class);
+    }
+
+    @Test
+    void listenersOnlySeeCommittedRecords() throws Exception {
+        List<String> committed = new ArrayList<>();
+        LeiDataWriter writer = newWriter(List.of((leiData, relationships) -> committed.add(leiData.getData().getId())));
+        writer.open(executionContext);
+        writer.write(chunk("A", "B"));
+        writer.update(executionContext);
+        assertThat(committed).isEmpty(); // Not before the commit
+        writer.afterChunk(null);
+        assertThat(committed).containsExactly("A", "B");
+
+        // A chunk that rolls back is never passed on
+        writer.write(chunk("C"));
+        writer.afterChunkError(null);
+        writer.write(chunk("E"));
+        writer.update(executionContext);
+        writer.afterChunk(null);
+        writer.close();
+
+        assertThat(committed).containsExactly("A", "B", "E");
+    }
+
+    private LeiDataWriter newWriter() {
+        return newWriter(List.of());
+    }
+
+    private LeiDataWriter newWriter(List<CommittedRecordListener> listeners) {
+        LeiDataWriter writer = new LeiDataWriter(csvWriterService, mock(ParquetWriterService.class),
+                new PipelineMetrics(new SimpleMeterRegistry()), listeners);
+        ReflectionTestUtils.setField(writer, "outputFormats", new String[]{"CSV"});
+        ReflectionTestUtils.setField(writer, "relationshipLayout", "EMBEDDED");
+        ReflectionTestUtils.setField(writer, "parquetCommitsPerFile", 10);
+        ReflectionTestUtils.setField(writer, "stepExecutionId", 1L);
+        return writer;
+    }
+
+    private static Chunk<Map<String, Object>> chunk(String... ids) {
+        return new Chunk<>(Arrays.stream(ids).map(LeiDataWriterTest::item).toList());
+    }
+
+    private static Map<String, Object> item(String id) {
+        GleifResponse.Attributes attributes = new GleifResponse.Attributes();
+        attributes.setLei(id);
+        GleifResponse.Entity entity = new GleifResponse.Entity();
+        entity.setLegalName(new GleifResponse.LegalName());
+        attributes.setEntity(entity);
+        attributes.setRegistration(new GleifResponse.Registration());
+        GleifResponse.Data data = new GleifResponse.Data();
+        data.setId(id);
+        data.setAttributes(attributes);
+        GleifResponse leiData = new GleifResponse();
+        leiData.setData(data);
+        RelationshipRecord parent = new RelationshipRecord("parent-" + id, "lei-records", "{}".getBytes(StandardCharsets.UTF_8));
+        return Map.of("leiData", leiData, "relationships", Map.of("direct-parent", List.of(parent)));
+    }
+
+    private List<String> leiRecordIds() throws IOException {
+        return column(csvWriterService.getLeiRecordsPath(), 0);
+    }
+
+    private List<String> relationshipIds() throws IOException {
+        return column(csvWriterService.getRelationshipRecordsPath(), 1);
+    }
+
+    private static List<String> column(String path, int index) throws IOException {
+        return Files.readAllLines(Path.of(path), StandardCharsets.UTF_8).stream()
+                .skip(1) // Header
+                .map(line -> line.split(",")[index])
+                .collect(Collectors.toList());
+    }
+}
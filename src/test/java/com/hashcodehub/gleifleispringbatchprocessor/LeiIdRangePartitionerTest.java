@@ -0,0 +1,86 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks that the partitions cover every input line exactly once: the ranges are contiguous, and reading each one
+ * with the partition reader of PartitionedBatchConfig returns the input in order, with no line lost or read twice.
+ */
+class LeiIdRangePartitionerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private PartitionedBatchConfig partitionedBatchConfig;
+    private LeiInputPreflight leiInputPreflight;
+
+    @BeforeEach
+    void setUp() {
+        partitionedBatchConfig = new PartitionedBatchConfig(mock(JobRepository.class), mock(PlatformTransactionManager.class), 1);
+        leiInputPreflight = new LeiInputPreflight(mock(FailedLeiTrackerService.class));
+        ReflectionTestUtils.setField(leiInputPreflight, "deduplicate", true);
+        ReflectionTestUtils.setField(leiInputPreflight, "exactLimit", 2_000_000);
+        ReflectionTestUtils.setField(leiInputPreflight, "falsePositiveRate", 0.0001);
+    }
+
+    @ParameterizedTest(name = "{0} lines in {1} partitions")
+    @CsvSource({"0, 4", "1, 4", "3, 4", "4, 4", "10, 4", "11, 4", "12, 4", "1000, 7", "5, 1"})
+    void partitionsCoverEveryLineOnce(int lines, int gridSize) throws Exception {
+        List<String> leis = LeiTest.randomLeis(lines, lines);
+        Path input = tempDir.resolve("input.csv");
+        List<String> fileLines = new ArrayList<>(List.of("lei_id"));
+        fileLines.addAll(leis);
+        Files.write(input, fileLines);
+        ReflectionTestUtils.setField(partitionedBatchConfig, "inputResource", new FileSystemResource(input));
+
+        Map<String, ExecutionContext> partitions = new LeiIdRangePartitioner(new FileSystemResource(input),
+                tempDir.resolve("partitions")).partition(gridSize);
+
+        assertThat(partitions).hasSize(Math.min(lines, gridSize));
+        long nextLine = 0;
+        List<String> read = new ArrayList<>();
+        for (int index = 0; index < partitions.size(); index++) {
+            ExecutionContext context = partitions.get("partition" + index);
+            long firstLine = context.getLong(LeiIdRangePartitioner.FIRST_LINE);
+            long lineCount = context.getLong(LeiIdRangePartitioner.LINE_COUNT);
+            assertThat(context.getInt(LeiIdRangePartitioner.PARTITION_INDEX)).isEqualTo(index);
+            assertThat(firstLine).as("first line of partition %d", index).isEqualTo(nextLine);
+            assertThat(lineCount).isBetween((long) lines / gridSize, (long) lines / gridSize + 1).isPositive();
+            nextLine += lineCount;
+
+            read.addAll(readPartition(firstLine, lineCount));
+        }
+        assertThat(nextLine).isEqualTo(lines);
+        assertThat(read).containsExactlyElementsOf(leis);
+    }
+
+    private List<String> readPartition(long firstLine, long lineCount) throws Exception {
+        ItemStreamReader<String> reader = partitionedBatchConfig.partitionLeiIdReader(leiInputPreflight, firstLine, lineCount);
+        reader.open(new ExecutionContext());
+        List<String> items = new ArrayList<>();
+        String item;
+        while ((item = reader.read()) != null) {
+            items.add(item);
+        }
+        reader.close();
+        return items;
+    }
+}
@@ -0,0 +1,167 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.support.ListItemReader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+class LeiInputPreflightTest {
+
+    private static final String LEI_1 = "5493001KJTIIGC8Y1R12";
+    private static final String LEI_2 = "529900T8BM49AURSDO55";
+    private static final String LEI_3 = "HWUPKR0MPOU8FGXBT394";
+
+    @TempDir
+    Path inputDir;
+
+    private FailedLeiTrackerService failedLeiTrackerService;
+    private LeiInputPreflight preflight;
+
+    @BeforeEach
+    void setUp() {
+        failedLeiTrackerService = mock(FailedLeiTrackerService.class);
+        preflight = new LeiInputPreflight(failedLeiTrackerService);
+        ReflectionTestUtils.setField(preflight, "deduplicate", true);
+        ReflectionTestUtils.setField(preflight, "exactLimit", 2_000_000);
+        ReflectionTestUtils.setField(preflight, "falsePositiveRate", 0.0001);
+    }
+
+    @Test
+    void validateNamesTheRejectReason() {
+        assertThat(LeiInputPreflight.validate(LEI_1)).isNull();
+        assertThat(LeiInputPreflight.validate(null)).isEqualTo(LeiInputPreflight.MALFORMED);
+        assertThat(LeiInputPreflight.validate("5493001KJTIIGC8Y1R1")).isEqualTo(LeiInputPreflight.MALFORMED);
+        assertThat(LeiInputPreflight.validate("5493001kjtiigc8y1r12")).isEqualTo(LeiInputPreflight.MALFORMED);
+        assertThat(LeiInputPreflight.validate("5493001KJTIIGC8Y1R13")).isEqualTo(LeiInputPreflight.INVALID_CHECK_DIGITS);
+    }
+
+    @Test
+    void filterDropsAndReportsRejectedIds() throws Exception {
+        ItemStreamReader<String> reader = preflight.filter(new ListItemReader<>(List.of(
+                LEI_1, "BAD", LEI_2, "5493001KJTIIGC8Y1R13", LEI_1, LEI_3)));
+
+        assertThat(readAll(reader)).containsExactly(LEI_1, LEI_2, LEI_3);
+        verify(failedLeiTrackerService).logRejectedLei("BAD", LeiInputPreflight.MALFORMED);
+        verify(failedLeiTrackerService).logRejectedLei("5493001KJTIIGC8Y1R13", LeiInputPreflight.INVALID_CHECK_DIGITS);
+        verify(failedLeiTrackerService).logRejectedLei(LEI_1, LeiInputPreflight.DUPLICATE);
+        verifyNoMoreInteractions(failedLeiTrackerService);
+    }
+
+    @Test
+    void filterDropsDuplicatesSilentlyWhenNotReportingThem() throws Exception {
+        ItemStreamReader<String> reader = preflight.filter(new ListItemReader<>(List.of(
+                LEI_1, LEI_1, "BAD", LEI_2, LEI_2)), false);
+
+        assertThat(readAll(reader)).containsExactly(LEI_1, LEI_2);
+        verify(failedLeiTrackerService).logRejectedLei("BAD", LeiInputPreflight.MALFORMED);
+        verifyNoMoreInteractions(failedLeiTrackerService);
+    }
+
+    @Test
+    void filterKeepsDuplicatesWhenDeduplicationIsDisabled() throws Exception {
+        ReflectionTestUtils.setField(preflight, "deduplicate", false);
+        ItemStreamReader<String> reader = preflight.filter(new ListItemReader<>(List.of(LEI_1, LEI_1)));
+
+        assertThat(readAll(reader)).containsExactly(LEI_1, LEI_1);
+        verifyNoMoreInteractions(failedLeiTrackerService);
+    }
+
+    @Test
+    void filterSwitchesToTheBloomFilterPastTheExactLimit() throws Exception {
+        ReflectionTestUtils.setField(preflight, "exactLimit", 100);
+        List<String> leis = LeiTest.randomLeis(1000, 5);
+        List<String> input = new ArrayList<>(leis);
+        input.add(leis.get(0));
+        input.add(leis.get(999));
+        ItemStreamReader<String> reader = preflight.filter(new ListItemReader<>(input));
+
+        List<String> read = readAll(reader);
+        assertThat(read).hasSizeLessThanOrEqualTo(1000).hasSizeGreaterThan(990).doesNotHaveDuplicates();
+        verify(failedLeiTrackerService).logRejectedLei(leis.get(0), LeiInputPreflight.PROBABLE_DUPLICATE);
+        verify(failedLeiTrackerService).logRejectedLei(leis.get(999), LeiInputPreflight.PROBABLE_DUPLICATE);
+    }
+
+    @Test
+    void eachFilterHasItsOwnDuplicateState() throws Exception {
+        ItemStreamReader<String> reader = preflight.filter(new ListItemReader<>(List.of(LEI_1)));
+        assertThat(readAll(reader)).containsExactly(LEI_1);
+
+        ItemStreamReader<String> again = preflight.filter(new ListItemReader<>(List.of(LEI_1)));
+        assertThat(readAll(again)).containsExactly(LEI_1);
+        verifyNoMoreInteractions(failedLeiTrackerService);
+    }
+
+    @Test
+    void restartStillDropsDuplicatesOfLinesBeforeTheRestartPoint() throws Exception {
+        Path input = input(LEI_1, LEI_2, LEI_1, LEI_3);
+        ExecutionContext executionContext = new ExecutionContext();
+        ItemStreamReader<String> reader = preflight.filter(fileReader(input).build());
+        reader.open(executionContext);
+        assertThat(reader.read()).isEqualTo(LEI_1);
+        assertThat(reader.read()).isEqualTo(LEI_2);
+        reader.update(executionContext); // The commit of the failed run
+        reader.close();
+
+        ItemStreamReader<String> restarted = preflight.filter(fileReader(input).build());
+        restarted.open(executionContext);
+        assertThat(restarted.read()).isEqualTo(LEI_3);
+        assertThat(restarted.read()).isNull();
+        restarted.close();
+        verify(failedLeiTrackerService).logRejectedLei(LEI_1, LeiInputPreflight.DUPLICATE);
+        verifyNoMoreInteractions(failedLeiTrackerService);
+    }
+
+    @Test
+    void partitionDropsLeisOfEarlierPartitions() throws Exception {
+        Path input = input(LEI_1, LEI_2, LEI_1, LEI_3, LEI_2);
+        // The second partition of the five lines, as PartitionedBatchConfig configures it
+        ItemStreamReader<String> reader = preflight.filter(fileReader(input).currentItemCount(2).maxItemCount(4).build());
+
+        assertThat(readAll(reader)).containsExactly(LEI_3);
+        verify(failedLeiTrackerService).logRejectedLei(LEI_1, LeiInputPreflight.DUPLICATE);
+        verifyNoMoreInteractions(failedLeiTrackerService);
+    }
+
+    private Path input(String... leiIds) throws IOException {
+        Path input = inputDir.resolve("input.csv");
+        List<String> lines = new ArrayList<>(List.of("lei_id"));
+        lines.addAll(List.of(leiIds));
+        Files.write(input, lines);
+        return input;
+    }
+
+    private static FlatFileItemReaderBuilder<String> fileReader(Path input) {
+        return new FlatFileItemReaderBuilder<String>()
+                .name("leiIdReader")
+                .resource(new FileSystemResource(input))
+                .linesToSkip(1)
+                .lineMapper((line, lineNumber) -> line);
+    }
+
+    private static List<String> readAll(ItemStreamReader<String> reader) throws Exception {
+        reader.open(new ExecutionContext());
+        List<String> items = new ArrayList<>();
+        String item;
+        while ((item = reader.read()) != null) {
+            items.add(item);
+        }
+        reader.close();
+        return items;
+    }
+}
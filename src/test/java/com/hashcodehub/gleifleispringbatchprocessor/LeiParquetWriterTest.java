@@ -0,0 +1,85 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.LocalInputFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeiParquetWriterTest {
+
+    @TempDir
+    Path outputDir;
+
+    private ParquetWriterService parquetWriterService;
+
+    @BeforeEach
+    void setUp() {
+        parquetWriterService = new ParquetWriterService();
+        ReflectionTestUtils.setField(parquetWriterService, "parquetDirectory", outputDir.toString());
+        ReflectionTestUtils.setField(parquetWriterService, "compression", CompressionCodecName.UNCOMPRESSED);
+    }
+
+    @Test
+    void fileIsOneRowGroupWhateverTheCommitSizes() throws Exception {
+        LeiParquetWriter writer = new LeiParquetWriter(parquetWriterService, 1L, 3);
+        // Commit sizes as an adaptive commit interval produces them: a small first chunk, then larger ones
+        for (int rows : new int[]{1, 7, 3, 20, 2}) {
+            writer.add(rows(rows), List.of());
+            writer.commit();
+        }
+        writer.close();
+
+        assertThat(rowGroupRowCounts("part-1-0.parquet")).containsExactly(11L);
+        assertThat(rowGroupRowCounts("part-1-1.parquet")).containsExactly(22L);
+    }
+
+    @Test
+    void discardedRowsNeverReachTheFile() throws Exception {
+        LeiParquetWriter writer = new LeiParquetWriter(parquetWriterService, 1L, 10);
+        writer.add(rows(2), List.of());
+        writer.commit();
+        writer.add(rows(5), List.of());
+        writer.discard();
+        assertThat(writer.openFiles()).hasSize(1);
+        writer.close();
+
+        assertThat(rowGroupRowCounts("part-1-0.parquet")).containsExactly(2L);
+        assertThat(writer.openFiles()).isEmpty();
+    }
+
+    private List<Group> rows(int count) {
+        List<Group> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            GleifResponse.Attributes attributes = new GleifResponse.Attributes();
+            attributes.setLei("LEI" + i);
+            attributes.setEntity(new GleifResponse.Entity());
+            attributes.setRegistration(new GleifResponse.Registration());
+            GleifResponse.Data data = new GleifResponse.Data();
+            data.setId("LEI" + i);
+            data.setAttributes(attributes);
+            GleifResponse leiData = new GleifResponse();
+            leiData.setData(data);
+            rows.add(parquetWriterService.toLeiRecordRow(leiData));
+        }
+        return rows;
+    }
+
+    private List<Long> rowGroupRowCounts(String fileName) throws IOException {
+        Path file = parquetWriterService.getLeiRecordsDirectory().resolve(fileName);
+        try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(file))) {
+            return reader.getFooter().getBlocks().stream().map(BlockMetaData::getRowCount).toList();
+        }
+    }
+}
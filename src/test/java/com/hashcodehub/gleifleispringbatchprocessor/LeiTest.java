@@ -0,0 +1,114 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LeiTest {
+
+    private static final List<String> REAL_LEIS = List.of(
+            "5493001KJTIIGC8Y1R12", "529900T8BM49AURSDO55", "HWUPKR0MPOU8FGXBT394");
+
+    @Test
+    void packAndFormatRoundTrip() {
+        List<String> leis = new ArrayList<>(REAL_LEIS);
+        leis.add("00000000000000000000");
+        leis.add("ZZZZZZZZZZZZZZZZZZZZ");
+        leis.addAll(randomLeis(1000, 42));
+        for (String lei : leis) {
+            assertThat(Lei.format(Lei.packHigh(lei), Lei.packLow(lei))).isEqualTo(lei);
+            assertThat(Lei.parse(lei).toString()).isEqualTo(lei);
+        }
+    }
+
+    @Test
+    void compareToKeepsStringOrder() {
+        List<String> leis = randomLeis(200, 7);
+        for (String a : leis) {
+            for (String b : leis) {
+                assertThat(Integer.signum(Lei.parse(a).compareTo(Lei.parse(b))))
+                        .as("%s vs %s", a, b)
+                        .isEqualTo(Integer.signum(a.compareTo(b)));
+            }
+        }
+    }
+
+    @Test
+    void equalLeisHaveEqualHashes() {
+        String lei = REAL_LEIS.get(0);
+        assertThat(Lei.parse(lei)).isEqualTo(Lei.parse(new StringBuilder(lei)));
+        assertThat(Lei.parse(lei).hashCode()).isEqualTo(Lei.hash(Lei.packHigh(lei), Lei.packLow(lei)));
+    }
+
+    @Test
+    void isValidChecksLengthAndAlphabet() {
+        assertThat(Lei.isValid(REAL_LEIS.get(0))).isTrue();
+        assertThat(Lei.isValid(null)).isFalse();
+        assertThat(Lei.isValid("")).isFalse();
+        assertThat(Lei.isValid("5493001KJTIIGC8Y1R1")).isFalse();
+        assertThat(Lei.isValid("5493001KJTIIGC8Y1R123")).isFalse();
+        assertThat(Lei.isValid("5493001kjtiigc8y1r12")).isFalse();
+        assertThat(Lei.isValid("5493001KJTIIGC8Y1R1-")).isFalse();
+    }
+
+    @Test
+    void parseRejectsMalformedIds() {
+        assertThatThrownBy(() -> Lei.parse("5493001KJTIIGC8Y1R1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Lei.parse("5493001kjtiigc8y1r12")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void hasValidCheckDigits() {
+        for (String lei : REAL_LEIS) {
+            assertThat(Lei.hasValidCheckDigits(lei)).as(lei).isTrue();
+        }
+        for (String lei : randomLeis(1000, 3)) {
+            assertThat(Lei.hasValidCheckDigits(lei)).as(lei).isTrue();
+        }
+        assertThat(Lei.hasValidCheckDigits("5493001KJTIIGC8Y1R13")).isFalse();
+        assertThat(Lei.hasValidCheckDigits("5493001KJTIIGC8Y1R21")).isFalse();
+        assertThat(Lei.hasValidCheckDigits("6493001KJTIIGC8Y1R12")).isFalse();
+        assertThat(Lei.hasValidCheckDigits("529900T8BM49AURSDO5A")).isFalse();
+    }
+
+    /**
+     * Generates random LEIs with valid ISO 17442 check digits (ISO 7064 MOD 97-10).
+     *
+     * @param count The number of LEIs.
+     * @param seed The random seed.
+     * @return the LEIs.
+     */
+    static List<String> randomLeis(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> leis = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder prefix = new StringBuilder();
+            for (int c = 0; c < 18; c++) {
+                prefix.append(Character.toUpperCase(Character.forDigit(random.nextInt(36), 36)));
+            }
+            leis.add(withCheckDigits(prefix.toString()));
+        }
+        return leis;
+    }
+
+    /**
+     * Appends the ISO 17442 check digits to an 18-character LEI prefix.
+     *
+     * @param prefix The first 18 characters of the LEI.
+     * @return the full LEI.
+     */
+    static String withCheckDigits(String prefix) {
+        StringBuilder digits = new StringBuilder();
+        for (char c : (prefix + "00").toCharArray()) {
+            digits.append(Character.digit(c, 36));
+        }
+        int check = 98 - new BigInteger(digits.toString()).mod(BigInteger.valueOf(97)).intValue();
+        return prefix + String.format("%02d", check);
+    }
+}
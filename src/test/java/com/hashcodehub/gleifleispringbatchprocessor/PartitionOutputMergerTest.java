@@ -0,0 +1,128 @@
+package com.hashcodehub.gleifleispringbatchprocessor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionOutputMergerTest {
+
+    private static final String LEI_HEADER = "id,lei,legalName,registeredAs,jurisdiction,status,initialRegistrationDate,"
+            + "lastUpdateDate,nextRenewalDate,managingLou,bic\r\n";
+    private static final String ENTITY_HEADER = "entityHash,id,type,attributes\r\n";
+
+    @TempDir
+    Path tempDir;
+
+    private Path partitionDirectory;
+    private CsvWriterService csvWriterService;
+    private PartitionOutputMerger merger;
+    private StepExecution stepExecution;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        partitionDirectory = Files.createDirectories(tempDir.resolve("partitions/1"));
+        csvWriterService = new CsvWriterService();
+        ReflectionTestUtils.setField(csvWriterService, "leiRecordsPath", tempDir.resolve("lei_records.csv").toString());
+        ReflectionTestUtils.setField(csvWriterService, "relationshipRecordsPath", tempDir.resolve("relationship_records.csv").toString());
+        ReflectionTestUtils.setField(csvWriterService, "relationshipEdgesPath", tempDir.resolve("relationship_edges.csv").toString());
+        ReflectionTestUtils.setField(csvWriterService, "relatedEntitiesPath", tempDir.resolve("related_entities.csv").toString());
+        merger = new PartitionOutputMerger(csvWriterService, partitionDirectory);
+        stepExecution = MetaDataInstanceFactory.createStepExecution();
+    }
+
+    @Test
+    void firstCallOnlyCommitsTheOutputOffsets() throws Exception {
+        Files.writeString(leiRecords(), LEI_HEADER + "EARLIER,row\r\n");
+        leiPart(0, "A");
+
+        assertThat(execute()).isEqualTo(RepeatStatus.CONTINUABLE);
+        assertThat(Files.readString(leiRecords())).isEqualTo(LEI_HEADER + "EARLIER,row\r\n");
+        assertThat(stepExecution.getExecutionContext().getLong("merge.lei-records-offset"))
+                .isEqualTo(Files.size(leiRecords()));
+        assertThat(partitionDirectory).exists();
+    }
+
+    @Test
+    void mergeAppendsThePartsInPartitionOrderWithoutTheirHeaders() throws Exception {
+        Files.writeString(leiRecords(), LEI_HEADER + "EARLIER,row\r\n");
+        leiPart(10, "K");
+        leiPart(2, "C");
+        leiPart(0, "A");
+
+        assertThat(execute()).isEqualTo(RepeatStatus.CONTINUABLE);
+        assertThat(execute()).isEqualTo(RepeatStatus.FINISHED);
+
+        assertThat(Files.readString(leiRecords())).isEqualTo(LEI_HEADER + "EARLIER,row\r\nA,row\r\nC,row\r\nK,row\r\n");
+        assertThat(partitionDirectory).doesNotExist();
+    }
+
+    @Test
+    void mergeIntoANewOutputWritesTheHeaderOnce() throws Exception {
+        leiPart(0, "A");
+        leiPart(1, "B");
+
+        execute();
+        execute();
+
+        assertThat(Files.readString(leiRecords())).isEqualTo(LEI_HEADER + "A,row\r\nB,row\r\n");
+    }
+
+    @Test
+    void restartedMergeCutsTheHalfDoneMergeOff() throws Exception {
+        Files.writeString(leiRecords(), LEI_HEADER + "EARLIER,row\r\n");
+        leiPart(0, "A");
+        leiPart(1, "B");
+        execute(); // Offsets committed
+        // The failed attempt had appended part of the merge before it died
+        Files.writeString(leiRecords(), "A,row\r\nB,r", StandardOpenOption.APPEND);
+
+        assertThat(execute()).isEqualTo(RepeatStatus.FINISHED);
+        assertThat(Files.readString(leiRecords())).isEqualTo(LEI_HEADER + "EARLIER,row\r\nA,row\r\nB,row\r\n");
+    }
+
+    @Test
+    void relatedEntitiesWrittenBySeveralPartitionsAppearOnce() throws Exception {
+        Files.writeString(partitionDirectory.resolve("related_entities.part-0.csv"), ENTITY_HEADER
+                + "h1,LOU1,lei-records,\"{\"\"name\"\":\r\n\"\"LOU one\"\"}\"\r\n"
+                + "h2,LOU2,lei-records,{}\r\n", StandardCharsets.UTF_8);
+        Files.writeString(partitionDirectory.resolve("related_entities.part-1.csv"), ENTITY_HEADER
+                + "h2,LOU2,lei-records,{}\r\n"
+                + "h1,LOU1,lei-records,\"{\"\"name\"\":\r\n\"\"LOU one\"\"}\"\r\n"
+                + "h3,LOU3,lei-records,{}\r\n", StandardCharsets.UTF_8);
+
+        execute();
+        execute();
+
+        assertThat(Files.readString(tempDir.resolve("related_entities.csv"))).isEqualTo(ENTITY_HEADER
+                + "h1,LOU1,lei-records,\"{\"\"name\"\":\r\n\"\"LOU one\"\"}\"\r\n"
+                + "h2,LOU2,lei-records,{}\r\n"
+                + "h3,LOU3,lei-records,{}\r\n");
+    }
+
+    private RepeatStatus execute() throws Exception {
+        return merger.execute(stepExecution.createStepContribution(), new ChunkContext(new StepContext(stepExecution)));
+    }
+
+    private Path leiRecords() {
+        return Path.of(csvWriterService.getLeiRecordsPath());
+    }
+
+    private void leiPart(int index, String id) throws IOException {
+        Files.writeString(partitionDirectory.resolve(LeiIdRangePartitioner.LEI_RECORDS_FILE_PREFIX + index + ".csv"),
+                LEI_HEADER + id + ",row\r\n", StandardCharsets.UTF_8);
+    }
+}